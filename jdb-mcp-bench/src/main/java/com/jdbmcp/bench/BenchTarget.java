@@ -0,0 +1,76 @@
+package com.jdbmcp.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Debuggee launched by {@link TargetVm}. Builds fixed fixtures and parks in {@link #ready} with
+ * them as locals, where the benchmark harness suspends it and inspects the values over JDWP.
+ */
+public class BenchTarget {
+
+    static class Node {
+        int id;
+        String label;
+        long[] payload;
+        Node left;
+        Node right;
+
+        Node(int id) {
+            this.id = id;
+            this.label = "node-" + id;
+            this.payload = new long[8];
+        }
+    }
+
+    static Node tree(int depth, int[] counter) {
+        Node node = new Node(counter[0]++);
+        if (depth > 1) {
+            node.left = tree(depth - 1, counter);
+            node.right = tree(depth - 1, counter);
+        }
+        return node;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    Thread.sleep(Long.MAX_VALUE);
+                } catch (InterruptedException ignored) {
+                }
+            }, "bench-idle-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        Node deepObject = tree(8, new int[1]);
+        int[] wideArray = new int[100_000];
+        for (int i = 0; i < wideArray.length; i++) wideArray[i] = i;
+        Object[] objectArray = new Object[1_000];
+        for (int i = 0; i < objectArray.length; i++) objectArray[i] = new Node(i);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1_000_000) sb.append("{\"key\":\"value\",\"n\":12345},");
+        String largeString = sb.toString();
+        String smallString = "hello, benchmark";
+        List<String> list = new ArrayList<>();
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < 1_000; i++) {
+            list.add("item-" + i);
+            map.put("key-" + i, i);
+        }
+
+        while (true) {
+            ready(deepObject, wideArray, objectArray, largeString, smallString, list, map);
+            Thread.sleep(1000);
+        }
+    }
+
+    static void ready(Node deepObject, int[] wideArray, Object[] objectArray, String largeString,
+                      String smallString, List<String> list, Map<String, Integer> map) {
+        // Breakpoint target: the harness stops here and reads the parameters
+    }
+}
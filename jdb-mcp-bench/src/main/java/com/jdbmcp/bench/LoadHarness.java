@@ -0,0 +1,285 @@
+package com.jdbmcp.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load harness. Starts a {@link LoadTarget} JVM with JDWP and an McpServer process,
+ * then drives the server with a fixed number of concurrent clients and reports throughput,
+ * p50/p99 latency per tool and breakpoint event-delivery lag.
+ *
+ * <pre>
+ * --server-jar PATH   McpServer fat jar (default release/jdb-mcp.jar)
+ * --transport T       stdio or http (default stdio)
+ * --http-port N       port the HTTP transport listens on (default 8080)
+ * --concurrency N     concurrent clients (default 8)
+ * --duration S        seconds of tool-call load (default 30)
+ * --events N          resume/breakpoint round trips for the lag phase (default 200)
+ * --target-args "..." extra LoadTarget arguments, e.g. "--threads 600 --depth 8"
+ * </pre>
+ */
+public class LoadHarness {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String[] TOOL_MIX = {
+        "debug_list_threads", "debug_list_vars", "debug_get_stack_trace", "debug_list_breakpoints"
+    };
+
+    private final Map<String, String> options;
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long, CompletableFuture<JsonNode>> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<long[]> breakpointNotifications = new LinkedBlockingQueue<>();
+    private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+    private Process server;
+    private Process target;
+    private BufferedWriter serverIn;
+    private HttpClient http;
+    private boolean httpTransport;
+
+    LoadHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        LoadHarness harness = new LoadHarness(options);
+        try {
+            harness.run();
+        } finally {
+            harness.shutdown();
+        }
+    }
+
+    void run() throws Exception {
+        httpTransport = "http".equalsIgnoreCase(option("transport", "stdio"));
+        int concurrency = Integer.parseInt(option("concurrency", "8"));
+        int durationSeconds = Integer.parseInt(option("duration", "30"));
+        int events = Integer.parseInt(option("events", "200"));
+
+        int jdwpPort = freePort();
+        startTarget(jdwpPort);
+        startServer();
+
+        call("initialize", mapper.createObjectNode().put("protocolVersion", "2024-11-05"));
+        tool("debug_attach", mapper.createObjectNode().put("host", "127.0.0.1").put("port", jdwpPort));
+        JsonNode bp = tool("debug_set_method_breakpoint", mapper.createObjectNode()
+                .put("className", LoadTarget.class.getName()).put("methodName", "onHit"));
+        System.out.println("Breakpoint: " + bp.path("result").path("content").path(0).path("text").asText());
+        awaitBreakpoint(30, TimeUnit.SECONDS);
+
+        System.out.println("Tool-call phase: " + concurrency + " clients for " + durationSeconds + "s over " + (httpTransport ? "http" : "stdio"));
+        latencies.clear();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        List<Future<?>> workers = new ArrayList<>();
+        long phaseStart = System.nanoTime();
+        for (int c = 0; c < concurrency; c++) {
+            final int offset = c;
+            workers.add(pool.submit(() -> {
+                int i = offset;
+                while (System.nanoTime() < deadline) {
+                    String name = TOOL_MIX[i++ % TOOL_MIX.length];
+                    ObjectNode arguments = mapper.createObjectNode();
+                    if ("debug_list_vars".equals(name)) arguments.put("threadName", "load-hitter").put("maxDepth", 2);
+                    tool(name, arguments);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) worker.get();
+        pool.shutdown();
+        double elapsedSeconds = (System.nanoTime() - phaseStart) / 1e9;
+        report("Tool latency", elapsedSeconds);
+
+        System.out.println();
+        System.out.println("Event phase: " + events + " resume -> breakpoint notification round trips");
+        breakpointNotifications.clear();
+        List<Long> lags = new ArrayList<>();
+        for (int i = 0; i < events; i++) {
+            // Measured from the resume request because the notification can overtake the resume response
+            long resumed = System.nanoTime();
+            tool("debug_resume", mapper.createObjectNode());
+            long[] received = breakpointNotifications.poll(10, TimeUnit.SECONDS);
+            if (received == null) throw new IllegalStateException("No breakpoint notification after resume #" + i);
+            lags.add(received[0] - resumed);
+        }
+        latencies.clear();
+        latencies.put("resume-to-breakpoint-event", lags);
+        report("Event delivery", 0);
+
+        tool("debug_detach", mapper.createObjectNode());
+    }
+
+    private void startTarget(int jdwpPort) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList(javaExecutable(),
+                "-agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=127.0.0.1:" + jdwpPort,
+                "-cp", System.getProperty("java.class.path"), LoadTarget.class.getName()));
+        String targetArgs = option("target-args", "").trim();
+        if (!targetArgs.isEmpty()) command.addAll(Arrays.asList(targetArgs.split("\\s+")));
+        target = new ProcessBuilder(command).redirectErrorStream(true).start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(target.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            System.out.println("[target] " + line);
+            if (line.startsWith("LoadTarget ready")) break;
+        }
+        if (line == null) throw new IllegalStateException("LoadTarget exited before becoming ready");
+        pump(reader, null);
+    }
+
+    private void startServer() throws Exception {
+        List<String> command = new ArrayList<>(Arrays.asList(javaExecutable(), "-jar", option("server-jar", "release/jdb-mcp.jar")));
+        if (httpTransport) {
+            command.add("--transport");
+            command.add("http");
+            command.add("--port");
+            command.add(option("http-port", "8080"));
+            http = HttpClient.newHttpClient();
+        }
+        server = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        serverIn = new BufferedWriter(new OutputStreamWriter(server.getOutputStream(), StandardCharsets.UTF_8));
+        pump(new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8)), this::onServerLine);
+        if (httpTransport) {
+            // The HTTP transport has no readiness signal on stdout; poll until the port accepts requests
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+            while (true) {
+                try {
+                    post(mapper.createObjectNode().put("jsonrpc", "2.0").put("method", "notifications/initialized"));
+                    break;
+                } catch (IOException e) {
+                    if (System.nanoTime() > deadline) throw e;
+                    Thread.sleep(100);
+                }
+            }
+        }
+    }
+
+    private void onServerLine(String line) {
+        long received = System.nanoTime();
+        JsonNode message;
+        try {
+            message = mapper.readTree(line);
+        } catch (IOException e) {
+            return;
+        }
+        if (message.has("id") && (message.has("result") || message.has("error"))) {
+            CompletableFuture<JsonNode> future = pending.remove(message.get("id").asLong());
+            if (future != null) future.complete(message);
+        } else if (message.path("params").path("data").asText().startsWith("Breakpoint hit")) {
+            breakpointNotifications.offer(new long[]{received});
+        }
+    }
+
+    private JsonNode tool(String name, ObjectNode arguments) throws Exception {
+        ObjectNode params = mapper.createObjectNode().put("name", name);
+        params.set("arguments", arguments);
+        long start = System.nanoTime();
+        JsonNode response = call("tools/call", params);
+        latencies.computeIfAbsent(name, k -> Collections.synchronizedList(new ArrayList<>())).add(System.nanoTime() - start);
+        if (response.path("result").path("isError").asBoolean()) {
+            throw new IllegalStateException(name + " failed: " + response.path("result").path("content").path(0).path("text").asText());
+        }
+        return response;
+    }
+
+    private JsonNode call(String method, ObjectNode params) throws Exception {
+        long id = ids.incrementAndGet();
+        ObjectNode request = mapper.createObjectNode().put("jsonrpc", "2.0").put("id", id).put("method", method);
+        request.set("params", params);
+        if (httpTransport) {
+            return mapper.readTree(post(request));
+        }
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        pending.put(id, future);
+        synchronized (serverIn) {
+            serverIn.write(request.toString());
+            serverIn.newLine();
+            serverIn.flush();
+        }
+        return future.get(120, TimeUnit.SECONDS);
+    }
+
+    private String post(ObjectNode request) throws IOException, InterruptedException {
+        HttpRequest httpRequest = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + option("http-port", "8080") + "/"))
+                .POST(HttpRequest.BodyPublishers.ofString(request.toString()))
+                .build();
+        return http.send(httpRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private void awaitBreakpoint(long timeout, TimeUnit unit) throws InterruptedException {
+        if (breakpointNotifications.poll(timeout, unit) == null) {
+            throw new IllegalStateException("Target did not hit LoadTarget.onHit");
+        }
+    }
+
+    private void report(String title, double elapsedSeconds) {
+        System.out.println(title + ":");
+        System.out.println(String.format(Locale.ROOT, "  %-28s %8s %10s %10s %10s %10s", "name", "count", "req/s", "p50 ms", "p99 ms", "max ms"));
+        long total = 0;
+        for (Map.Entry<String, List<Long>> entry : new TreeMap<>(latencies).entrySet()) {
+            long[] sorted;
+            synchronized (entry.getValue()) {
+                sorted = entry.getValue().stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+            total += sorted.length;
+            System.out.println(String.format(Locale.ROOT, "  %-28s %8d %10s %10.3f %10.3f %10.3f", entry.getKey(), sorted.length,
+                    elapsedSeconds > 0 ? String.format(Locale.ROOT, "%.1f", sorted.length / elapsedSeconds) : "-",
+                    percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6));
+        }
+        if (elapsedSeconds > 0) {
+            System.out.println(String.format(Locale.ROOT, "  total throughput: %.1f req/s", total / elapsedSeconds));
+        }
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        int index = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private void pump(BufferedReader reader, java.util.function.Consumer<String> handler) {
+        Thread t = new Thread(() -> {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (handler != null) handler.accept(line);
+                }
+            } catch (IOException ignored) {
+            }
+        }, "harness-pump");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void shutdown() {
+        if (server != null) server.destroy();
+        if (target != null) target.destroy();
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static String javaExecutable() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
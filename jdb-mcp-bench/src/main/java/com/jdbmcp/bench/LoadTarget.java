@@ -0,0 +1,107 @@
+package com.jdbmcp.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synthetic debuggee for {@link LoadHarness}. Produces many threads, deep object graphs, hot loops
+ * and a configurable rate of calls to {@link #onHit}, the method the harness breaks on.
+ *
+ * <pre>
+ * --threads N     idle pool-style threads (default 200)
+ * --busy N        threads spinning in a hot loop (default 2)
+ * --depth N       depth of the object graph held by the hitting thread (default 6)
+ * --hitRate N     onHit calls per second, 0 for as fast as possible (default 0)
+ * </pre>
+ */
+public class LoadTarget {
+
+    static class Node {
+        final int id;
+        final String name;
+        final Map<String, Object> attributes = new HashMap<>();
+        final List<Node> children = new ArrayList<>();
+
+        Node(int id) {
+            this.id = id;
+            this.name = "node-" + id;
+            attributes.put("created", System.nanoTime());
+            attributes.put("label", "label-" + id);
+        }
+    }
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int threads = intArg(args, "--threads", 200);
+        int busy = intArg(args, "--busy", 2);
+        int depth = intArg(args, "--depth", 6);
+        int hitRate = intArg(args, "--hitRate", 0);
+
+        for (int i = 0; i < threads; i++) {
+            startDaemon("load-idle-" + i, () -> {
+                Object lock = new Object();
+                synchronized (lock) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < busy; i++) {
+            startDaemon("load-busy-" + i, () -> {
+                long x = 0;
+                while (true) {
+                    x = x * 31 + System.nanoTime();
+                    sink = x;
+                }
+            });
+        }
+
+        Node root = graph(depth, new int[1]);
+        long intervalNanos = hitRate > 0 ? 1_000_000_000L / hitRate : 0;
+        Thread hitter = new Thread(() -> {
+            long counter = 0;
+            while (true) {
+                long next = System.nanoTime() + intervalNanos;
+                onHit(root, counter++, System.currentTimeMillis());
+                while (intervalNanos > 0 && System.nanoTime() < next) {
+                    Thread.onSpinWait();
+                }
+            }
+        }, "load-hitter");
+        hitter.start();
+        System.out.println("LoadTarget ready: threads=" + threads + " busy=" + busy + " depth=" + depth + " hitRate=" + hitRate);
+        hitter.join();
+    }
+
+    static void onHit(Node root, long counter, long timestampMillis) {
+        sink = counter + root.id + timestampMillis;
+    }
+
+    static Node graph(int depth, int[] counter) {
+        Node node = new Node(counter[0]++);
+        if (depth > 1) {
+            for (int i = 0; i < 3; i++) {
+                node.children.add(graph(depth - 1, counter));
+            }
+        }
+        return node;
+    }
+
+    private static void startDaemon(String name, Runnable body) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static int intArg(String[] args, String name, int defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (name.equals(args[i])) return Integer.parseInt(args[i + 1]);
+        }
+        return defaultValue;
+    }
+}
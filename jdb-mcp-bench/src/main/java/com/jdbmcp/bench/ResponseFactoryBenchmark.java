@@ -0,0 +1,58 @@
+package com.jdbmcp.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdbmcp.McpResponseFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization cost of tool responses shaped like a VM state listing. Needs no target VM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseFactoryBenchmark {
+
+    @Param({"10", "600"})
+    public int threads;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonNode id = IntNode.valueOf(42);
+    private ObjectNode result;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        result = mapper.createObjectNode();
+        result.put("connected", true);
+        ArrayNode threadsNode = result.putArray("threads");
+        for (int i = 0; i < threads; i++) {
+            ObjectNode thread = threadsNode.addObject();
+            thread.put("threadName", "http-nio-8080-exec-" + i);
+            thread.put("status", "suspended");
+            thread.put("location", "org.apache.tomcat.util.threads.TaskQueue:" + (100 + i));
+            thread.put("className", "org.apache.tomcat.util.threads.TaskQueue");
+            thread.put("method", "take");
+            thread.put("line", 100 + i);
+            thread.putArray("stackTrace").add("org.apache.tomcat.util.threads.TaskQueue.take(TaskQueue.java:141)");
+        }
+        result.put("isSuspended", true);
+    }
+
+    @Benchmark
+    public String toolResponse() {
+        return McpResponseFactory.createMcpToolResponse(id, result);
+    }
+
+    @Benchmark
+    public String plainResponse() {
+        return McpResponseFactory.createResponse(id, result);
+    }
+}
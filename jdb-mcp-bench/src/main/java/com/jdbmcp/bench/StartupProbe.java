@@ -0,0 +1,94 @@
+package com.jdbmcp.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Measures time-to-first-response of the stdio server: spawns it repeatedly and times the
+ * {@code initialize} and {@code tools/list} responses from process start, the way an MCP client
+ * sees it on every editor start.
+ *
+ * <pre>
+ * --server-jar PATH    McpServer fat jar (default release/jdb-mcp.jar)
+ * --jvm-options "..."  options placed before -jar, e.g. "-XX:SharedArchiveFile=release/jdb-mcp.jsa"
+ * --runs N             measured runs after 2 warm-up runs (default 10)
+ * --target-ms N        exit with status 1 if the median initialize time exceeds this (default 0, no check)
+ * </pre>
+ */
+public class StartupProbe {
+    private static final String INITIALIZE = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{\"protocolVersion\":\"2024-11-05\"}}";
+    private static final String TOOLS_LIST = "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/list\"}";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        String jar = options.getOrDefault("server-jar", "release/jdb-mcp.jar");
+        String jvmOptions = options.getOrDefault("jvm-options", "").trim();
+        int runs = Integer.parseInt(options.getOrDefault("runs", "10"));
+        long targetMs = Long.parseLong(options.getOrDefault("target-ms", "0"));
+
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (!jvmOptions.isEmpty()) command.addAll(Arrays.asList(jvmOptions.split("\\s+")));
+        command.add("-jar");
+        command.add(jar);
+
+        long[] initialize = new long[runs];
+        long[] toolsList = new long[runs];
+        for (int i = -2; i < runs; i++) {
+            long[] sample = measure(command);
+            if (i >= 0) {
+                initialize[i] = sample[0];
+                toolsList[i] = sample[1];
+            }
+        }
+        Arrays.sort(initialize);
+        Arrays.sort(toolsList);
+        System.out.println("Command: " + String.join(" ", command));
+        System.out.println(String.format(Locale.ROOT, "  %-12s %10s %10s %10s", "response", "min ms", "p50 ms", "max ms"));
+        print("initialize", initialize);
+        print("tools/list", toolsList);
+
+        long median = initialize[runs / 2] / 1_000_000;
+        if (targetMs > 0) {
+            System.out.println("Target: initialize p50 <= " + targetMs + " ms: " + (median <= targetMs ? "met" : "MISSED"));
+            if (median > targetMs) System.exit(1);
+        }
+    }
+
+    /** Returns nanoseconds from process start to the initialize and tools/list responses. */
+    private static long[] measure(List<String> command) throws Exception {
+        long start = System.nanoTime();
+        Process server = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        try {
+            BufferedWriter in = new BufferedWriter(new OutputStreamWriter(server.getOutputStream(), StandardCharsets.UTF_8));
+            BufferedReader out = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+            in.write(INITIALIZE);
+            in.newLine();
+            in.flush();
+            expectResponse(out.readLine(), 1);
+            long initialized = System.nanoTime();
+            in.write(TOOLS_LIST);
+            in.newLine();
+            in.flush();
+            expectResponse(out.readLine(), 2);
+            return new long[]{initialized - start, System.nanoTime() - start};
+        } finally {
+            server.destroyForcibly().waitFor();
+        }
+    }
+
+    private static void expectResponse(String line, int id) {
+        if (line == null || !line.contains("\"id\":" + id)) {
+            throw new IllegalStateException("Unexpected server output (is the JVM logging to stdout?): " + line);
+        }
+    }
+
+    private static void print(String name, long[] sorted) {
+        System.out.println(String.format(Locale.ROOT, "  %-12s %10.0f %10.0f %10.0f", name,
+                sorted[0] / 1e6, sorted[sorted.length / 2] / 1e6, sorted[sorted.length - 1] / 1e6));
+    }
+}
@@ -0,0 +1,49 @@
+package com.jdbmcp.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.jdbmcp.JdiStateMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of thread and VM state mapping against a suspended target with many threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StateMapperBenchmark {
+
+    @Param({"50", "500"})
+    public int threads;
+
+    private TargetVm target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        target = TargetVm.launch(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        target.close();
+    }
+
+    @Benchmark
+    public JsonNode threadStateNoVars() {
+        return JdiStateMapper.getThreadState(target.thread(), 1, -1);
+    }
+
+    @Benchmark
+    public JsonNode threadStateWithVars() {
+        return JdiStateMapper.getThreadState(target.thread(), 5, 1);
+    }
+
+    @Benchmark
+    public JsonNode vmState() {
+        return JdiStateMapper.getVmState(target.vm());
+    }
+}
@@ -0,0 +1,114 @@
+package com.jdbmcp.bench;
+
+import com.sun.jdi.*;
+import com.sun.jdi.connect.Connector;
+import com.sun.jdi.connect.LaunchingConnector;
+import com.sun.jdi.event.*;
+import com.sun.jdi.request.BreakpointRequest;
+import com.sun.jdi.request.ClassPrepareRequest;
+import com.sun.jdi.request.EventRequest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Launches {@link BenchTarget} in a local JVM through the JDI command-line launcher and leaves its
+ * main thread suspended at {@code BenchTarget.ready}, so benchmarks read real values over JDWP.
+ */
+public class TargetVm implements AutoCloseable {
+    private final VirtualMachine vm;
+    private final ThreadReference thread;
+    private final Map<String, Value> locals = new HashMap<>();
+
+    /** Parameter names of {@code BenchTarget.ready}, in declaration order. */
+    private static final String[] READY_PARAMETERS = {
+        "deepObject", "wideArray", "objectArray", "largeString", "smallString", "list", "map"
+    };
+
+    private TargetVm(VirtualMachine vm, ThreadReference thread) throws Exception {
+        this.vm = vm;
+        this.thread = thread;
+        // Argument values are positional, so this works even if the target was built without -g
+        List<Value> arguments = thread.frame(0).getArgumentValues();
+        for (int i = 0; i < READY_PARAMETERS.length; i++) {
+            locals.put(READY_PARAMETERS[i], arguments.get(i));
+        }
+    }
+
+    public static TargetVm launch(int threads) throws Exception {
+        LaunchingConnector connector = Bootstrap.virtualMachineManager().defaultConnector();
+        Map<String, Connector.Argument> arguments = connector.defaultArguments();
+        arguments.get("main").setValue(BenchTarget.class.getName() + " " + threads);
+        arguments.get("options").setValue("-cp \"" + System.getProperty("java.class.path") + "\"");
+        VirtualMachine vm = connector.launch(arguments);
+        drain(vm.process().getInputStream());
+        drain(vm.process().getErrorStream());
+
+        ClassPrepareRequest cpr = vm.eventRequestManager().createClassPrepareRequest();
+        cpr.addClassFilter(BenchTarget.class.getName());
+        cpr.setSuspendPolicy(EventRequest.SUSPEND_ALL);
+        cpr.enable();
+        vm.resume();
+
+        EventQueue queue = vm.eventQueue();
+        while (true) {
+            EventSet eventSet = queue.remove(30_000);
+            if (eventSet == null) {
+                vm.exit(1);
+                throw new IllegalStateException("Benchmark target did not reach BenchTarget.ready");
+            }
+            for (Event event : eventSet) {
+                if (event instanceof ClassPrepareEvent) {
+                    ReferenceType type = ((ClassPrepareEvent) event).referenceType();
+                    List<Method> methods = type.methodsByName("ready");
+                    BreakpointRequest bp = vm.eventRequestManager().createBreakpointRequest(methods.get(0).location());
+                    bp.setSuspendPolicy(EventRequest.SUSPEND_ALL);
+                    bp.addCountFilter(1);
+                    bp.enable();
+                } else if (event instanceof BreakpointEvent) {
+                    return new TargetVm(vm, ((BreakpointEvent) event).thread());
+                } else if (event instanceof VMDisconnectEvent) {
+                    throw new IllegalStateException("Benchmark target exited during setup");
+                }
+            }
+            eventSet.resume();
+        }
+    }
+
+    private static void drain(java.io.InputStream in) {
+        Thread t = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                while (in.read(buffer) >= 0) {
+                    // discard
+                }
+            } catch (java.io.IOException ignored) {
+            }
+        }, "bench-target-drain");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public VirtualMachine vm() {
+        return vm;
+    }
+
+    public ThreadReference thread() {
+        return thread;
+    }
+
+    public Value local(String name) {
+        Value value = locals.get(name);
+        if (value == null) throw new IllegalArgumentException("No local named " + name);
+        return value;
+    }
+
+    @Override
+    public void close() {
+        try {
+            vm.exit(0);
+        } catch (VMDisconnectedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.jdbmcp.bench;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jdbmcp.JdiValueConverter;
+import com.sun.jdi.Value;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link JdiValueConverter#convertValue} against values living in a real target VM.
+ * Run with {@code -prof gc} to track allocation per conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValueConverterBenchmark {
+
+    @Param({"1", "3", "5"})
+    public int maxDepth;
+
+    private TargetVm target;
+    private Value deepObject;
+    private Value wideArray;
+    private Value objectArray;
+    private Value largeString;
+    private Value smallString;
+    private Value list;
+    private Value map;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        target = TargetVm.launch(50);
+        deepObject = target.local("deepObject");
+        wideArray = target.local("wideArray");
+        objectArray = target.local("objectArray");
+        largeString = target.local("largeString");
+        smallString = target.local("smallString");
+        list = target.local("list");
+        map = target.local("map");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        target.close();
+    }
+
+    @Benchmark
+    public ObjectNode deepObject() {
+        return JdiValueConverter.convertValue(deepObject, maxDepth);
+    }
+
+    @Benchmark
+    public ObjectNode widePrimitiveArray() {
+        return JdiValueConverter.convertValue(wideArray, maxDepth);
+    }
+
+    @Benchmark
+    public ObjectNode wideObjectArray() {
+        return JdiValueConverter.convertValue(objectArray, maxDepth);
+    }
+
+    @Benchmark
+    public ObjectNode largeString() {
+        return JdiValueConverter.convertValue(largeString, maxDepth);
+    }
+
+    @Benchmark
+    public ObjectNode smallString() {
+        return JdiValueConverter.convertValue(smallString, maxDepth);
+    }
+
+    @Benchmark
+    public ObjectNode arrayList() {
+        return JdiValueConverter.convertValue(list, maxDepth);
+    }
+
+    @Benchmark
+    public ObjectNode hashMap() {
+        return JdiValueConverter.convertValue(map, maxDepth);
+    }
+
+    @Benchmark
+    public ObjectNode hashMapRawFields() {
+        return JdiValueConverter.convertValue(map, maxDepth, JdiValueConverter.Budget.unlimited().withRawFields(true));
+    }
+}
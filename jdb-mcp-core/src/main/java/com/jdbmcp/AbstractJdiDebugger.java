@@ -6,8 +6,11 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.sun.jdi.*;
 import com.sun.jdi.request.BreakpointRequest;
+import com.sun.jdi.request.ClassPrepareRequest;
+import com.sun.jdi.request.EventRequest;
 import com.sun.jdi.request.EventRequestManager;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
@@ -18,20 +21,159 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public abstract class AbstractJdiDebugger {
     protected static final ObjectMapper mapper = new ObjectMapper();
-    protected VirtualMachine vm;
+    protected volatile VirtualMachine vm;
     protected Process process;
     protected final BlockingQueue<String> eventQueue = new LinkedBlockingQueue<>();
-    protected final StringBuilder outputBuffer = new StringBuilder();
+
+    /** Per-stream capacity of the captured target output; older output is dropped. */
+    public static final int OUTPUT_BUFFER_BYTES = 1 << 20;
+    protected final OutputRingBuffer stdoutBuffer = new OutputRingBuffer(OUTPUT_BUFFER_BYTES);
+    protected final OutputRingBuffer stderrBuffer = new OutputRingBuffer(OUTPUT_BUFFER_BYTES);
+    /** Read positions for reads without an explicit offset: index 0 stdout, 1 stderr. */
+    private final long[] outputCursors = new long[2];
     protected Consumer<String> eventListener;
 
-    protected final java.util.Map<String, java.util.Set<Integer>> deferredBreakpoints = new java.util.concurrent.ConcurrentHashMap<>();
+    /**
+     * Pending line breakpoints keyed by outer class name. Entries are kept after binding so that
+     * nested classes and classes reloaded by another classloader are bound as they get prepared.
+     */
+    protected final java.util.concurrent.ConcurrentMap<String, java.util.Set<Integer>> deferredBreakpoints = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.Map<String, List<ClassPrepareRequest>> classPrepareRequests = new java.util.concurrent.ConcurrentHashMap<>();
+    /** Journaled method breakpoints and watchpoints waiting for their class, keyed by outer class name. */
+    protected final java.util.concurrent.ConcurrentMap<String, java.util.Set<SessionJournal.Entry>> deferredRequests = new java.util.concurrent.ConcurrentHashMap<>();
+    protected SessionJournal journal;
+    protected final ExceptionTelemetry exceptionTelemetry = new ExceptionTelemetry();
+    protected final MethodTracer methodTracer = new MethodTracer();
+    protected final ContentionProfiler contentionProfiler = new ContentionProfiler();
+    protected final ClassLoadTimeline classLoadTimeline = new ClassLoadTimeline();
+    /** Live platform threads, kept current by thread start/death events so lookups skip allThreads(). */
+    protected final ThreadRegistry threadRegistry = new ThreadRegistry();
+    protected final ThreadChurnMonitor threadChurn = new ThreadChurnMonitor();
+    /** Liveness and stopped threads, kept from events so routine tool calls need no JDWP round-trip. */
+    protected final VmState vmState = new VmState();
+    protected final ObjectSummarizer summarizer = new ObjectSummarizer(vmState);
+    /** Recorded field time series by 'Class.field'. */
+    protected final java.util.concurrent.ConcurrentMap<String, FieldTimeline> fieldTimelines = new java.util.concurrent.ConcurrentHashMap<>();
+    /** Hit limits by logical breakpoint: 'OuterClass:line' or 'Class#method'. */
+    protected final java.util.concurrent.ConcurrentMap<String, HitLimiter> hitLimiters = new java.util.concurrent.ConcurrentHashMap<>();
+    /** Watches how long the target stays suspended and resumes it once the pause budget is spent. */
+    protected final PauseWatchdog pauseWatchdog = new PauseWatchdog(new Consumer<String>() {
+        @Override
+        public void accept(String pausedAt) {
+            resumeAfterPauseBudget(pausedAt);
+        }
+    });
+    private ObjectNode restoreSummary;
     protected boolean running = true;
     protected volatile ThreadReference lastSuspendedThread;
 
+    /**
+     * Virtual threads that stopped at a breakpoint or step, by uniqueID. JDWP leaves virtual threads out
+     * of allThreads() unless the agent runs with includevirtualthreads=y, so they are reached through their
+     * events instead. Cleared on resume.
+     */
+    protected final Map<Long, ThreadReference> eventThreads = new java.util.concurrent.ConcurrentHashMap<>();
+
+    private static final int MAX_OBJECT_HANDLES = 10000;
+    /** Recently rendered objects by uniqueID, so truncated nodes can be expanded later (LRU). */
+    protected final Map<Long, ObjectReference> objectHandles = new java.util.LinkedHashMap<Long, ObjectReference>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ObjectReference> eldest) {
+            return size() > MAX_OBJECT_HANDLES;
+        }
+    };
+
+    /** Journals request mutations of this session and replays the journal once the VM is connected. */
+    public void setJournal(SessionJournal journal) {
+        this.journal = journal;
+    }
+
+    /** What was replayed from the journal on connect, or null without a journal. */
+    public ObjectNode getRestoreSummary() {
+        return restoreSummary;
+    }
+
+    /**
+     * Forgets everything tied to the previous VM connection before the journal is replayed into a new one.
+     * Pending tables and the journal itself are kept.
+     */
+    protected void resetConnectionState() {
+        classPrepareRequests.clear();
+        exceptionTelemetry.forgetRequests();
+        methodTracer.forgetRequests();
+        contentionProfiler.forgetRequests();
+        classLoadTimeline.forgetRequests();
+        threadRegistry.forgetRequests();
+        threadChurn.forgetRequests();
+        summarizer.clearCache();
+        for (FieldTimeline timeline : fieldTimelines.values()) {
+            timeline.setRecording(false);
+        }
+        eventThreads.clear();
+        synchronized (objectHandles) {
+            objectHandles.clear();
+        }
+        lastSuspendedThread = null;
+    }
+
+    protected void journal(String kind, String className, String member) {
+        journal(kind, className, member, null);
+    }
+
+    /** Journals a breakpoint together with the hit limits currently registered under {@code limitKey}. */
+    protected void journal(String kind, String className, String member, String limitKey) {
+        if (journal != null) {
+            HitLimiter limiter = limitKey != null ? hitLimiters.get(limitKey) : null;
+            journal.add(new SessionJournal.Entry(kind, className, member, limiter != null ? limiter.toSpec() : null));
+        }
+    }
+
     public ThreadReference getLastSuspendedThread() {
         return lastSuspendedThread;
     }
 
+    /** The thread of the most recent stop that has not been resumed, or null while nothing is stopped. */
+    public ThreadReference focusThread() {
+        VmState.Stop stop = vmState.lastStop();
+        return stop != null ? stop.thread : null;
+    }
+
+    /** Threads stopped at an event, most recent first. */
+    public List<ThreadReference> stoppedThreads() {
+        List<ThreadReference> threads = new ArrayList<>();
+        for (VmState.Stop stop : vmState.stops()) {
+            threads.add(stop.thread);
+        }
+        return threads;
+    }
+
+    /**
+     * True when the thread is suspended. Answered from the session state; only a thread the session did
+     * not see stop (e.g. suspended by another debugger) costs a JDWP round-trip.
+     */
+    public boolean isSuspended(ThreadReference thread) {
+        return vmState.isSuspended(thread) || thread.isSuspended();
+    }
+
+    /**
+     * Fails while a summary call that ran out of time still runs on the thread: until it returns the
+     * thread has no frames to inspect and cannot be stepped or changed.
+     */
+    protected void checkNotInvoking(ThreadReference thread) throws Exception {
+        VmState.Invocation invocation = vmState.invocation(thread);
+        if (invocation != null) {
+            throw new Exception("Thread '" + JdiStateMapper.threadName(thread) + "' is still running " + invocation.method
+                    + ", called " + (System.currentTimeMillis() - invocation.sinceMillis) + " ms ago for a summary that ran out of time."
+                    + " It cannot be inspected, stepped or changed until that call returns; see runningInvocations in debug_summaries.");
+        }
+    }
+
+    public ObjectNode getSessionState() {
+        ObjectNode state = vmState.toJson();
+        state.put("liveThreads", threadRegistry.size());
+        return state;
+    }
+
     public void setEventListener(Consumer<String> listener) {
         this.eventListener = listener;
     }
@@ -40,53 +182,161 @@ public abstract class AbstractJdiDebugger {
         return eventQueue;
     }
 
-    public String getOutput() {
-        synchronized (outputBuffer) {
-            String out = outputBuffer.toString();
-            outputBuffer.setLength(0);
-            return out;
+    /**
+     * Pumps the stdout and stderr of a launched process into the ring buffers on dedicated daemon
+     * threads, so a chatty target can neither block on a full pipe nor grow server memory.
+     */
+    protected void startOutputPumps(Process process) {
+        startPump(process.getInputStream(), stdoutBuffer, "jdb-mcp-stdout");
+        startPump(process.getErrorStream(), stderrBuffer, "jdb-mcp-stderr");
+    }
+
+    private static void startPump(final java.io.InputStream in, final OutputRingBuffer target, String name) {
+        Thread pump = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] chunk = new byte[8192];
+                try {
+                    int n;
+                    while ((n = in.read(chunk)) >= 0) {
+                        target.write(chunk, 0, n);
+                    }
+                } catch (java.io.IOException e) {
+                    // Process exited
+                }
+            }
+        }, name);
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    /**
+     * Reads captured output of a launched target.
+     *
+     * @param stream   stdout, stderr, or null for both
+     * @param since    absolute byte offset to read from, or -1 to continue after the previous read
+     * @param maxBytes maximum bytes returned per stream
+     * @param grep     regular expression; when set only matching lines are returned, with their offsets
+     */
+    public JsonNode getOutput(String stream, long since, int maxBytes, String grep) {
+        ObjectNode result = mapper.createObjectNode();
+        java.util.regex.Pattern pattern = grep != null ? java.util.regex.Pattern.compile(grep) : null;
+        if (stream == null || "stdout".equalsIgnoreCase(stream)) {
+            result.set("stdout", readOutput(stdoutBuffer, 0, since, maxBytes, pattern));
+        }
+        if (stream == null || "stderr".equalsIgnoreCase(stream)) {
+            result.set("stderr", readOutput(stderrBuffer, 1, since, maxBytes, pattern));
+        }
+        if (process == null) {
+            result.put("note", "Output is only captured for targets started with debug_launch.");
+        }
+        return result;
+    }
+
+    private ObjectNode readOutput(OutputRingBuffer buffer, int index, long since, int maxBytes, java.util.regex.Pattern grep) {
+        OutputRingBuffer.Chunk chunk;
+        synchronized (outputCursors) {
+            chunk = buffer.read(since >= 0 ? since : outputCursors[index], maxBytes);
+            if (since < 0) outputCursors[index] = chunk.nextOffset();
+        }
+        ObjectNode node = mapper.createObjectNode();
+        node.put("offset", chunk.offset);
+        node.put("nextOffset", chunk.nextOffset());
+        if (chunk.dropped > 0) node.put("dropped", chunk.dropped);
+        if (chunk.remaining > 0) node.put("remaining", chunk.remaining);
+        String text = new String(chunk.data, java.nio.charset.StandardCharsets.UTF_8);
+        if (grep == null) {
+            node.put("text", text);
+            return node;
         }
+        ArrayNode matches = node.putArray("matches");
+        long lineOffset = chunk.offset;
+        for (String line : text.split("\n", -1)) {
+            if (grep.matcher(line).find()) {
+                ObjectNode match = matches.addObject();
+                match.put("offset", lineOffset);
+                match.put("line", line);
+            }
+            lineOffset += line.getBytes(java.nio.charset.StandardCharsets.UTF_8).length + 1;
+        }
+        return node;
     }
 
     public VirtualMachine getVm() {
         return vm;
     }
 
-    public boolean isAlive() {
-        if (vm == null) return false;
-        try {
-            vm.allThreads();
-            return true;
-        } catch (VMDisconnectedException e) {
-            return false;
+    /** Remembers a virtual event thread so it can be inspected by name or '#uniqueID' until the next resume. */
+    protected void trackEventThread(ThreadReference thread) {
+        if (VirtualThreads.isVirtual(thread)) {
+            eventThreads.put(thread.uniqueID(), thread);
+        }
+    }
+
+    /** Threads returned by allThreads() plus virtual threads stopped at an event. */
+    protected List<ThreadReference> inspectableThreads() {
+        List<ThreadReference> threads = new ArrayList<>(Jdwp.allThreads(vm));
+        if (!eventThreads.isEmpty()) {
+            java.util.Set<Long> ids = new java.util.HashSet<>();
+            for (ThreadReference thread : threads) ids.add(thread.uniqueID());
+            for (ThreadReference thread : eventThreads.values()) {
+                if (ids.add(thread.uniqueID())) threads.add(thread);
+            }
         }
+        return threads;
+    }
+
+    /** Finds a thread by name or '#uniqueID', including virtual threads stopped at an event. */
+    public ThreadReference findThread(String name) {
+        for (ThreadReference thread : eventThreads.values()) {
+            if (isNamed(thread, name)) return thread;
+        }
+        if (threadRegistry.isLive()) return threadRegistry.find(name);
+        for (ThreadReference thread : Jdwp.allThreads(vm)) {
+            if (isNamed(thread, name)) return thread;
+        }
+        return null;
+    }
+
+    private static boolean isNamed(ThreadReference thread, String name) {
+        return name.equals("#" + thread.uniqueID()) || name.equals(JdiStateMapper.threadName(thread));
+    }
+
+    /** Connected, as last reported by the event loop; no JDWP round-trip. */
+    public boolean isAlive() {
+        return vm != null && vmState.isConnected();
     }
 
     public ObjectNode setBreakpoint(String className, int line) throws Exception {
+        return setBreakpoint(className, line, null);
+    }
+
+    /**
+     * Sets a line breakpoint, optionally with hit limits. Without a limiter, limits set earlier for the
+     * same line are kept.
+     */
+    public ObjectNode setBreakpoint(String className, int line, HitLimiter limiter) throws Exception {
         ObjectNode result = mapper.createObjectNode();
         result.put("className", className);
         result.put("line", line);
+        String limitKey = outerClassName(className) + ":" + line;
+        if (limiter != null) {
+            hitLimiters.put(limitKey, limiter);
+            result.set("limit", limiter.toJson());
+        }
 
+        addDeferredBreakpoint(className, line);
         if (vm == null) {
-            java.util.Set<Integer> lines = deferredBreakpoints.get(className);
-            if (lines == null) {
-                lines = new java.util.HashSet<>();
-                deferredBreakpoints.put(className, lines);
-            }
-            lines.add(line);
             result.put("status", "deferred");
             result.put("reason", "Not attached to VM");
+            journal(SessionJournal.LINE, className, String.valueOf(line), limitKey);
             return result;
         }
 
-        // Add current context (first suspended thread) for convenience
-        ThreadReference contextThread = null;
-        for (ThreadReference thread : vm.allThreads()) {
-            if (thread.isSuspended()) {
-                contextThread = thread;
-                result.set("currentContext", JdiStateMapper.getThreadState(thread, 5, 0));
-                break;
-            }
+        // Add current context (the thread of the latest stop) for convenience
+        ThreadReference contextThread = focusThread();
+        if (contextThread != null) {
+            result.set("currentContext", JdiStateMapper.getThreadState(contextThread, 5, 0));
         }
         
         // Add current VM state context
@@ -94,23 +344,12 @@ public abstract class AbstractJdiDebugger {
 
         List<ReferenceType> classes = vm.classesByName(className);
         if (classes.isEmpty()) {
-            java.util.Set<Integer> lines = deferredBreakpoints.get(className);
-            if (lines == null) {
-                lines = new java.util.HashSet<>();
-                deferredBreakpoints.put(className, lines);
-            }
-            lines.add(line);
-            // Create ClassPrepareRequest to set it when loaded
-            com.sun.jdi.request.ClassPrepareRequest cpr = vm.eventRequestManager().createClassPrepareRequest();
-            cpr.addClassFilter(className);
-            cpr.setSuspendPolicy(com.sun.jdi.request.EventRequest.SUSPEND_ALL);
-            cpr.enable();
-            
             result.put("status", "deferred");
             result.put("reason", "Class '" + className + "' not loaded yet. Breakpoint will be set when class is loaded.");
             if (contextThread != null) {
                 result.put("contextInfo", "Attempted to set breakpoint from thread '" + contextThread.name() + "' at " + contextThread.frame(0).location());
             }
+            journal(SessionJournal.LINE, className, String.valueOf(line), limitKey);
             return result;
         }
         
@@ -120,17 +359,24 @@ public abstract class AbstractJdiDebugger {
         for (ReferenceType type : classes) {
             try {
                 List<Location> locs = type.locationsOfLine(line);
-                if (!locs.isEmpty()) {
-                    for (Location loc : locs) {
-                        if (!isBreakpointAlreadySet(loc)) {
-                            BreakpointRequest bp = vm.eventRequestManager().createBreakpointRequest(loc);
-                            bp.enable();
-                            set = true;
-                            locations.add(loc.toString());
-                        } else {
-                            set = true; // Already set
-                            locations.add(loc.toString() + " (already set)");
+                if (locs.isEmpty()) {
+                    // The line may belong to a nested or anonymous class of the requested type
+                    for (ReferenceType nested : type.nestedTypes()) {
+                        try {
+                            locs = nested.locationsOfLine(line);
+                        } catch (AbsentInformationException e) {
+                            continue;
                         }
+                        if (!locs.isEmpty()) break;
+                    }
+                }
+                for (Location loc : locs) {
+                    if (installBreakpoint(loc, limitKey)) {
+                        set = true;
+                        locations.add(loc.toString());
+                    } else {
+                        set = true; // Already set
+                        locations.add(loc.toString() + " (already set)");
                     }
                 }
             } catch (AbsentInformationException e) {
@@ -145,7 +391,10 @@ public abstract class AbstractJdiDebugger {
             result.put("status", "success");
             ArrayNode locArray = result.putArray("locations");
             for (String loc : locations) locArray.add(loc);
+            journal(SessionJournal.LINE, className, String.valueOf(line), limitKey);
         } else {
+            removeDeferredBreakpoint(className, line);
+            if (limiter != null) hitLimiters.remove(limitKey, limiter);
             result.put("status", "error");
             String reason = "No executable code found at line " + line + " in class " + className + ".";
             if (lastError != null) {
@@ -163,19 +412,241 @@ public abstract class AbstractJdiDebugger {
         return result;
     }
 
+    /**
+     * Records a line breakpoint in the pending table and, when attached, makes sure a class-prepare
+     * request covers the outer class and all of its nested classes.
+     */
+    protected void addDeferredBreakpoint(String className, int line) {
+        String outerName = outerClassName(className);
+        java.util.Set<Integer> lines = deferredBreakpoints.get(outerName);
+        if (lines == null) {
+            java.util.Set<Integer> created = Collections.newSetFromMap(new java.util.concurrent.ConcurrentHashMap<Integer, Boolean>());
+            lines = deferredBreakpoints.putIfAbsent(outerName, created);
+            if (lines == null) lines = created;
+        }
+        lines.add(line);
+        if (vm != null) {
+            ensureClassPrepareRequest(outerName);
+        }
+    }
+
+    protected void removeDeferredBreakpoint(String className, int line) {
+        String outerName = outerClassName(className);
+        java.util.Set<Integer> lines = deferredBreakpoints.get(outerName);
+        if (lines != null) {
+            lines.remove(line);
+            if (lines.isEmpty()) {
+                deferredBreakpoints.remove(outerName);
+                if (deferredRequests.containsKey(outerName)) return;
+                List<ClassPrepareRequest> cprs = classPrepareRequests.remove(outerName);
+                if (cprs != null && vm != null) {
+                    try {
+                        vm.eventRequestManager().deleteEventRequests(cprs);
+                    } catch (VMDisconnectedException e) {}
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the class-prepare requests of an outer class: one for the class itself and one for its
+     * nested, anonymous and local classes ('Outer$*'). 'Outer*' would also match every class sharing the
+     * prefix (OuterImpl, OuterRegistry), each suspending its loading thread for nothing. Only the
+     * preparing thread is suspended while breakpoints are bound.
+     */
+    private void ensureClassPrepareRequest(String outerName) {
+        if (classPrepareRequests.containsKey(outerName)) return;
+        List<ClassPrepareRequest> cprs = new ArrayList<>(2);
+        for (String filter : new String[]{outerName, outerName + "$*"}) {
+            ClassPrepareRequest cpr = vm.eventRequestManager().createClassPrepareRequest();
+            cpr.addClassFilter(filter);
+            cpr.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+            cpr.enable();
+            cprs.add(cpr);
+        }
+        classPrepareRequests.put(outerName, cprs);
+    }
+
+    /**
+     * Queues a journaled method breakpoint or watchpoint until its class is prepared. Kept after
+     * binding, like line breakpoints, so reloaded classes get it too.
+     */
+    protected void addDeferredRequest(SessionJournal.Entry entry) {
+        String outerName = outerClassName(entry.className);
+        java.util.Set<SessionJournal.Entry> pending = deferredRequests.get(outerName);
+        if (pending == null) {
+            java.util.Set<SessionJournal.Entry> created = Collections.newSetFromMap(new java.util.concurrent.ConcurrentHashMap<SessionJournal.Entry, Boolean>());
+            pending = deferredRequests.putIfAbsent(outerName, created);
+            if (pending == null) pending = created;
+        }
+        pending.add(entry);
+        if (vm != null) {
+            ensureClassPrepareRequest(outerName);
+        }
+    }
+
+    /**
+     * Replays the journal into the pending tables without touching loaded classes; binding happens in
+     * {@link #installDeferredBreakpoints()} and on class-prepare, so a large setup restores in one pass.
+     * Returns false for entry kinds this debugger cannot restore.
+     */
+    protected boolean restore(SessionJournal.Entry entry) {
+        if (SessionJournal.LINE.equals(entry.kind)) {
+            int line = Integer.parseInt(entry.member);
+            if (entry.limits != null) hitLimiters.put(outerClassName(entry.className) + ":" + line, HitLimiter.parse(entry.limits));
+            addDeferredBreakpoint(entry.className, line);
+            return true;
+        }
+        if (SessionJournal.METHOD.equals(entry.kind) && entry.limits != null) {
+            hitLimiters.put(entry.className + "#" + entry.member, HitLimiter.parse(entry.limits));
+        }
+        if (SessionJournal.METHOD.equals(entry.kind) || SessionJournal.ACCESS.equals(entry.kind)
+                || SessionJournal.MODIFICATION.equals(entry.kind)) {
+            addDeferredRequest(entry);
+            return true;
+        }
+        return false;
+    }
+
+    private void restoreJournal() {
+        if (journal == null) return;
+        long start = System.nanoTime();
+        ObjectNode summary = mapper.createObjectNode();
+        summary.put("journal", journal.getFile() != null ? journal.getFile().getPath() : null);
+        int restored = 0;
+        ArrayNode skipped = summary.putArray("skipped");
+        for (SessionJournal.Entry entry : journal.entries()) {
+            try {
+                if (restore(entry)) {
+                    restored++;
+                } else {
+                    skipped.add(entry.toString());
+                }
+            } catch (Exception e) {
+                skipped.add(entry + ": " + (e.getMessage() != null ? e.getMessage() : e.toString()));
+            }
+        }
+        summary.put("restored", restored);
+        summary.put("elapsedMs", (System.nanoTime() - start) / 1000000);
+        restoreSummary = summary;
+    }
+
+    /**
+     * Starts the thread registry, replays the session journal, installs class-prepare requests for
+     * breakpoints registered before attaching and binds the ones whose classes are already loaded. Called
+     * once the VM connection is established.
+     */
+    protected void installDeferredBreakpoints() {
+        vmState.connected();
+        try {
+            threadRegistry.start(vm);
+        } catch (Exception e) {
+            // Lookups fall back to allThreads()
+            System.err.println("Failed to start the thread registry: " + e.getMessage());
+        }
+        restoreJournal();
+        java.util.Set<String> outerNames = new java.util.HashSet<>(deferredBreakpoints.keySet());
+        outerNames.addAll(deferredRequests.keySet());
+        for (String outerName : outerNames) {
+            ensureClassPrepareRequest(outerName);
+            for (ReferenceType type : vm.classesByName(outerName)) {
+                bindDeferredBreakpoints(type);
+                for (ReferenceType nested : type.nestedTypes()) {
+                    bindDeferredBreakpoints(nested);
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds every pending line of the type's outer class to all matching locations in the type.
+     * Invoked from the event loop for each prepared class; returns the number of new breakpoints.
+     */
+    protected int bindDeferredBreakpoints(ReferenceType type) {
+        String className = type.name();
+        bindDeferredRequests(type);
+        java.util.Set<Integer> lines = deferredBreakpoints.get(outerClassName(className));
+        if (lines == null) return 0;
+        int bound = 0;
+        for (int line : lines) {
+            try {
+                for (Location loc : type.locationsOfLine(line)) {
+                    if (installBreakpoint(loc, outerClassName(className) + ":" + line)) {
+                        bound++;
+                    }
+                }
+            } catch (AbsentInformationException e) {
+                System.err.println("Cannot set deferred breakpoint in " + className + ": absent line information");
+                return bound;
+            } catch (Exception e) {
+                System.err.println("Failed to set deferred breakpoint in " + className + " at line " + line + ": " + (e.getMessage() != null ? e.getMessage() : e.toString()));
+            }
+        }
+        if (bound > 0) {
+            System.err.println("Set " + bound + " deferred breakpoint location(s) in " + className);
+        }
+        return bound;
+    }
+
+    private void bindDeferredRequests(ReferenceType type) {
+        java.util.Set<SessionJournal.Entry> pending = deferredRequests.get(outerClassName(type.name()));
+        if (pending == null) return;
+        EventRequestManager erm = vm.eventRequestManager();
+        for (SessionJournal.Entry entry : pending) {
+            if (!entry.className.equals(type.name())) continue;
+            try {
+                if (SessionJournal.METHOD.equals(entry.kind)) {
+                    for (Method method : type.methodsByName(entry.member)) {
+                        Location loc = method.location();
+                        if (loc != null) {
+                            installBreakpoint(loc, entry.className + "#" + entry.member);
+                        }
+                    }
+                } else {
+                    Field field = type.fieldByName(entry.member);
+                    if (field == null) {
+                        System.err.println("Cannot restore watchpoint: field " + entry.member + " not found in " + type.name());
+                    } else if (!isWatchpointAlreadySet(field, SessionJournal.ACCESS.equals(entry.kind))) {
+                        if (SessionJournal.ACCESS.equals(entry.kind)) {
+                            erm.createAccessWatchpointRequest(field).enable();
+                        } else {
+                            erm.createModificationWatchpointRequest(field).enable();
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to restore " + entry + ": " + (e.getMessage() != null ? e.getMessage() : e.toString()));
+            }
+        }
+    }
+
+    private boolean isWatchpointAlreadySet(Field field, boolean access) {
+        EventRequestManager erm = vm.eventRequestManager();
+        List<? extends com.sun.jdi.request.WatchpointRequest> requests = access ? erm.accessWatchpointRequests() : erm.modificationWatchpointRequests();
+        for (com.sun.jdi.request.WatchpointRequest request : requests) {
+            if (request.field().equals(field) && request.getProperty(FieldTimeline.PROPERTY) == null) return true;
+        }
+        return false;
+    }
+
+    protected static String outerClassName(String className) {
+        int idx = className.indexOf('$');
+        return idx > 0 ? className.substring(0, idx) : className;
+    }
+
     public JsonNode resume() throws Exception {
         if (vm == null) throw new Exception("Not attached");
         
         ObjectNode result = mapper.createObjectNode();
         ArrayNode resumingThreads = result.putArray("resumingFrom");
         
-        for (ThreadReference thread : vm.allThreads()) {
+        for (ThreadReference thread : inspectableThreads()) {
             if (thread.isSuspended()) {
                 ObjectNode threadInfo = (ObjectNode) JdiStateMapper.getThreadState(thread, 1, 0);
                 
                 // Add breakpoint info if any
                 try {
-                    if (!thread.frames().isEmpty()) {
+                    if (!Jdwp.frames(thread).isEmpty()) {
                         Location loc = thread.frame(0).location();
                         for (BreakpointRequest bp : vm.eventRequestManager().breakpointRequests()) {
                             if (bp.isEnabled() && bp.location().equals(loc)) {
@@ -190,6 +661,9 @@ public abstract class AbstractJdiDebugger {
             }
         }
         
+        eventThreads.clear();
+        pauseWatchdog.resumed();
+        vmState.resumed();
         vm.resume();
         result.put("message", "VM resumed");
         result.set("vmState", JdiStateMapper.getVmState(vm));
@@ -201,21 +675,24 @@ public abstract class AbstractJdiDebugger {
         ArrayNode bpList = result.putArray("activeBreakpoints");
         if (vm != null) {
             for (BreakpointRequest bp : vm.eventRequestManager().breakpointRequests()) {
+                if (bp.getProperty(ThreadChurnMonitor.PROPERTY) != null) continue;
                 ObjectNode node = bpList.addObject();
                 node.put("type", "breakpoint");
                 node.put("location", bp.location().toString());
                 node.put("className", bp.location().declaringType().name());
                 node.put("line", bp.location().lineNumber());
                 node.put("enabled", bp.isEnabled());
+                Object limiter = bp.getProperty(HitLimiter.PROPERTY);
+                if (limiter instanceof HitLimiter) {
+                    node.set("limit", ((HitLimiter) limiter).toJson());
+                }
                 
-                // Find threads suspended at this breakpoint
+                // Threads stopped at this breakpoint
                 ArrayNode threadsAtBp = node.putArray("suspendedThreads");
-                for (ThreadReference thread : vm.allThreads()) {
-                    if (thread.isSuspended()) {
+                for (VmState.Stop stop : vmState.stops()) {
+                    if (bp.location().equals(stop.location)) {
                         try {
-                            if (!thread.frames().isEmpty() && thread.frame(0).location().equals(bp.location())) {
-                                threadsAtBp.add(JdiStateMapper.getThreadState(thread, 1, -1));
-                            }
+                            threadsAtBp.add(JdiStateMapper.getThreadState(stop.thread, 1, -1));
                         } catch (Exception e) {}
                     }
                 }
@@ -227,58 +704,200 @@ public abstract class AbstractJdiDebugger {
                 node.put("type", "access_watchpoint");
                 node.put("field", wp.field().toString());
                 node.put("enabled", wp.isEnabled());
+                if (wp.getProperty(FieldTimeline.PROPERTY) != null) node.put("recording", true);
             }
             for (com.sun.jdi.request.ModificationWatchpointRequest wp : vm.eventRequestManager().modificationWatchpointRequests()) {
                 ObjectNode node = wpList.addObject();
                 node.put("type", "modification_watchpoint");
                 node.put("field", wp.field().toString());
                 node.put("enabled", wp.isEnabled());
+                if (wp.getProperty(FieldTimeline.PROPERTY) != null) node.put("recording", true);
             }
         }
         
-        // Add deferred breakpoints
+        // Add deferred breakpoints (classes not loaded yet)
         ObjectNode deferred = result.putObject("deferredBreakpoints");
         for (java.util.Map.Entry<String, java.util.Set<Integer>> entry : deferredBreakpoints.entrySet()) {
+            if (vm != null && !vm.classesByName(entry.getKey()).isEmpty()) continue;
             ArrayNode lines = deferred.putArray(entry.getKey());
             for (Integer line : entry.getValue()) lines.add(line);
         }
+        ArrayNode deferredRequestList = result.putArray("deferredRequests");
+        for (java.util.Map.Entry<String, java.util.Set<SessionJournal.Entry>> entry : deferredRequests.entrySet()) {
+            if (vm != null && !vm.classesByName(entry.getKey()).isEmpty()) continue;
+            for (SessionJournal.Entry request : entry.getValue()) deferredRequestList.add(request.toString());
+        }
         
         return result;
     }
 
-    public JsonNode listThreads() {
-        ArrayNode result = mapper.createArrayNode();
-        if (vm != null) {
-            for (ThreadReference thread : vm.allThreads()) {
-                result.add(JdiStateMapper.getThreadState(thread, 1, -1));
+    /**
+     * Lists threads with filters and cursor paging, ordered by thread uniqueID so cursors stay stable
+     * while threads come and go. Filters are evaluated lazily, cheapest first (name, state, group, then
+     * virtual), and only until the page is full, so a VM with a huge number of (virtual) threads is never
+     * inspected thread by thread.
+     *
+     * @param state        running, sleeping, monitor, wait, zombie, not_started or suspended; null for any
+     * @param namePattern  'prefix*', '*suffix' or substring; null for any
+     * @param group        exact thread group name; null for any
+     * @param virtual      include, exclude or only; null for include
+     * @param cursor       uniqueID of the last thread of the previous page, or 0 for the first page
+     * @param limit        page size (threads, or groups when grouping)
+     * @param sample       when positive, up to this many randomly chosen matching threads instead of a page
+     * @param groupByStack collapse threads with identical top {@code stackDepth} frames into one entry
+     */
+    public JsonNode listThreads(String state, String namePattern, String group, String virtual, long cursor, int limit,
+                                int sample, boolean groupByStack, int stackDepth) {
+        ObjectNode result = mapper.createObjectNode();
+        if (vm == null) {
+            result.putArray(groupByStack ? "groups" : "threads");
+            result.put("threadCount", 0);
+            return result;
+        }
+        limit = Math.max(1, limit);
+        List<ThreadReference> candidates = inspectableThreads();
+        result.put("threadCount", candidates.size());
+        if (sample > 0) {
+            Collections.shuffle(candidates);
+        } else {
+            Collections.sort(candidates, new java.util.Comparator<ThreadReference>() {
+                @Override
+                public int compare(ThreadReference a, ThreadReference b) {
+                    return Long.compare(a.uniqueID(), b.uniqueID());
+                }
+            });
+        }
+
+        // Grouping needs every match unless sampling; a page needs one extra match to know there is a next one
+        int wanted = sample > 0 ? sample : groupByStack ? Integer.MAX_VALUE : limit + 1;
+        List<ThreadReference> matched = new ArrayList<>();
+        int scanned = 0;
+        for (ThreadReference thread : candidates) {
+            if (matched.size() >= wanted) break;
+            if (sample <= 0 && !groupByStack && thread.uniqueID() <= cursor) continue;
+            scanned++;
+            try {
+                if (namePattern != null && !matchesPattern(JdiStateMapper.threadName(thread), namePattern)) continue;
+                if (state != null && !matchesState(thread, state)) continue;
+                if (group != null) {
+                    ThreadGroupReference tg = thread.threadGroup();
+                    if (tg == null || !group.equals(tg.name())) continue;
+                }
+                if (virtual != null && !"include".equalsIgnoreCase(virtual)
+                        && VirtualThreads.isVirtual(thread) != "only".equalsIgnoreCase(virtual)) continue;
+                matched.add(thread);
+            } catch (ObjectCollectedException e) {
+                // Thread died while listing
+            }
+        }
+        result.put("scanned", scanned);
+        if (sample > 0) result.put("sampled", true);
+
+        if (groupByStack) {
+            result.put("matched", matched.size());
+            return groupThreadsByStack(result, matched, Math.max(1, stackDepth), sample > 0 ? 0 : (int) cursor, limit);
+        }
+
+        // Carrier -> virtual thread, known for the virtual threads that stopped at an event
+        Map<Long, String> mounted = new java.util.HashMap<>();
+        for (ThreadReference vthread : eventThreads.values()) {
+            ThreadReference carrier = VirtualThreads.carrierOf(vthread);
+            if (carrier != null) mounted.put(carrier.uniqueID(), JdiStateMapper.threadName(vthread));
+        }
+        ArrayNode threadsNode = result.putArray("threads");
+        int pageSize = sample > 0 ? sample : limit;
+        for (int i = 0; i < matched.size() && i < pageSize; i++) {
+            ThreadReference thread = matched.get(i);
+            ObjectNode threadNode = (ObjectNode) JdiStateMapper.getThreadState(thread, 1, -1);
+            threadNode.put("id", thread.uniqueID());
+            String vthread = mounted.get(thread.uniqueID());
+            if (vthread != null) threadNode.put("mountedVirtualThread", vthread);
+            threadsNode.add(threadNode);
+        }
+        if (sample <= 0 && matched.size() > limit) {
+            result.put("nextCursor", matched.get(limit - 1).uniqueID());
+        }
+        return result;
+    }
+
+    /**
+     * Groups threads by signature: the top frames for suspended threads, the JDWP status otherwise.
+     * Only the top frames are fetched. The cursor for groups is the index of the next group.
+     */
+    private JsonNode groupThreadsByStack(ObjectNode result, List<ThreadReference> threads, int stackDepth, int cursor, int limit) {
+        Map<String, ObjectNode> groups = new java.util.LinkedHashMap<>();
+        for (ThreadReference thread : threads) {
+            List<String> stack = new ArrayList<>();
+            String status;
+            try {
+                status = thread.isSuspended() ? "suspended" : JdiStateMapper.statusName(thread.status());
+                if (thread.isSuspended()) {
+                    int depth = Math.min(stackDepth, thread.frameCount());
+                    for (StackFrame frame : thread.frames(0, depth)) {
+                        stack.add(frame.location().toString());
+                    }
+                }
+            } catch (Exception e) {
+                status = "unknown";
+            }
+            String signature = status + "|" + stack;
+            ObjectNode groupNode = groups.get(signature);
+            if (groupNode == null) {
+                groupNode = mapper.createObjectNode();
+                groupNode.put("signature", Integer.toHexString(signature.hashCode()));
+                groupNode.put("status", status);
+                groupNode.put("count", 0);
+                ArrayNode stackNode = groupNode.putArray("stackTrace");
+                for (String frame : stack) stackNode.add(frame);
+                groupNode.putArray("sampleThreads");
+                groups.put(signature, groupNode);
+            }
+            groupNode.put("count", groupNode.get("count").asInt() + 1);
+            ArrayNode samples = (ArrayNode) groupNode.get("sampleThreads");
+            if (samples.size() < 5) samples.add(JdiStateMapper.threadName(thread));
+        }
+
+        List<ObjectNode> sorted = new ArrayList<>(groups.values());
+        Collections.sort(sorted, new java.util.Comparator<ObjectNode>() {
+            @Override
+            public int compare(ObjectNode a, ObjectNode b) {
+                return b.get("count").asInt() - a.get("count").asInt();
             }
+        });
+        result.put("groupCount", sorted.size());
+        ArrayNode groupsNode = result.putArray("groups");
+        int end = Math.min(sorted.size(), cursor + limit);
+        for (int i = cursor; i < end; i++) {
+            groupsNode.add(sorted.get(i));
+        }
+        if (end < sorted.size()) {
+            result.put("nextCursor", end);
         }
         return result;
     }
 
+    private static boolean matchesState(ThreadReference thread, String state) {
+        if ("suspended".equalsIgnoreCase(state)) return thread.isSuspended();
+        return state.equalsIgnoreCase(JdiStateMapper.statusName(thread.status()));
+    }
+
+    /** Matches names against 'prefix*', '*suffix' or a plain substring. */
+    protected static boolean matchesPattern(String name, String filter) {
+        if (filter.endsWith("*")) {
+            return name.startsWith(filter.substring(0, filter.length() - 1));
+        } else if (filter.startsWith("*")) {
+            return name.endsWith(filter.substring(1));
+        }
+        return name.contains(filter);
+    }
+
     public JsonNode listClasses(String filter) {
         ArrayNode result = mapper.createArrayNode();
         if (vm != null) {
             List<ReferenceType> classes = vm.allClasses();
             int count = 0;
             for (ReferenceType type : classes) {
-                boolean match = false;
-                if (filter == null) {
-                    match = true;
-                } else {
-                    String name = type.name();
-                    if (filter.endsWith("*")) {
-                        String prefix = filter.substring(0, filter.length() - 1);
-                        if (name.startsWith(prefix)) match = true;
-                    } else if (filter.startsWith("*")) {
-                        String suffix = filter.substring(1);
-                        if (name.endsWith(suffix)) match = true;
-                    } else {
-                        if (name.contains(filter)) match = true;
-                    }
-                }
-
-                if (match) {
+                if (filter == null || matchesPattern(type.name(), filter)) {
                     result.add(type.name());
                     if (++count > 1000) break;
                 }
@@ -300,26 +919,57 @@ public abstract class AbstractJdiDebugger {
     }
 
     public JsonNode getVariables(String threadName, int frameIndex, String scope, int maxDepth) throws Exception {
+        return getVariables(threadName, frameIndex, scope, maxDepth, 0);
+    }
+
+    /**
+     * Lists variables of a frame. With {@code maxBytes > 0} the output is rendered breadth-first within
+     * that budget: objects that do not fit are returned as summaries with a handle for
+     * {@link #expandHandle}, and no further frames or values are fetched once the budget is spent.
+     */
+    public JsonNode getVariables(String threadName, int frameIndex, String scope, int maxDepth, long maxBytes) throws Exception {
+        return getVariables(threadName, frameIndex, scope, maxDepth, maxBytes, false);
+    }
+
+    /** As above; {@code rawFields} renders JDK collections field by field instead of as their contents. */
+    public JsonNode getVariables(String threadName, int frameIndex, String scope, int maxDepth, long maxBytes, boolean rawFields) throws Exception {
         ArrayNode threadsNode = mapper.createArrayNode();
         boolean listAllThreads = "ALL".equalsIgnoreCase(threadName);
+        JdiValueConverter.Budget budget = new JdiValueConverter.Budget(maxBytes).withRawFields(rawFields);
         
         if (threadName == null && !listAllThreads) {
             throw new Exception("threadName is required.");
         }
 
-        for (ThreadReference thread : vm.allThreads()) {
-            if (!listAllThreads && !thread.name().equals(threadName)) {
-                continue;
-            }
+        List<ThreadReference> candidates;
+        if (listAllThreads) {
+            candidates = inspectableThreads();
+        } else {
+            ThreadReference found = findThread(threadName);
+            candidates = found != null ? Collections.singletonList(found) : Collections.<ThreadReference>emptyList();
+        }
+        for (ThreadReference thread : candidates) {
+            if (!listAllThreads) checkNotInvoking(thread);
             if (thread.isSuspended()) {
+                if (listAllThreads && isSystemThread(thread)) {
+                    continue;
+                }
                 ObjectNode threadNode = threadsNode.addObject();
-                threadNode.put("thread", thread.name());
+                threadNode.put("thread", JdiStateMapper.threadName(thread));
+                if (budget.isExhausted()) {
+                    threadNode.put("truncated", true);
+                    continue;
+                }
                 ArrayNode framesNode = threadNode.putArray("frames");
                 
                 try {
-                    List<StackFrame> frames = thread.frames();
-                    if (frameIndex < frames.size()) {
-                        StackFrame frame = frames.get(frameIndex);
+                    StackFrame frame;
+                    try {
+                        frame = Jdwp.frame(thread, frameIndex);
+                    } catch (IndexOutOfBoundsException e) {
+                        frame = null;
+                    }
+                    if (frame != null) {
                         ObjectNode frameNode = framesNode.addObject();
                         frameNode.put("location", frame.location().toString());
                         frameNode.put("frameIndex", frameIndex);
@@ -327,15 +977,16 @@ public abstract class AbstractJdiDebugger {
                         
                         boolean showLocals = "LOCAL".equalsIgnoreCase(scope) || "ALL".equalsIgnoreCase(scope);
                         boolean showThis = "THIS".equalsIgnoreCase(scope) || "ALL".equalsIgnoreCase(scope);
+                        Map<String, Value> values = new java.util.LinkedHashMap<>();
 
                         // Local variables
                         if (showLocals) {
                              try {
                                 List<LocalVariable> visibleVars = frame.visibleVariables();
                                 if (visibleVars != null && !visibleVars.isEmpty()) {
-                                    Map<LocalVariable, Value> vars = frame.getValues(visibleVars);
+                                    Map<LocalVariable, Value> vars = Jdwp.getValues(frame, visibleVars);
                                     for (Map.Entry<LocalVariable, Value> entry : vars.entrySet()) {
-                                        varsNode.set(entry.getKey().name(), JdiValueConverter.convertValue(entry.getValue(), maxDepth));
+                                        values.put(entry.getKey().name(), entry.getValue());
                                     }
                                 }
                             } catch (AbsentInformationException e) {
@@ -343,18 +994,15 @@ public abstract class AbstractJdiDebugger {
                             }
                         }
                         
-                        // 'this' fields
+                        // 'this' object, rendered through the converter like any other value
                         if (showThis) {
                              ObjectReference thisObj = frame.thisObject();
                              if (thisObj != null) {
-                                 ReferenceType type = thisObj.referenceType();
-                                 varsNode.set("this", JdiValueConverter.convertValue(thisObj, maxDepth));
-                                 // Optionally list fields directly if needed, but showing 'this' object structure is usually enough if recursion works.
-                                 // However, JdiValueConverter might limit depth. Let's explicitly list fields as "this.fieldName" for better visibility if maxDepth is low.
-                                 // Actually, let's trust JdiValueConverter for 'this' object, but maybe user wants flat list.
-                                 // Let's just return 'this' object.
+                                 values.put("this", thisObj);
                              }
                         }
+                        budget.withSummaries(summarizer.pass(thread, vmState.epoch()));
+                        JdiValueConverter.convertValues(varsNode, values, maxDepth, budget);
                     } else {
                         threadNode.put("error", "Frame index " + frameIndex + " out of bounds.");
                     }
@@ -370,20 +1018,36 @@ public abstract class AbstractJdiDebugger {
              throw new Exception("Thread '" + threadName + "' not found.");
         }
         
+        registerHandles(budget);
+        if (budget.isLimited()) {
+            ObjectNode result = mapper.createObjectNode();
+            result.set("threads", threadsNode);
+            result.set("budget", budget.toJson());
+            return result;
+        }
         return threadsNode;
     }
 
     public JsonNode getVariable(String varName, int maxDepth) throws Exception {
-        for (ThreadReference thread : vm.allThreads()) {
+        return getVariable(varName, maxDepth, 0);
+    }
+
+    public JsonNode getVariable(String varName, int maxDepth, long maxBytes) throws Exception {
+        return getVariable(varName, maxDepth, maxBytes, false);
+    }
+
+    public JsonNode getVariable(String varName, int maxDepth, long maxBytes, boolean rawFields) throws Exception {
+        for (ThreadReference thread : inspectableThreads()) {
             if (thread.isSuspended()) {
-                List<StackFrame> frames = thread.frames();
+                List<StackFrame> frames = Jdwp.frames(thread);
                 if (!frames.isEmpty()) {
                     StackFrame frame = frames.get(0);
                     try {
                         LocalVariable var = frame.visibleVariableByName(varName);
                         if (var != null) {
                             Value val = frame.getValue(var);
-                            return JdiValueConverter.convertValue(val, maxDepth);
+                            return render(val, maxDepth, new JdiValueConverter.Budget(maxBytes).withRawFields(rawFields)
+                                    .withSummaries(summarizer.pass(thread, vmState.epoch())));
                         }
                     } catch (AbsentInformationException e) {
                     } catch (Exception e) {
@@ -395,7 +1059,89 @@ public abstract class AbstractJdiDebugger {
         return null;
     }
 
+    /**
+     * Renders an object previously returned with a {@code handle} (or {@code id}), for example a
+     * node truncated by an output budget.
+     */
+    public JsonNode expandHandle(long handle, int maxDepth, long maxBytes) throws Exception {
+        return expandHandle(handle, maxDepth, maxBytes, 0, 0, false);
+    }
+
+    /**
+     * As above, showing {@code limit} elements or entries of an array or JDK collection from
+     * {@code offset} (0 for the default page of 100).
+     */
+    public JsonNode expandHandle(long handle, int maxDepth, long maxBytes, int offset, int limit, boolean rawFields) throws Exception {
+        ObjectReference ref;
+        synchronized (objectHandles) {
+            ref = objectHandles.get(handle);
+        }
+        if (ref == null) throw new Exception("Unknown or expired handle: " + handle);
+        if (ref.isCollected()) throw new Exception("Object " + handle + " has been garbage collected.");
+        return render(ref, maxDepth, new JdiValueConverter.Budget(maxBytes).withRawFields(rawFields).withPage(offset, limit)
+                .withSummaries(summarizer.pass(focusThread(), vmState.epoch())));
+    }
+
+    /**
+     * Reads part of a string returned with a {@code handle} (a long string is cut to a prefix), from
+     * its backing array so only the requested chars are transferred; or, with {@code file}, writes the
+     * whole string to that local file as UTF-8.
+     */
+    public JsonNode getString(long handle, int offset, int count, String file) throws Exception {
+        ObjectReference ref;
+        synchronized (objectHandles) {
+            ref = objectHandles.get(handle);
+        }
+        if (ref == null) throw new Exception("Unknown or expired handle: " + handle);
+        if (!(ref instanceof StringReference)) throw new Exception("Handle " + handle + " is not a string but " + ref.referenceType().name());
+        if (ref.isCollected()) throw new Exception("String " + handle + " has been garbage collected.");
+        StringReference string = (StringReference) ref;
+        ObjectNode result = mapper.createObjectNode();
+        result.put("handle", handle);
+        if (file != null) {
+            java.io.File target = new java.io.File(file);
+            long chars = StringValues.dump(string, target);
+            result.put("file", target.getAbsolutePath());
+            result.put("length", chars);
+            result.put("bytes", target.length());
+            return result;
+        }
+        int length = StringValues.length(string);
+        String text = StringValues.substring(string, offset, count);
+        int start = Math.min(Math.max(0, offset), length);
+        result.put("length", length);
+        result.put("offset", start);
+        result.put("value", text);
+        if (start + text.length() < length) result.put("nextOffset", start + text.length());
+        return result;
+    }
+
+    private JsonNode render(Value value, int maxDepth, JdiValueConverter.Budget budget) {
+        ObjectNode node = JdiValueConverter.convertValue(value, maxDepth, budget);
+        registerHandles(budget);
+        if (budget.isLimited()) {
+            node.set("budget", budget.toJson());
+        }
+        return node;
+    }
+
+    protected void registerHandles(JdiValueConverter.Budget budget) {
+        synchronized (objectHandles) {
+            objectHandles.putAll(budget.getHandles());
+        }
+    }
+
+    protected static boolean isSystemThread(ThreadReference thread) {
+        try {
+            ThreadGroupReference group = thread.threadGroup();
+            return group != null && "system".equals(group.name());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     public void setVariableValue(ThreadReference thread, String varName, String value, int frameIndex) throws Exception {
+        checkNotInvoking(thread);
         StackFrame frame = thread.frame(frameIndex);
         LocalVariable var = frame.visibleVariableByName(varName);
         if (var == null) throw new Exception("Variable not found: " + varName);
@@ -415,11 +1161,12 @@ public abstract class AbstractJdiDebugger {
     }
 
     public JsonNode getStackTrace(ThreadReference thread) throws Exception {
+        checkNotInvoking(thread);
         ObjectNode result = mapper.createObjectNode();
         result.set("threadInfo", JdiStateMapper.getThreadState(thread, 1, -1));
         
         ArrayNode framesNode = result.putArray("stackTrace");
-        for (StackFrame frame : thread.frames()) {
+        for (StackFrame frame : Jdwp.frames(thread)) {
             Location loc = frame.location();
             ObjectNode frameNode = framesNode.addObject();
             frameNode.put("location", loc.toString());
@@ -448,7 +1195,7 @@ public abstract class AbstractJdiDebugger {
     public void sendInput(String input) {
         if (process != null) {
             try {
-                process.getOutputStream().write((input + "\n").getBytes());
+                process.getOutputStream().write((input + "\n").getBytes(java.nio.charset.StandardCharsets.UTF_8));
                 process.getOutputStream().flush();
             } catch (java.io.IOException e) {
                 System.err.println("Error sending input: " + e.getMessage());
@@ -466,24 +1213,455 @@ public abstract class AbstractJdiDebugger {
         if (access) {
             com.sun.jdi.request.AccessWatchpointRequest awp = vm.eventRequestManager().createAccessWatchpointRequest(field);
             awp.enable();
+            journal(SessionJournal.ACCESS, className, fieldName);
         }
         if (modification) {
             com.sun.jdi.request.ModificationWatchpointRequest mwp = vm.eventRequestManager().createModificationWatchpointRequest(field);
             mwp.enable();
+            journal(SessionJournal.MODIFICATION, className, fieldName);
+        }
+    }
+
+    /**
+     * Records a field instead of stopping at it: the watchpoints use SUSPEND_NONE and every event is
+     * appended to the field's {@link FieldTimeline}. Recording again keeps the existing series.
+     */
+    public ObjectNode recordField(String className, String fieldName, boolean access, boolean modification, int capacity) throws Exception {
+        List<ReferenceType> classes = vm.classesByName(className);
+        if (classes.isEmpty()) throw new Exception("Class not found: " + className);
+        ReferenceType type = classes.get(0);
+        Field field = type.fieldByName(fieldName);
+        if (field == null) throw new Exception("Field not found: " + fieldName);
+
+        String key = className + "." + fieldName;
+        FieldTimeline timeline = fieldTimelines.get(key);
+        if (timeline == null) {
+            timeline = new FieldTimeline(field, capacity);
+            fieldTimelines.put(key, timeline);
+        }
+        stopRecordingRequests(timeline);
+        if (field.isStatic()) {
+            timeline.setBaseline(type.getValue(field));
+        }
+        EventRequestManager erm = vm.eventRequestManager();
+        List<com.sun.jdi.request.WatchpointRequest> requests = new ArrayList<>();
+        if (access) requests.add(erm.createAccessWatchpointRequest(field));
+        if (modification) requests.add(erm.createModificationWatchpointRequest(field));
+        for (com.sun.jdi.request.WatchpointRequest request : requests) {
+            request.putProperty(FieldTimeline.PROPERTY, timeline);
+            request.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            request.enable();
+        }
+        timeline.setRecording(true);
+        ObjectNode result = mapper.createObjectNode();
+        result.put("status", "recording");
+        result.put("field", key);
+        result.put("access", access);
+        result.put("modification", modification);
+        return result;
+    }
+
+    /** Stops recording a field; its series is kept for {@link #getFieldTimeline}. */
+    public ObjectNode stopRecordingField(String className, String fieldName) throws Exception {
+        FieldTimeline timeline = fieldTimelines.get(className + "." + fieldName);
+        if (timeline == null) throw new Exception("Field is not recorded: " + className + "." + fieldName);
+        stopRecordingRequests(timeline);
+        timeline.setRecording(false);
+        return timeline.toJson(0, 0, null);
+    }
+
+    private void stopRecordingRequests(FieldTimeline timeline) {
+        if (vm == null) return;
+        EventRequestManager erm = vm.eventRequestManager();
+        List<EventRequest> requests = new ArrayList<>();
+        requests.addAll(erm.accessWatchpointRequests());
+        requests.addAll(erm.modificationWatchpointRequests());
+        for (EventRequest request : requests) {
+            if (request.getProperty(FieldTimeline.PROPERTY) == timeline) erm.deleteEventRequest(request);
+        }
+    }
+
+    /** Recorded entries of a field from {@code since} (or the latest ones when negative), with a summary. */
+    public JsonNode getFieldTimeline(String className, String fieldName, long since, int limit) throws Exception {
+        FieldTimeline timeline = fieldTimelines.get(className + "." + fieldName);
+        if (timeline == null) throw new Exception("Field is not recorded: " + className + "." + fieldName + ". Use debug_set_watchpoint with record=true first.");
+        Map<Long, ObjectReference> handles = new java.util.HashMap<>();
+        ObjectNode result = timeline.toJson(since, limit, handles);
+        synchronized (objectHandles) {
+            objectHandles.putAll(handles);
+        }
+        return result;
+    }
+
+    /** Appends a recording watchpoint's event to its timeline; false for ordinary watchpoints. */
+    protected boolean recordWatchpointEvent(com.sun.jdi.event.WatchpointEvent event) {
+        Object timeline = event.request().getProperty(FieldTimeline.PROPERTY);
+        if (!(timeline instanceof FieldTimeline)) return false;
+        try {
+            ((FieldTimeline) timeline).record(event);
+        } catch (ObjectCollectedException e) {
+            // A value was collected before it could be read
         }
+        return true;
     }
 
-    protected boolean isBreakpointAlreadySet(Location loc) {
-        if (vm == null) return false;
-        List<BreakpointRequest> requests = vm.eventRequestManager().breakpointRequests();
-        for (BreakpointRequest req : requests) {
-            if (req.location().equals(loc)) {
+    /** Starts or (with {@code stop}) removes method call tracing; see {@link MethodTracer#start}. */
+    public JsonNode traceMethods(String classPatterns, String classExcludes, int sampleReturnsEvery, boolean stop) throws Exception {
+        if (stop) {
+            methodTracer.stop(vm);
+            ObjectNode result = mapper.createObjectNode();
+            result.put("status", "stopped");
+            result.set("stats", methodTracer.report(10, "total"));
+            return result;
+        }
+        if (vm == null) throw new Exception("Not attached");
+        if (classPatterns == null || classPatterns.trim().isEmpty()) {
+            throw new Exception("Missing required argument: classPattern (tracing every class would flood JDWP)");
+        }
+        return methodTracer.start(vm, classPatterns, classExcludes, sampleReturnsEvery);
+    }
+
+    public JsonNode getMethodStats(int limit, String sortBy, boolean reset) {
+        ObjectNode result = methodTracer.report(limit, sortBy);
+        if (reset) methodTracer.reset();
+        return result;
+    }
+
+    /** Feeds a trace request's entry or exit event to the tracer; false for other method events. */
+    protected boolean traceMethodEvent(com.sun.jdi.event.Event event) {
+        if (event.request() == null || event.request().getProperty(MethodTracer.PROPERTY) == null) return false;
+        try {
+            if (event instanceof com.sun.jdi.event.MethodEntryEvent) {
+                methodTracer.entered((com.sun.jdi.event.MethodEntryEvent) event);
+            } else {
+                methodTracer.exited((com.sun.jdi.event.MethodExitEvent) event);
+            }
+        } catch (ObjectCollectedException e) {
+            // Thread ended while the event was handled
+        }
+        return true;
+    }
+
+    /** Starts or (with {@code stop}) removes monitor contention profiling; see {@link ContentionProfiler#start}. */
+    public JsonNode profileContention(String classFilters, String classExcludes, boolean includeWaits, boolean stop) throws Exception {
+        if (stop) {
+            contentionProfiler.stop(vm);
+            ObjectNode result = mapper.createObjectNode();
+            result.put("status", "stopped");
+            result.set("stats", contentionProfiler.report(10));
+            return result;
+        }
+        if (vm == null) throw new Exception("Not attached");
+        return contentionProfiler.start(vm, classFilters, classExcludes, includeWaits);
+    }
+
+    public JsonNode getContentionStats(int limit, boolean reset) {
+        ObjectNode result = contentionProfiler.report(limit);
+        if (reset) contentionProfiler.reset();
+        return result;
+    }
+
+    /** Feeds a contention request's monitor event to the profiler; false for any other event. */
+    protected boolean recordMonitorEvent(com.sun.jdi.event.Event event) {
+        if (event.request() == null || event.request().getProperty(ContentionProfiler.PROPERTY) == null) return false;
+        try {
+            contentionProfiler.record(event);
+        } catch (ObjectCollectedException e) {
+            // Thread or monitor collected while the event was handled
+        }
+        return true;
+    }
+
+    /** Starts or (with {@code stop}) ends thread churn monitoring; see {@link ThreadChurnMonitor#start}. */
+    public JsonNode monitorThreadChurn(String groupPatterns, int samplesPerSecond, boolean stop) throws Exception {
+        if (stop) {
+            threadChurn.stop(vm);
+            ObjectNode result = mapper.createObjectNode();
+            result.put("status", "stopped");
+            result.set("stats", threadChurn.report(10));
+            return result;
+        }
+        if (vm == null) throw new Exception("Not attached");
+        if (!threadRegistry.isLive()) throw new Exception("Thread start/death events are not available for this VM");
+        ObjectNode result = threadChurn.start(vm, groupPatterns, samplesPerSecond);
+        result.put("liveThreads", threadRegistry.size());
+        return result;
+    }
+
+    public JsonNode getThreadChurnStats(int limit, boolean reset) {
+        ObjectNode result = threadChurn.report(limit);
+        if (reset) threadChurn.reset();
+        return result;
+    }
+
+    /**
+     * Feeds thread start/death events to the registry (and the churn monitor while it runs), and the
+     * churn monitor's Thread.start() samples to it; false for any other event.
+     */
+    protected boolean trackThreadEvent(com.sun.jdi.event.Event event) {
+        if (event.request() == null) return false;
+        try {
+            if (event.request().getProperty(ThreadRegistry.PROPERTY) != null) {
+                if (event instanceof com.sun.jdi.event.ThreadStartEvent) {
+                    ThreadReference thread = ((com.sun.jdi.event.ThreadStartEvent) event).thread();
+                    threadChurn.started(thread, threadRegistry.started(thread));
+                } else if (event instanceof com.sun.jdi.event.ThreadDeathEvent) {
+                    ThreadReference thread = ((com.sun.jdi.event.ThreadDeathEvent) event).thread();
+                    vmState.threadResumed(thread);
+                    threadChurn.ended(thread, threadRegistry.died(thread));
+                }
+                return true;
+            }
+            if (event.request().getProperty(ThreadChurnMonitor.PROPERTY) != null) {
+                threadChurn.sample((com.sun.jdi.event.BreakpointEvent) event);
                 return true;
             }
+        } catch (ObjectCollectedException | IncompatibleThreadStateException | VMDisconnectedException e) {
+            // Thread collected or resumed, or the VM gone, while the event was handled; the event is still ours
+            return true;
         }
         return false;
     }
 
+    /** Starts or (with {@code stop}) removes class loading recording; see {@link ClassLoadTimeline#start}. */
+    public JsonNode recordClassLoading(String classFilters, String classExcludes, long bucketMs, boolean stop) throws Exception {
+        if (stop) {
+            classLoadTimeline.stop(vm);
+            ObjectNode result = mapper.createObjectNode();
+            result.put("status", "stopped");
+            result.set("stats", classLoadTimeline.report(10, 0));
+            return result;
+        }
+        if (vm == null) throw new Exception("Not attached");
+        return classLoadTimeline.start(vm, classFilters, classExcludes, bucketMs);
+    }
+
+    public JsonNode getClassLoadStats(int limit, int recent, boolean reset) {
+        ObjectNode result = classLoadTimeline.report(limit, recent);
+        if (reset) classLoadTimeline.reset();
+        return result;
+    }
+
+    /** Feeds a class loading request's prepare or unload event to the timeline; false for any other event. */
+    protected boolean recordClassEvent(com.sun.jdi.event.Event event) {
+        if (event.request() == null || event.request().getProperty(ClassLoadTimeline.PROPERTY) == null) return false;
+        try {
+            classLoadTimeline.record(event);
+        } catch (ObjectCollectedException e) {
+            // Loader or thread collected while the event was handled
+        }
+        return true;
+    }
+
+    /** Starts or (with {@code stop}) removes non-suspending exception monitoring; see {@link ExceptionTelemetry#start}. */
+    public JsonNode monitorExceptions(String exceptionClass, boolean caught, boolean uncaught, String classFilters,
+                                      String classExcludes, int suspendOnCount, boolean stop) throws Exception {
+        if (stop) {
+            exceptionTelemetry.stop(vm);
+            ObjectNode result = mapper.createObjectNode();
+            result.put("status", "stopped");
+            result.set("stats", exceptionTelemetry.report(10));
+            return result;
+        }
+        if (vm == null) throw new Exception("Not attached");
+        return exceptionTelemetry.start(vm, exceptionClass, caught, uncaught, classFilters, classExcludes, suspendOnCount);
+    }
+
+    public JsonNode getExceptionStats(int limit, boolean reset) {
+        ObjectNode result = exceptionTelemetry.report(limit);
+        if (reset) exceptionTelemetry.reset();
+        return result;
+    }
+
+    /**
+     * Counts an exception event. Returns the notification for the Nth-occurrence event, whose thread
+     * stays suspended, or null when the thread keeps running.
+     */
+    protected String handleExceptionEvent(com.sun.jdi.event.ExceptionEvent event) {
+        exceptionTelemetry.record(event);
+        if (!exceptionTelemetry.isSuspendEvent(event)) return null;
+        ThreadReference thread = event.thread();
+        lastSuspendedThread = thread;
+        trackEventThread(thread);
+        String type;
+        try {
+            type = event.exception().referenceType().name();
+        } catch (Exception e) {
+            type = "exception";
+        }
+        return "Exception " + type + " thrown at: " + ExceptionTelemetry.format(event.location())
+                + (event.catchLocation() != null ? " caught at: " + ExceptionTelemetry.format(event.catchLocation()) : " (uncaught)")
+                + "; thread " + JdiStateMapper.threadName(thread) + " suspended";
+    }
+
+    /**
+     * Sets the session's pause budget in milliseconds (0 turns the watchdog off). A target left suspended
+     * longer, e.g. at a breakpoint while the client thinks, is snapshotted and resumed.
+     */
+    public void setMaxPause(long maxPauseMs) {
+        pauseWatchdog.setBudget(maxPauseMs);
+    }
+
+    /** Pause budget and accounting; with {@code snapshots} also the thread state of auto-resumed pauses. */
+    public JsonNode getPauseStats(boolean snapshots) {
+        return pauseWatchdog.toJson(snapshots);
+    }
+
+    /**
+     * Configures toString()/formatter summaries for debug_list_vars, debug_get_var and debug_expand;
+     * null leaves a setting unchanged. Returns the settings and invocation counters.
+     */
+    public JsonNode configureSummaries(Boolean enable, String formatters, Long budgetMs, Integer maxLength) throws Exception {
+        summarizer.configure(enable, formatters, budgetMs, maxLength);
+        return summarizer.toJson();
+    }
+
+    /** Called by the event loop for each event that keeps its thread (or the VM) suspended. */
+    protected void eventStopped(com.sun.jdi.event.Event event) {
+        int policy = event.request() != null ? event.request().suspendPolicy() : EventRequest.SUSPEND_ALL;
+        if (event instanceof com.sun.jdi.event.LocatableEvent) {
+            com.sun.jdi.event.LocatableEvent located = (com.sun.jdi.event.LocatableEvent) event;
+            String reason = event.getClass().getSimpleName().replace("EventImpl", "").replace("Event", "");
+            vmState.stopped(located.thread(), located.location(), reason, policy);
+        } else if (event instanceof com.sun.jdi.event.VMStartEvent) {
+            vmState.stopped(((com.sun.jdi.event.VMStartEvent) event).thread(), null, "VMStart", policy);
+        }
+    }
+
+    /** Called by the event loop when an event leaves the target suspended. */
+    protected void eventPaused(com.sun.jdi.event.Event event) {
+        String pausedAt = "VM start";
+        if (event instanceof com.sun.jdi.event.LocatableEvent) {
+            com.sun.jdi.event.LocatableEvent located = (com.sun.jdi.event.LocatableEvent) event;
+            pausedAt = located.location() + " in thread " + JdiStateMapper.threadName(located.thread());
+        }
+        pauseWatchdog.paused(pausedAt);
+    }
+
+    /**
+     * Runs on the watchdog thread once a pause outlives the budget: keeps the state of the stopped threads
+     * (the event thread in full, other threads stopped while executing as short stacks), resumes the VM
+     * and notifies the client.
+     */
+    protected void resumeAfterPauseBudget(String pausedAt) {
+        VirtualMachine target = vm;
+        if (target == null) {
+            pauseWatchdog.resumed();
+            return;
+        }
+        long pausedMs = pauseWatchdog.currentPauseMs();
+        ObjectNode snapshot = mapper.createObjectNode();
+        snapshot.put("pausedAt", pausedAt);
+        snapshot.put("pausedMs", pausedMs);
+        snapshot.put("resumedAtEpochMs", System.currentTimeMillis());
+        ArrayNode threads = snapshot.putArray("threads");
+        ThreadReference focus = lastSuspendedThread;
+        try {
+            if (focus != null) threads.add(JdiStateMapper.getThreadState(focus, 50, 1));
+            int others = 0;
+            for (ThreadReference thread : inspectableThreads()) {
+                try {
+                    if (thread.equals(focus) || !thread.isSuspended() || thread.status() != ThreadReference.THREAD_STATUS_RUNNING) continue;
+                } catch (ObjectCollectedException e) {
+                    continue;
+                }
+                if (++others > 20) {
+                    snapshot.put("note", "Only the first 20 other executing threads are kept.");
+                    break;
+                }
+                threads.add(JdiStateMapper.getThreadState(thread, 10, -1));
+            }
+        } catch (VMDisconnectedException e) {
+            pauseWatchdog.resumed();
+            return;
+        }
+        pauseWatchdog.addSnapshot(snapshot);
+        String msg = "Pause budget of " + pauseWatchdog.getBudget() + " ms exceeded after " + pausedMs + " ms at " + pausedAt
+                + "; resuming the VM. The thread state at the pause is kept by debug_pause_budget.";
+        System.err.println(msg);
+        logEvent(msg);
+        // Closed before resuming, so an event right after the resume starts a new pause
+        eventThreads.clear();
+        pauseWatchdog.resumed();
+        vmState.resumed();
+        target.resume();
+    }
+
+    /**
+     * Creates and enables a breakpoint request at the location unless one exists, applying the hit limits
+     * registered under {@code limitKey} to the new or existing request. Returns false if it already existed.
+     */
+    protected boolean installBreakpoint(Location loc, String limitKey) {
+        HitLimiter limiter = limitKey != null ? hitLimiters.get(limitKey) : null;
+        EventRequestManager erm = vm.eventRequestManager();
+        for (BreakpointRequest existing : new ArrayList<>(erm.breakpointRequests())) {
+            if (existing.location().equals(loc) && existing.getProperty(ThreadChurnMonitor.PROPERTY) == null) {
+                if (limiter != null && existing.getProperty(HitLimiter.PROPERTY) != limiter) {
+                    applyLimiter(existing, limiter);
+                }
+                return false;
+            }
+        }
+        if (limiter != null) {
+            applyLimiter(null, loc, limiter);
+        } else {
+            erm.createBreakpointRequest(loc).enable();
+        }
+        return true;
+    }
+
+    private void applyLimiter(BreakpointRequest request, HitLimiter limiter) {
+        applyLimiter(request, request.location(), limiter);
+    }
+
+    /**
+     * Replaces the request at the location with one matching the limiter's state: disabled, counting
+     * (SUSPEND_NONE) or active, with a count filter for the next stride. Count filters cannot be changed
+     * and expire after firing, so the request is recreated rather than modified.
+     */
+    private void applyLimiter(BreakpointRequest request, Location loc, HitLimiter limiter) {
+        EventRequestManager erm = vm.eventRequestManager();
+        if (request != null) erm.deleteEventRequest(request);
+        BreakpointRequest replacement = erm.createBreakpointRequest(loc);
+        replacement.putProperty(HitLimiter.PROPERTY, limiter);
+        if (HitLimiter.DISABLED.equals(limiter.getState())) return;
+        int stride = limiter.nextStride();
+        replacement.putProperty(HitLimiter.STRIDE, stride);
+        if (stride > 1) replacement.addCountFilter(stride);
+        replacement.setSuspendPolicy(HitLimiter.COUNTING.equals(limiter.getState()) ? EventRequest.SUSPEND_NONE : EventRequest.SUSPEND_ALL);
+        replacement.enable();
+    }
+
+    /**
+     * Applies the hit limits of the event's breakpoint. Returns false for a suppressed hit, which the
+     * event loop resumes without reporting. When the limiter trips, all requests of the breakpoint are
+     * disabled or downgraded to counting and the client is notified.
+     */
+    protected boolean admitBreakpointHit(com.sun.jdi.event.BreakpointEvent event) {
+        BreakpointRequest hitRequest = (BreakpointRequest) event.request();
+        Object property = hitRequest.getProperty(HitLimiter.PROPERTY);
+        if (!(property instanceof HitLimiter)) return true;
+        HitLimiter limiter = (HitLimiter) property;
+        Object stride = hitRequest.getProperty(HitLimiter.STRIDE);
+        boolean admitted = limiter.admit(stride instanceof Integer ? (Integer) stride : 1);
+        if (!limiter.takeTrip()) {
+            if (limiter.isStrided() || (stride instanceof Integer && (Integer) stride > 1)) {
+                // Its count filter expired with this event, or the next stride is drawn or adapted anew
+                applyLimiter(hitRequest, limiter);
+            }
+        } else {
+            for (BreakpointRequest request : new ArrayList<>(vm.eventRequestManager().breakpointRequests())) {
+                if (request.getProperty(HitLimiter.PROPERTY) == limiter) applyLimiter(request, limiter);
+            }
+            String msg = "Breakpoint at " + event.location() + " hit its limit (" + limiter.getTrippedBy() + "); "
+                    + (HitLimiter.DISABLED.equals(limiter.getState()) ? "disabled" : "downgraded to counting hits without suspending")
+                    + ". Suppressed hits are listed by debug_list_breakpoints.";
+            System.err.println(msg);
+            logEvent(msg);
+        }
+        return admitted;
+    }
+
     public abstract void terminate();
 
     public abstract com.sun.jdi.event.Event stepOverAndWait(ThreadReference thread) throws Exception;
@@ -0,0 +1,284 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.jdi.ClassLoaderReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.event.ClassPrepareEvent;
+import com.sun.jdi.event.ClassUnloadEvent;
+import com.sun.jdi.event.Event;
+import com.sun.jdi.request.ClassPrepareRequest;
+import com.sun.jdi.request.ClassUnloadRequest;
+import com.sun.jdi.request.EventRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class loading over time, from SUSPEND_NONE class-prepare and class-unload requests. Prepares are
+ * counted into a rate timeline of fixed-width buckets (pairs are merged and the width doubles once the
+ * timeline is full, so it covers any run length) and totalled per package, class loader and loading
+ * thread; the latest events are kept in a ring. A prepare costs one JDWP round-trip for its loader and
+ * one per new thread. Updates run on the event thread; reports are taken under the same lock.
+ */
+public class ClassLoadTimeline {
+    /** Request property marking the timeline's class-prepare and class-unload requests. */
+    public static final String PROPERTY = "jdbmcp.classLoadTimeline";
+    private static final int MAX_BUCKETS = 600;
+    private static final int MAX_KEYS = 5000;
+    private static final int MAX_EVENTS = 10000;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static class Entry {
+        final long timeMs;
+        final String className;
+        final String loader;
+        final String thread;
+
+        Entry(long timeMs, String className, String loader, String thread) {
+            this.timeMs = timeMs;
+            this.className = className;
+            this.loader = loader;
+            this.thread = thread;
+        }
+    }
+
+    private final List<EventRequest> requests = new ArrayList<>();
+    private long start = System.currentTimeMillis();
+    private long bucketMs = 100;
+    private long[] prepares = new long[0];
+    private long[] unloads = new long[0];
+    private final Map<String, long[]> byPackage = new HashMap<>();
+    private final Map<String, long[]> byLoader = new HashMap<>();
+    private final Map<String, long[]> byThread = new HashMap<>();
+    private final Map<Long, String> loaderNames = new HashMap<>();
+    private final Map<Long, String> threadNames = new HashMap<>();
+    private final Entry[] events = new Entry[MAX_EVENTS];
+    private long prepared;
+    private long unloaded;
+
+    /**
+     * Starts recording, replacing an earlier timeline of this session.
+     *
+     * @param classFilters  comma-separated class patterns to record, all classes when null
+     * @param classExcludes comma-separated class patterns to leave out
+     * @param bucketMs      initial width of a timeline bucket in milliseconds
+     */
+    public synchronized ObjectNode start(VirtualMachine vm, String classFilters, String classExcludes, long bucketMs) {
+        stop(vm);
+        this.bucketMs = Math.max(10, bucketMs);
+        reset();
+        ClassPrepareRequest prepare = vm.eventRequestManager().createClassPrepareRequest();
+        ClassUnloadRequest unload = vm.eventRequestManager().createClassUnloadRequest();
+        if (classFilters != null) {
+            for (String filter : classFilters.split(",")) {
+                if (filter.trim().isEmpty()) continue;
+                prepare.addClassFilter(filter.trim());
+                unload.addClassFilter(filter.trim());
+            }
+        }
+        if (classExcludes != null) {
+            for (String exclude : classExcludes.split(",")) {
+                if (exclude.trim().isEmpty()) continue;
+                prepare.addClassExclusionFilter(exclude.trim());
+                unload.addClassExclusionFilter(exclude.trim());
+            }
+        }
+        requests.add(prepare);
+        requests.add(unload);
+        for (EventRequest request : requests) {
+            request.putProperty(PROPERTY, this);
+            request.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            request.enable();
+        }
+        ObjectNode result = mapper.createObjectNode();
+        result.put("status", "recording");
+        if (classFilters != null) result.put("classFilter", classFilters);
+        if (classExcludes != null) result.put("classExclude", classExcludes);
+        result.put("bucketMs", this.bucketMs);
+        result.put("loadedBefore", vm.allClasses().size());
+        return result;
+    }
+
+    /** Removes the requests; the timeline is kept until reset or the next start. */
+    public synchronized void stop(VirtualMachine vm) {
+        if (vm != null && !requests.isEmpty()) {
+            try {
+                vm.eventRequestManager().deleteEventRequests(requests);
+            } catch (Exception e) {
+                System.err.println("Failed to delete class loading requests: " + e.getMessage());
+            }
+        }
+        requests.clear();
+    }
+
+    /** Drops requests of a VM connection that is gone. */
+    public synchronized void forgetRequests() {
+        requests.clear();
+    }
+
+    public synchronized boolean isActive() {
+        return !requests.isEmpty();
+    }
+
+    public synchronized void reset() {
+        start = System.currentTimeMillis();
+        prepares = new long[0];
+        unloads = new long[0];
+        byPackage.clear();
+        byLoader.clear();
+        byThread.clear();
+        Arrays.fill(events, null);
+        prepared = 0;
+        unloaded = 0;
+    }
+
+    public synchronized void record(Event event) {
+        long timeMs = System.currentTimeMillis() - start;
+        if (event instanceof ClassPrepareEvent) {
+            ClassPrepareEvent prepare = (ClassPrepareEvent) event;
+            ReferenceType type = prepare.referenceType();
+            String loader = loaderName(type.classLoader());
+            String thread = threadName(prepare.thread());
+            int bucket = bucket(timeMs);
+            prepares[bucket]++;
+            count(byPackage, packageOf(type.name()), 0);
+            count(byLoader, loader, 0);
+            count(byThread, thread, 0);
+            events[(int) ((prepared + unloaded) % MAX_EVENTS)] = new Entry(timeMs, type.name(), loader, thread);
+            prepared++;
+        } else if (event instanceof ClassUnloadEvent) {
+            String className = ((ClassUnloadEvent) event).className();
+            int bucket = bucket(timeMs);
+            unloads[bucket]++;
+            count(byPackage, packageOf(className), 1);
+            events[(int) ((prepared + unloaded) % MAX_EVENTS)] = new Entry(timeMs, className, null, null);
+            unloaded++;
+        }
+    }
+
+    /** Bucket of a time, growing the timeline and halving its resolution when it is full. */
+    private int bucket(long timeMs) {
+        while (timeMs / bucketMs >= MAX_BUCKETS) {
+            prepares = merge(prepares);
+            unloads = merge(unloads);
+            bucketMs *= 2;
+        }
+        int bucket = (int) (timeMs / bucketMs);
+        if (bucket >= prepares.length) {
+            prepares = Arrays.copyOf(prepares, bucket + 1);
+            unloads = Arrays.copyOf(unloads, bucket + 1);
+        }
+        return bucket;
+    }
+
+    private static long[] merge(long[] buckets) {
+        long[] merged = new long[(buckets.length + 1) / 2];
+        for (int i = 0; i < buckets.length; i++) {
+            merged[i / 2] += buckets[i];
+        }
+        return merged;
+    }
+
+    private static void count(Map<String, long[]> table, String key, int column) {
+        long[] counts = table.get(key);
+        if (counts == null) {
+            if (table.size() >= MAX_KEYS) key = "(other)";
+            counts = table.get(key);
+            if (counts == null) table.put(key, counts = new long[2]);
+        }
+        counts[column]++;
+    }
+
+    private static String packageOf(String className) {
+        int dot = className.lastIndexOf('.');
+        return dot < 0 ? "(default)" : className.substring(0, dot);
+    }
+
+    private String loaderName(ClassLoaderReference loader) {
+        if (loader == null) return "bootstrap";
+        String name = loaderNames.get(loader.uniqueID());
+        if (name == null) {
+            name = loader.referenceType().name() + " #" + loader.uniqueID();
+            if (loaderNames.size() < MAX_KEYS) loaderNames.put(loader.uniqueID(), name);
+        }
+        return name;
+    }
+
+    private String threadName(ThreadReference thread) {
+        if (thread == null) return "unknown";
+        String name = threadNames.get(thread.uniqueID());
+        if (name == null) {
+            name = JdiStateMapper.threadName(thread);
+            if (threadNames.size() < MAX_KEYS) threadNames.put(thread.uniqueID(), name);
+        }
+        return name;
+    }
+
+    /**
+     * Totals, the rate timeline, the top packages, loaders and threads, and the latest {@code recent}
+     * events (oldest first).
+     */
+    public synchronized ObjectNode report(int limit, int recent) {
+        ObjectNode result = mapper.createObjectNode();
+        result.put("recording", !requests.isEmpty());
+        result.put("sinceMs", System.currentTimeMillis() - start);
+        result.put("prepared", prepared);
+        result.put("unloaded", unloaded);
+        result.put("bucketMs", bucketMs);
+        ArrayNode timeline = result.putArray("timeline");
+        long peak = 0;
+        for (int i = 0; i < prepares.length; i++) {
+            peak = Math.max(peak, prepares[i]);
+            if (prepares[i] == 0 && unloads[i] == 0) continue;
+            ObjectNode row = timeline.addObject();
+            row.put("atMs", i * bucketMs);
+            row.put("prepared", prepares[i]);
+            if (unloads[i] > 0) row.put("unloaded", unloads[i]);
+        }
+        result.put("peakPerSecond", peak * 1000.0 / bucketMs);
+        table(result.putArray("byPackage"), "package", byPackage, limit);
+        table(result.putArray("byLoader"), "loader", byLoader, limit);
+        table(result.putArray("byThread"), "thread", byThread, limit);
+        ArrayNode latest = result.putArray("recent");
+        long total = prepared + unloaded;
+        for (long seq = Math.max(0, total - Math.min(recent, MAX_EVENTS)); seq < total; seq++) {
+            Entry entry = events[(int) (seq % MAX_EVENTS)];
+            ObjectNode row = latest.addObject();
+            row.put("atMs", entry.timeMs);
+            row.put("class", entry.className);
+            if (entry.loader == null) {
+                row.put("unloaded", true);
+            } else {
+                row.put("loader", entry.loader);
+                row.put("thread", entry.thread);
+            }
+        }
+        return result;
+    }
+
+    private static void table(ArrayNode array, String label, Map<String, long[]> table, int limit) {
+        List<Map.Entry<String, long[]>> ranked = new ArrayList<>(table.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+                return Long.compare(b.getValue()[0], a.getValue()[0]);
+            }
+        });
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            ObjectNode row = array.addObject();
+            row.put(label, ranked.get(i).getKey());
+            row.put("prepared", ranked.get(i).getValue()[0]);
+            if (ranked.get(i).getValue()[1] > 0) row.put("unloaded", ranked.get(i).getValue()[1]);
+        }
+    }
+}
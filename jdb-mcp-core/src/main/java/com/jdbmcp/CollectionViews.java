@@ -0,0 +1,300 @@
+package com.jdbmcp;
+
+import com.sun.jdi.ArrayReference;
+import com.sun.jdi.Field;
+import com.sun.jdi.IntegerValue;
+import com.sun.jdi.LongValue;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.Value;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Logical contents of common JDK collections, read from their backing fields instead of rendered as
+ * raw fields: array-backed lists and deques with one array getValues per page, linked and hashed
+ * structures with one getValues per node (key, value and link together), and a map's hash table in
+ * chunks. Only the exact JDK classes are recognized, since subclasses may add state. When the
+ * internals are not laid out as expected (another JDK version or vendor) no view is returned and the
+ * object is rendered field by field.
+ */
+public class CollectionViews {
+    /** Hash table slots read per array getValues. */
+    private static final int TABLE_CHUNK = 1024;
+
+    private static final Set<String> SUPPORTED = new HashSet<>(Arrays.asList(
+            "java.util.ArrayList", "java.util.Arrays$ArrayList", "java.util.concurrent.CopyOnWriteArrayList",
+            "java.util.LinkedList", "java.util.ArrayDeque",
+            "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap",
+            "java.util.concurrent.ConcurrentHashMap",
+            "java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeSet"));
+
+    /** A page of a collection: elements for lists and sets, key/value pairs for maps. */
+    public static class View {
+        public final boolean map;
+        public final int size;
+        public final int offset;
+        public final List<Value> elements = new ArrayList<>();
+        public final List<Value[]> entries = new ArrayList<>();
+
+        View(boolean map, int size, int offset) {
+            this.map = map;
+            this.size = size;
+            this.offset = offset;
+        }
+
+        public int count() {
+            return map ? entries.size() : elements.size();
+        }
+    }
+
+    public static boolean supports(ReferenceType type) {
+        return SUPPORTED.contains(type.name());
+    }
+
+    /**
+     * Reads up to {@code limit} elements or entries starting at {@code offset}, in iteration order.
+     * Returns null when the object is not a supported collection or its internals are unexpected.
+     */
+    public static View read(ObjectReference object, int offset, int limit) {
+        if (!supports(object.referenceType())) return null;
+        try {
+            return new Reader().read(object, Math.max(0, offset), Math.max(0, limit));
+        } catch (IllegalStateException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    /** One read; caches the field lookups of the node classes it meets. */
+    private static class Reader {
+        private final Map<ReferenceType, List<Field>> fieldCache = new HashMap<>();
+
+        View read(ObjectReference object, int offset, int limit) {
+            String type = object.referenceType().name();
+            switch (type) {
+                case "java.util.ArrayList":
+                    return arrayList(object, "elementData", intField(object, "size"), offset, limit);
+                case "java.util.Arrays$ArrayList":
+                    return arrayList(object, "a", -1, offset, limit);
+                case "java.util.concurrent.CopyOnWriteArrayList":
+                    return arrayList(object, "array", -1, offset, limit);
+                case "java.util.ArrayDeque":
+                    return arrayDeque(object, offset, limit);
+                case "java.util.LinkedList":
+                    return linkedList(object, offset, limit);
+                case "java.util.HashMap":
+                    return hashMap(object, false, offset, limit);
+                case "java.util.LinkedHashMap":
+                    return linkedHashMap(object, false, offset, limit);
+                case "java.util.TreeMap":
+                    return treeMap(object, false, offset, limit);
+                case "java.util.concurrent.ConcurrentHashMap":
+                    return concurrentHashMap(object, offset, limit);
+                case "java.util.HashSet":
+                case "java.util.LinkedHashSet":
+                    return keys(reference(object, "map"), offset, limit);
+                case "java.util.TreeSet":
+                    return keys(reference(object, "m"), offset, limit);
+                default:
+                    return null;
+            }
+        }
+
+        /** The key set of a backing map. */
+        private View keys(ObjectReference map, int offset, int limit) {
+            if (map == null) throw new IllegalStateException("no backing map");
+            switch (map.referenceType().name()) {
+                case "java.util.HashMap":
+                    return hashMap(map, true, offset, limit);
+                case "java.util.LinkedHashMap":
+                    return linkedHashMap(map, true, offset, limit);
+                case "java.util.TreeMap":
+                    return treeMap(map, true, offset, limit);
+                default:
+                    throw new IllegalStateException("unexpected backing map " + map.referenceType().name());
+            }
+        }
+
+        private View arrayList(ObjectReference list, String arrayField, int size, int offset, int limit) {
+            ArrayReference array = (ArrayReference) reference(list, arrayField);
+            if (array == null) throw new IllegalStateException("no backing array");
+            if (size < 0) size = array.length();
+            View view = new View(false, size, offset);
+            int count = Math.min(limit, size - offset);
+            if (count > 0) view.elements.addAll(array.getValues(offset, count));
+            return view;
+        }
+
+        private View arrayDeque(ObjectReference deque, int offset, int limit) {
+            Map<Field, Value> values = values(deque, "elements", "head", "tail");
+            ArrayReference array = (ArrayReference) values.get(field(deque, "elements"));
+            int head = ((IntegerValue) values.get(field(deque, "head"))).value();
+            int tail = ((IntegerValue) values.get(field(deque, "tail"))).value();
+            int length = array.length();
+            int size = length == 0 ? 0 : ((tail - head) % length + length) % length;
+            View view = new View(false, size, offset);
+            int count = Math.min(limit, size - offset);
+            if (count <= 0) return view;
+            int start = (head + offset) % length;
+            int first = Math.min(count, length - start);
+            view.elements.addAll(array.getValues(start, first));
+            if (first < count) view.elements.addAll(array.getValues(0, count - first));
+            return view;
+        }
+
+        private View linkedList(ObjectReference list, int offset, int limit) {
+            View view = new View(false, intField(list, "size"), offset);
+            ObjectReference node = reference(list, "first");
+            for (int i = 0; node != null && i < offset + limit; i++) {
+                if (i < offset) {
+                    node = reference(node, "next");
+                    continue;
+                }
+                Map<Field, Value> values = values(node, "item", "next");
+                view.elements.add(values.get(field(node, "item")));
+                node = (ObjectReference) values.get(field(node, "next"));
+            }
+            return view;
+        }
+
+        private View hashMap(ObjectReference map, boolean keysOnly, int offset, int limit) {
+            View view = new View(!keysOnly, intField(map, "size"), offset);
+            ArrayReference table = (ArrayReference) reference(map, "table");
+            if (table != null) readTable(table, "value", keysOnly, view, offset, limit);
+            return view;
+        }
+
+        /** Walks the bins of a hash table chunk by chunk, following each bin's 'next' chain. */
+        private void readTable(ArrayReference table, String valueField, boolean keysOnly, View view, int offset, int limit) {
+            int seen = 0;
+            for (int chunk = 0; chunk < table.length() && view.count() < limit; chunk += TABLE_CHUNK) {
+                for (Value bin : table.getValues(chunk, Math.min(TABLE_CHUNK, table.length() - chunk))) {
+                    ObjectReference node = first((ObjectReference) bin);
+                    while (node != null && view.count() < limit) {
+                        if (seen++ < offset) {
+                            node = reference(node, "next");
+                            continue;
+                        }
+                        Map<Field, Value> values = values(node, "key", valueField, "next");
+                        add(view, keysOnly, values.get(field(node, "key")), values.get(field(node, valueField)));
+                        node = (ObjectReference) values.get(field(node, "next"));
+                    }
+                    if (view.count() >= limit) break;
+                }
+            }
+        }
+
+        /** First entry node of a bin; ConcurrentHashMap keeps treeified bins behind a TreeBin. */
+        private ObjectReference first(ObjectReference bin) {
+            if (bin == null) return null;
+            String type = bin.referenceType().name();
+            if (type.equals("java.util.concurrent.ConcurrentHashMap$TreeBin")) return reference(bin, "first");
+            if (type.equals("java.util.concurrent.ConcurrentHashMap$ForwardingNode")) {
+                // Caught mid-resize: the bin moved to the next table
+                throw new IllegalStateException("map is being resized");
+            }
+            return bin;
+        }
+
+        private View linkedHashMap(ObjectReference map, boolean keysOnly, int offset, int limit) {
+            View view = new View(!keysOnly, intField(map, "size"), offset);
+            ObjectReference node = reference(map, "head");
+            for (int i = 0; node != null && i < offset + limit; i++) {
+                if (i < offset) {
+                    node = reference(node, "after");
+                    continue;
+                }
+                Map<Field, Value> values = values(node, "key", "value", "after");
+                add(view, keysOnly, values.get(field(node, "key")), values.get(field(node, "value")));
+                node = (ObjectReference) values.get(field(node, "after"));
+            }
+            return view;
+        }
+
+        /** In-order walk of the red-black tree; nodes before the page cost one getValues each too. */
+        private View treeMap(ObjectReference map, boolean keysOnly, int offset, int limit) {
+            View view = new View(!keysOnly, intField(map, "size"), offset);
+            Deque<Map<Field, Value>> stack = new ArrayDeque<>();
+            Deque<ObjectReference> nodes = new ArrayDeque<>();
+            ObjectReference node = reference(map, "root");
+            int index = 0;
+            while ((node != null || !stack.isEmpty()) && view.count() < limit) {
+                while (node != null) {
+                    Map<Field, Value> values = values(node, "key", "value", "left", "right");
+                    stack.push(values);
+                    nodes.push(node);
+                    node = (ObjectReference) values.get(field(node, "left"));
+                }
+                Map<Field, Value> values = stack.pop();
+                ObjectReference current = nodes.pop();
+                if (index++ >= offset) {
+                    add(view, keysOnly, values.get(field(current, "key")), values.get(field(current, "value")));
+                }
+                node = (ObjectReference) values.get(field(current, "right"));
+            }
+            return view;
+        }
+
+        private View concurrentHashMap(ObjectReference map, int offset, int limit) {
+            Map<Field, Value> values = values(map, "baseCount", "counterCells", "table");
+            long size = ((LongValue) values.get(field(map, "baseCount"))).value();
+            ArrayReference cells = (ArrayReference) values.get(field(map, "counterCells"));
+            if (cells != null) {
+                for (Value cell : cells.getValues()) {
+                    if (cell != null) size += ((LongValue) ((ObjectReference) cell).getValue(field((ObjectReference) cell, "value"))).value();
+                }
+            }
+            View view = new View(true, (int) Math.max(0, Math.min(size, Integer.MAX_VALUE)), offset);
+            ArrayReference table = (ArrayReference) values.get(field(map, "table"));
+            if (table != null) readTable(table, "val", false, view, offset, limit);
+            return view;
+        }
+
+        private static void add(View view, boolean keysOnly, Value key, Value value) {
+            if (keysOnly) {
+                view.elements.add(key);
+            } else {
+                view.entries.add(new Value[]{key, value});
+            }
+        }
+
+        private int intField(ObjectReference object, String name) {
+            Value value = object.getValue(field(object, name));
+            if (!(value instanceof IntegerValue)) throw new IllegalStateException("no int field " + name);
+            return ((IntegerValue) value).value();
+        }
+
+        private ObjectReference reference(ObjectReference object, String name) {
+            Value value = object.getValue(field(object, name));
+            if (value != null && !(value instanceof ObjectReference)) throw new IllegalStateException("no reference field " + name);
+            return (ObjectReference) value;
+        }
+
+        private Map<Field, Value> values(ObjectReference object, String... names) {
+            List<Field> fields = new ArrayList<>(names.length);
+            for (String name : names) fields.add(field(object, name));
+            return Jdwp.getValues(object, fields);
+        }
+
+        private Field field(ObjectReference object, String name) {
+            ReferenceType type = object.referenceType();
+            List<Field> fields = fieldCache.get(type);
+            if (fields == null) {
+                fields = type.allFields();
+                fieldCache.put(type, fields);
+            }
+            for (Field field : fields) {
+                if (field.name().equals(name) && !field.isStatic()) return field;
+            }
+            throw new IllegalStateException(type.name() + " has no field " + name);
+        }
+    }
+}
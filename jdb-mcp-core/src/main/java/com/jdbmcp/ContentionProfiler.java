@@ -0,0 +1,293 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.jdi.Location;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.event.Event;
+import com.sun.jdi.event.MonitorContendedEnterEvent;
+import com.sun.jdi.event.MonitorContendedEnteredEvent;
+import com.sun.jdi.event.MonitorWaitEvent;
+import com.sun.jdi.event.MonitorWaitedEvent;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+import com.sun.jdi.request.MonitorContendedEnterRequest;
+import com.sun.jdi.request.MonitorContendedEnteredRequest;
+import com.sun.jdi.request.MonitorWaitRequest;
+import com.sun.jdi.request.MonitorWaitedRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Monitor contention from SUSPEND_NONE contended-enter/entered (and optionally wait/waited) requests.
+ * A thread's blocked time runs from its contended-enter event to its contended-entered event and is
+ * added up per monitor class, monitor instance, acquire location and owning thread. JDWP can only read
+ * a monitor's owner while the whole VM is suspended, so the owner is the thread that last acquired the
+ * monitor under contention: exact within a convoy, where every acquisition is contended, and 'unknown'
+ * when the holder took the lock uncontended. Times are taken on receipt of the events. All updates run
+ * on the event thread; reports are taken under the same lock.
+ */
+public class ContentionProfiler {
+    /** Request property marking the profiler's monitor requests. */
+    public static final String PROPERTY = "jdbmcp.contentionProfiler";
+    /** Keys kept per table; further keys are only counted in the totals. */
+    private static final int MAX_KEYS = 2000;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static class Pending {
+        final long monitorId;
+        final Location location;
+        final long start;
+        final String owner;
+
+        Pending(long monitorId, Location location, long start, String owner) {
+            this.monitorId = monitorId;
+            this.location = location;
+            this.start = start;
+            this.owner = owner;
+        }
+    }
+
+    private final List<EventRequest> requests = new ArrayList<>();
+    private final Map<String, Metrics.Timer> byClass = new HashMap<>();
+    private final Map<Long, Metrics.Timer> byMonitor = new HashMap<>();
+    private final Map<Location, Metrics.Timer> byLocation = new HashMap<>();
+    private final Map<String, Metrics.Timer> byOwner = new HashMap<>();
+    private final Map<Long, Metrics.Timer> waits = new HashMap<>();
+    private final Map<Long, Pending> blocked = new HashMap<>();
+    private final Map<Long, Long> waiting = new HashMap<>();
+    private final Map<Long, String> lastOwner = new HashMap<>();
+    private final Map<Long, String> monitorClasses = new HashMap<>();
+    private final Map<Long, String> threadNames = new HashMap<>();
+    private long contentions;
+    private long blockedNanos;
+    private long waitCount;
+    private long timedOutWaits;
+    private long since = System.currentTimeMillis();
+
+    /**
+     * Starts profiling, replacing an earlier profile of this session.
+     *
+     * @param classFilters  comma-separated class patterns the requests are restricted to
+     * @param classExcludes comma-separated class patterns to leave out, e.g. 'java.*'
+     * @param includeWaits  also measure Object.wait() calls
+     */
+    public synchronized ObjectNode start(VirtualMachine vm, String classFilters, String classExcludes, boolean includeWaits) throws Exception {
+        if (!vm.canRequestMonitorEvents()) {
+            throw new Exception("Target VM cannot report monitor events (canRequestMonitorEvents is false)");
+        }
+        stop(vm);
+        reset();
+        EventRequestManager erm = vm.eventRequestManager();
+        MonitorContendedEnterRequest enter = erm.createMonitorContendedEnterRequest();
+        MonitorContendedEnteredRequest entered = erm.createMonitorContendedEnteredRequest();
+        if (classFilters != null) {
+            for (String filter : classFilters.split(",")) {
+                if (filter.trim().isEmpty()) continue;
+                enter.addClassFilter(filter.trim());
+                entered.addClassFilter(filter.trim());
+            }
+        }
+        if (classExcludes != null) {
+            for (String exclude : classExcludes.split(",")) {
+                if (exclude.trim().isEmpty()) continue;
+                enter.addClassExclusionFilter(exclude.trim());
+                entered.addClassExclusionFilter(exclude.trim());
+            }
+        }
+        requests.add(enter);
+        requests.add(entered);
+        if (includeWaits) {
+            // Wait events are located in Object.wait itself, so class filters would only ever drop them
+            MonitorWaitRequest wait = erm.createMonitorWaitRequest();
+            MonitorWaitedRequest waited = erm.createMonitorWaitedRequest();
+            requests.add(wait);
+            requests.add(waited);
+        }
+        for (EventRequest request : requests) {
+            request.putProperty(PROPERTY, this);
+            request.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            request.enable();
+        }
+        ObjectNode result = mapper.createObjectNode();
+        result.put("status", "profiling");
+        if (classFilters != null) result.put("classFilter", classFilters);
+        if (classExcludes != null) result.put("classExclude", classExcludes);
+        result.put("waits", includeWaits);
+        return result;
+    }
+
+    /** Removes the monitor requests; collected statistics are kept until reset or the next start. */
+    public synchronized void stop(VirtualMachine vm) {
+        if (vm != null && !requests.isEmpty()) {
+            try {
+                vm.eventRequestManager().deleteEventRequests(requests);
+            } catch (Exception e) {
+                System.err.println("Failed to delete monitor requests: " + e.getMessage());
+            }
+        }
+        forgetRequests();
+    }
+
+    /** Drops requests of a VM connection that is gone. */
+    public synchronized void forgetRequests() {
+        requests.clear();
+        blocked.clear();
+        waiting.clear();
+    }
+
+    public synchronized boolean isActive() {
+        return !requests.isEmpty();
+    }
+
+    public synchronized void reset() {
+        byClass.clear();
+        byMonitor.clear();
+        byLocation.clear();
+        byOwner.clear();
+        waits.clear();
+        lastOwner.clear();
+        monitorClasses.clear();
+        contentions = 0;
+        blockedNanos = 0;
+        waitCount = 0;
+        timedOutWaits = 0;
+        since = System.currentTimeMillis();
+    }
+
+    public synchronized void record(Event event) {
+        long now = System.nanoTime();
+        if (event instanceof MonitorContendedEnterEvent) {
+            MonitorContendedEnterEvent enter = (MonitorContendedEnterEvent) event;
+            long monitorId = enter.monitor().uniqueID();
+            describe(enter.monitor());
+            String owner = lastOwner.get(monitorId);
+            blocked.put(enter.thread().uniqueID(), new Pending(monitorId, enter.location(), now, owner != null ? owner : "unknown"));
+        } else if (event instanceof MonitorContendedEnteredEvent) {
+            MonitorContendedEnteredEvent entered = (MonitorContendedEnteredEvent) event;
+            ThreadReference thread = entered.thread();
+            long monitorId = entered.monitor().uniqueID();
+            if (lastOwner.size() < MAX_KEYS || lastOwner.containsKey(monitorId)) {
+                lastOwner.put(monitorId, name(thread));
+            }
+            Pending pending = blocked.remove(thread.uniqueID());
+            if (pending == null || pending.monitorId != monitorId) return;
+            long nanos = now - pending.start;
+            contentions++;
+            blockedNanos += nanos;
+            add(byClass, describe(entered.monitor()), nanos);
+            add(byMonitor, monitorId, nanos);
+            add(byLocation, pending.location, nanos);
+            add(byOwner, pending.owner, nanos);
+        } else if (event instanceof MonitorWaitEvent) {
+            waiting.put(((MonitorWaitEvent) event).thread().uniqueID(), now);
+        } else if (event instanceof MonitorWaitedEvent) {
+            MonitorWaitedEvent waited = (MonitorWaitedEvent) event;
+            Long start = waiting.remove(waited.thread().uniqueID());
+            if (start == null) return;
+            waitCount++;
+            if (waited.timedout()) timedOutWaits++;
+            describe(waited.monitor());
+            add(waits, waited.monitor().uniqueID(), now - start);
+        }
+    }
+
+    private static <K> void add(Map<K, Metrics.Timer> table, K key, long nanos) {
+        Metrics.Timer timer = table.get(key);
+        if (timer == null) {
+            if (table.size() >= MAX_KEYS) return;
+            timer = new Metrics.Timer("monitor", String.valueOf(key));
+            table.put(key, timer);
+        }
+        timer.record(nanos);
+    }
+
+    private String describe(ObjectReference monitor) {
+        String name = monitorClasses.get(monitor.uniqueID());
+        if (name == null) {
+            name = monitor.referenceType().name();
+            if (monitorClasses.size() < MAX_KEYS) monitorClasses.put(monitor.uniqueID(), name);
+        }
+        return name;
+    }
+
+    private String name(ThreadReference thread) {
+        String name = threadNames.get(thread.uniqueID());
+        if (name == null) {
+            name = JdiStateMapper.threadName(thread);
+            if (threadNames.size() < MAX_KEYS) threadNames.put(thread.uniqueID(), name);
+        }
+        return name;
+    }
+
+    /** Ranked contention report: blocked time per monitor class, monitor, acquire location and owner. */
+    public synchronized ObjectNode report(int limit) {
+        ObjectNode result = mapper.createObjectNode();
+        result.put("profiling", !requests.isEmpty());
+        result.put("sinceMs", System.currentTimeMillis() - since);
+        result.put("contentions", contentions);
+        result.put("blockedMs", blockedNanos / 1e6);
+        table(result.putArray("byMonitorClass"), "monitorClass", byClass, limit);
+        table(result.putArray("byMonitor"), "monitor", byMonitor, limit);
+        table(result.putArray("byAcquireLocation"), "location", byLocation, limit);
+        table(result.putArray("byOwner"), "owner", byOwner, limit);
+        ArrayNode now = result.putArray("blockedNow");
+        long nanoTime = System.nanoTime();
+        for (Map.Entry<Long, Pending> entry : blocked.entrySet()) {
+            if (now.size() >= limit) break;
+            Pending pending = entry.getValue();
+            now.addObject()
+                    .put("thread", threadNames.containsKey(entry.getKey()) ? threadNames.get(entry.getKey()) : "#" + entry.getKey())
+                    .put("monitor", monitorLabel(pending.monitorId))
+                    .put("location", ExceptionTelemetry.format(pending.location))
+                    .put("owner", pending.owner)
+                    .put("blockedMs", (nanoTime - pending.start) / 1e6);
+        }
+        if (waitCount > 0 || !waits.isEmpty()) {
+            result.put("waits", waitCount);
+            result.put("timedOutWaits", timedOutWaits);
+            table(result.putArray("waitsByMonitor"), "monitor", waits, limit);
+        }
+        return result;
+    }
+
+    private <K> void table(ArrayNode array, String label, Map<K, Metrics.Timer> table, int limit) {
+        List<Map.Entry<K, Metrics.Timer>> ranked = new ArrayList<>(table.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<K, Metrics.Timer>>() {
+            @Override
+            public int compare(Map.Entry<K, Metrics.Timer> a, Map.Entry<K, Metrics.Timer> b) {
+                return Long.compare(b.getValue().totalNanos.get(), a.getValue().totalNanos.get());
+            }
+        });
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            K key = ranked.get(i).getKey();
+            Metrics.Timer timer = ranked.get(i).getValue();
+            ObjectNode row = array.addObject();
+            if (key instanceof Location) {
+                row.put(label, ExceptionTelemetry.format((Location) key));
+            } else if (key instanceof Long) {
+                row.put(label, monitorLabel((Long) key));
+            } else {
+                row.put(label, String.valueOf(key));
+            }
+            row.put("count", timer.count.get());
+            row.put("totalMs", timer.totalNanos.get() / 1e6);
+            row.put("p99Ms", timer.percentileNanos(0.99) / 1e6);
+            row.put("maxMs", timer.maxNanos.get() / 1e6);
+        }
+    }
+
+    private String monitorLabel(long monitorId) {
+        String type = monitorClasses.get(monitorId);
+        return (type != null ? type : "object") + " #" + monitorId;
+    }
+}
@@ -0,0 +1,262 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.jdi.Field;
+import com.sun.jdi.Location;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StringReference;
+import com.sun.jdi.Value;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.event.ExceptionEvent;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+import com.sun.jdi.request.ExceptionRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exception monitoring without stopping the target. Exception requests use SUSPEND_NONE and every event
+ * is counted per site (throw location, catch location) in a lock-free map. Sites are keyed by JDI
+ * locations, which compare without JDWP round-trips; the exception type and message are read once,
+ * from the first exception seen at a site. An optional second request with a count filter suspends the
+ * thread on the Nth matching exception.
+ */
+public class ExceptionTelemetry {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    /** Distinct sites kept; exceptions at further sites are only counted in total. */
+    private static final int MAX_SITES = 10000;
+
+    private static class Site {
+        final Location throwLocation;
+        final Location catchLocation;
+
+        Site(Location throwLocation, Location catchLocation) {
+            this.throwLocation = throwLocation;
+            this.catchLocation = catchLocation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Site)) return false;
+            Site other = (Site) o;
+            return throwLocation.equals(other.throwLocation)
+                    && (catchLocation == null ? other.catchLocation == null : catchLocation.equals(other.catchLocation));
+        }
+
+        @Override
+        public int hashCode() {
+            return throwLocation.hashCode() * 31 + (catchLocation == null ? 0 : catchLocation.hashCode());
+        }
+    }
+
+    private static class SiteStats {
+        final AtomicLong count = new AtomicLong();
+        final long firstSeen = System.currentTimeMillis();
+        volatile long lastSeen;
+        volatile String exceptionType;
+        volatile String message;
+    }
+
+    private final ConcurrentMap<Site, SiteStats> sites = new ConcurrentHashMap<>();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong unrecordedSites = new AtomicLong();
+    private final List<ExceptionRequest> requests = new CopyOnWriteArrayList<>();
+    private final List<ExceptionRequest> suspendRequests = new CopyOnWriteArrayList<>();
+    private volatile long since = System.currentTimeMillis();
+    private volatile Field detailMessage;
+    /**
+     * Overlapping monitors report one throw as several events of the same set; it is counted once. Reset
+     * per set, since a rethrow of the same object (catch, log, throw e) is a new throw at another site.
+     */
+    private ObjectReference lastException;
+
+    /**
+     * Adds an exception monitor.
+     *
+     * @param exceptionClass  loaded exception class whose subclasses are included as well; null for all
+     * @param classFilters    comma-separated patterns ('com.example.*') for classes the exception is thrown in
+     * @param classExcludes   comma-separated patterns of throwing classes to ignore, e.g. 'java.*,sun.*'
+     * @param suspendOnCount  when positive, also suspend the throwing thread on this occurrence
+     */
+    public ObjectNode start(VirtualMachine vm, String exceptionClass, boolean caught, boolean uncaught,
+                            String classFilters, String classExcludes, int suspendOnCount) throws Exception {
+        ReferenceType type = null;
+        if (exceptionClass != null) {
+            List<ReferenceType> types = vm.classesByName(exceptionClass);
+            if (types.isEmpty()) throw new Exception("Exception class not loaded yet: " + exceptionClass + ". Monitor a loaded superclass instead.");
+            type = types.get(0);
+        }
+        if (!isActive() && sites.isEmpty()) since = System.currentTimeMillis();
+        EventRequestManager erm = vm.eventRequestManager();
+        ExceptionRequest request = create(erm, type, caught, uncaught, classFilters, classExcludes);
+        request.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+        request.enable();
+        requests.add(request);
+
+        ObjectNode result = mapper.createObjectNode();
+        result.put("status", "monitoring");
+        result.put("exceptionClass", type != null ? type.name() : "java.lang.Throwable");
+        result.put("caught", caught);
+        result.put("uncaught", uncaught);
+        if (suspendOnCount > 0) {
+            ExceptionRequest suspend = create(erm, type, caught, uncaught, classFilters, classExcludes);
+            suspend.addCountFilter(suspendOnCount);
+            suspend.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+            suspend.enable();
+            suspendRequests.add(suspend);
+            result.put("suspendOnCount", suspendOnCount);
+        }
+        result.put("monitors", requests.size());
+        return result;
+    }
+
+    private static ExceptionRequest create(EventRequestManager erm, ReferenceType type, boolean caught, boolean uncaught,
+                                           String classFilters, String classExcludes) {
+        ExceptionRequest request = erm.createExceptionRequest(type, caught, uncaught);
+        if (classFilters != null) {
+            for (String filter : classFilters.split(",")) {
+                if (!filter.trim().isEmpty()) request.addClassFilter(filter.trim());
+            }
+        }
+        if (classExcludes != null) {
+            for (String exclude : classExcludes.split(",")) {
+                if (!exclude.trim().isEmpty()) request.addClassExclusionFilter(exclude.trim());
+            }
+        }
+        return request;
+    }
+
+    /** Removes all monitors; collected statistics are kept until reset. */
+    public void stop(VirtualMachine vm) {
+        List<ExceptionRequest> all = new ArrayList<ExceptionRequest>(requests);
+        all.addAll(suspendRequests);
+        forgetRequests();
+        if (vm == null) return;
+        try {
+            vm.eventRequestManager().deleteEventRequests(all);
+        } catch (Exception e) {
+            System.err.println("Failed to delete exception requests: " + e.getMessage());
+        }
+    }
+
+    /** Drops requests of a VM connection that is gone. */
+    public void forgetRequests() {
+        requests.clear();
+        suspendRequests.clear();
+    }
+
+    public boolean isActive() {
+        return !requests.isEmpty() || !suspendRequests.isEmpty();
+    }
+
+    /** True for the Nth-occurrence event, whose thread stays suspended. */
+    public boolean isSuspendEvent(ExceptionEvent event) {
+        return suspendRequests.contains(event.request());
+    }
+
+    /** Marks the start of an event set, so the next exception event is never taken for a duplicate. */
+    public void beginEventSet() {
+        lastException = null;
+    }
+
+    /** Counts one exception from the SUSPEND_NONE monitor. Called on the event thread. */
+    public void record(ExceptionEvent event) {
+        if (!requests.contains(event.request()) || event.exception().equals(lastException)) return;
+        lastException = event.exception();
+        total.incrementAndGet();
+        Site site = new Site(event.location(), event.catchLocation());
+        SiteStats stats = sites.get(site);
+        if (stats == null) {
+            if (sites.size() >= MAX_SITES) {
+                unrecordedSites.incrementAndGet();
+                return;
+            }
+            SiteStats created = new SiteStats();
+            stats = sites.putIfAbsent(site, created);
+            if (stats == null) {
+                stats = created;
+                describe(event, stats);
+            }
+        }
+        stats.count.incrementAndGet();
+        stats.lastSeen = System.currentTimeMillis();
+    }
+
+    private void describe(ExceptionEvent event, SiteStats stats) {
+        try {
+            ReferenceType type = event.exception().referenceType();
+            stats.exceptionType = type.name();
+            if (detailMessage == null) {
+                List<ReferenceType> throwable = event.virtualMachine().classesByName("java.lang.Throwable");
+                if (!throwable.isEmpty()) detailMessage = throwable.get(0).fieldByName("detailMessage");
+            }
+            if (detailMessage != null) {
+                Value value = event.exception().getValue(detailMessage);
+                if (value instanceof StringReference) {
+                    String message = ((StringReference) value).value();
+                    stats.message = message.length() > 200 ? message.substring(0, 200) + "..." : message;
+                }
+            }
+        } catch (Exception e) {
+            // The exception object may already be collected since the thread was not suspended
+        }
+    }
+
+    public void reset() {
+        sites.clear();
+        total.set(0);
+        unrecordedSites.set(0);
+        since = System.currentTimeMillis();
+    }
+
+    /** Sites ranked by count. */
+    public ObjectNode report(int limit) {
+        List<java.util.Map.Entry<Site, SiteStats>> ranked = new ArrayList<>(sites.entrySet());
+        Collections.sort(ranked, new Comparator<java.util.Map.Entry<Site, SiteStats>>() {
+            @Override
+            public int compare(java.util.Map.Entry<Site, SiteStats> a, java.util.Map.Entry<Site, SiteStats> b) {
+                return Long.compare(b.getValue().count.get(), a.getValue().count.get());
+            }
+        });
+        ObjectNode result = mapper.createObjectNode();
+        long elapsed = Math.max(1, System.currentTimeMillis() - since);
+        long count = total.get();
+        result.put("monitoring", isActive());
+        result.put("totalExceptions", count);
+        result.put("perSecond", Math.round(count * 10000.0 / elapsed) / 10.0);
+        result.put("distinctSites", sites.size());
+        if (unrecordedSites.get() > 0) result.put("exceptionsAtUntrackedSites", unrecordedSites.get());
+        result.put("sinceMs", elapsed);
+        ArrayNode table = result.putArray("sites");
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            Site site = ranked.get(i).getKey();
+            SiteStats stats = ranked.get(i).getValue();
+            ObjectNode row = table.addObject();
+            row.put("count", stats.count.get());
+            row.put("exception", stats.exceptionType);
+            row.put("thrownAt", format(site.throwLocation));
+            row.put("caughtAt", site.catchLocation != null ? format(site.catchLocation) : "uncaught");
+            if (stats.message != null) row.put("message", stats.message);
+            row.put("firstSeenMsAgo", System.currentTimeMillis() - stats.firstSeen);
+            row.put("lastSeenMsAgo", System.currentTimeMillis() - stats.lastSeen);
+        }
+        return result;
+    }
+
+    public static String format(Location location) {
+        try {
+            return location.declaringType().name() + "." + location.method().name() + ":" + location.lineNumber();
+        } catch (Exception e) {
+            return String.valueOf(location);
+        }
+    }
+}
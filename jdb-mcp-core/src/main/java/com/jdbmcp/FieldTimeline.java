@@ -0,0 +1,320 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.jdi.BooleanValue;
+import com.sun.jdi.ByteValue;
+import com.sun.jdi.CharValue;
+import com.sun.jdi.DoubleValue;
+import com.sun.jdi.Field;
+import com.sun.jdi.FloatValue;
+import com.sun.jdi.IntegerValue;
+import com.sun.jdi.Location;
+import com.sun.jdi.LongValue;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ShortValue;
+import com.sun.jdi.StringReference;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.Value;
+import com.sun.jdi.event.ModificationWatchpointEvent;
+import com.sun.jdi.event.WatchpointEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time series of one field, recorded from SUSPEND_NONE watchpoints so the target never stops. Entries
+ * live in a ring of parallel primitive columns (time, thread, object, location, old and new value) that
+ * grows up to its capacity; values are stored as raw bits of the field's primitive type, references as
+ * their uniqueID. Everything in an entry comes from the event packet, without JDWP round-trips, except
+ * the length and leading chars of String values (read once per string). The old value is the object's previously recorded
+ * value, or for static fields the value read when recording started; it is unknown before the first
+ * recorded write of an instance. Recording runs on the event thread; tools read under the same lock.
+ */
+public class FieldTimeline {
+    /** Request property key under which the timeline is stored. */
+    public static final String PROPERTY = "jdbmcp.fieldTimeline";
+    public static final int DEFAULT_CAPACITY = 100000;
+    private static final int INITIAL_CAPACITY = 1024;
+    /** Objects whose last value is tracked, and cached String texts / referenced objects, each. */
+    private static final int MAX_TRACKED = 100000;
+    private static final int MAX_CACHED = 10000;
+    /** Leading chars kept of a String value; longer ones are recorded with their length and a handle. */
+    private static final int MAX_STRING_CHARS = 256;
+
+    private static final byte ACCESS = 1;
+    private static final byte OLD_KNOWN = 2;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Field field;
+    /** JNI signature character of the field type; 'L' for all references. */
+    private final char kind;
+    private final int capacity;
+
+    private long[] times = new long[0];
+    private long[] threads = new long[0];
+    private long[] objects = new long[0];
+    private int[] locations = new int[0];
+    private long[] newValues = new long[0];
+    private long[] oldValues = new long[0];
+    private byte[] flags = new byte[0];
+    private long total;
+    private long modifications;
+    private long accesses;
+    private volatile boolean recording = true;
+
+    private final List<Location> locationTable = new ArrayList<>();
+    private final Map<Location, Integer> locationIds = new HashMap<>();
+    private final List<long[]> locationCounts = new ArrayList<>();
+    private final Map<Long, ThreadReference> threadRefs = new HashMap<>();
+    private final Map<Long, long[]> threadCounts = new HashMap<>();
+    private final Map<Long, Long> lastValues = lru(MAX_TRACKED);
+    private final Map<Long, StringValues.Prefix> strings = lru(MAX_CACHED);
+    private final Map<Long, ObjectReference> references = lru(MAX_CACHED);
+
+    public FieldTimeline(Field field, int capacity) {
+        this.field = field;
+        String signature = field.signature();
+        this.kind = signature.charAt(0) == '[' ? 'L' : signature.charAt(0);
+        this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+    }
+
+    private static <V> Map<Long, V> lru(final int max) {
+        return new LinkedHashMap<Long, V>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                return size() > max;
+            }
+        };
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /** Seeds the old value of a static field, read once when recording starts. */
+    public synchronized void setBaseline(Value value) {
+        lastValues.put(0L, encode(value));
+    }
+
+    public synchronized void record(WatchpointEvent event) {
+        int slot = slot();
+        ThreadReference thread = event.thread();
+        long threadId = thread.uniqueID();
+        if (!threadRefs.containsKey(threadId) && threadRefs.size() < MAX_CACHED) threadRefs.put(threadId, thread);
+        long[] threadCount = threadCounts.get(threadId);
+        if (threadCount == null && threadCounts.size() < MAX_CACHED) threadCounts.put(threadId, threadCount = new long[1]);
+        if (threadCount != null) threadCount[0]++;
+        int location = intern(event.location());
+        locationCounts.get(location)[0]++;
+        ObjectReference object = event.object();
+        long objectId = object == null ? 0 : object.uniqueID();
+
+        times[slot] = System.currentTimeMillis();
+        threads[slot] = threadId;
+        objects[slot] = objectId;
+        locations[slot] = location;
+        if (event instanceof ModificationWatchpointEvent) {
+            modifications++;
+            long bits = encode(((ModificationWatchpointEvent) event).valueToBe());
+            Long old = lastValues.put(objectId, bits);
+            newValues[slot] = bits;
+            oldValues[slot] = old != null ? old : 0;
+            flags[slot] = old != null ? OLD_KNOWN : 0;
+        } else {
+            accesses++;
+            newValues[slot] = 0;
+            oldValues[slot] = 0;
+            flags[slot] = ACCESS;
+        }
+        total++;
+    }
+
+    /** Slot for the next entry: grows the columns up to the capacity, then overwrites the oldest. */
+    private int slot() {
+        if (total < times.length) return (int) total;
+        if (times.length < capacity) {
+            int size = (int) Math.min(capacity, Math.max(INITIAL_CAPACITY, (long) times.length * 2));
+            times = Arrays.copyOf(times, size);
+            threads = Arrays.copyOf(threads, size);
+            objects = Arrays.copyOf(objects, size);
+            locations = Arrays.copyOf(locations, size);
+            newValues = Arrays.copyOf(newValues, size);
+            oldValues = Arrays.copyOf(oldValues, size);
+            flags = Arrays.copyOf(flags, size);
+            return (int) total;
+        }
+        return (int) (total % capacity);
+    }
+
+    private int intern(Location location) {
+        Integer id = locationIds.get(location);
+        if (id == null) {
+            id = locationTable.size();
+            locationTable.add(location);
+            locationIds.put(location, id);
+            locationCounts.add(new long[1]);
+        }
+        return id;
+    }
+
+    private long encode(Value value) {
+        switch (kind) {
+            case 'Z': return ((BooleanValue) value).value() ? 1 : 0;
+            case 'B': return ((ByteValue) value).value();
+            case 'C': return ((CharValue) value).value();
+            case 'S': return ((ShortValue) value).value();
+            case 'I': return ((IntegerValue) value).value();
+            case 'J': return ((LongValue) value).value();
+            case 'F': return Float.floatToRawIntBits(((FloatValue) value).value());
+            case 'D': return Double.doubleToRawLongBits(((DoubleValue) value).value());
+            default:
+                if (value == null) return 0;
+                ObjectReference ref = (ObjectReference) value;
+                long id = ref.uniqueID();
+                if (ref instanceof StringReference) {
+                    if (!strings.containsKey(id)) {
+                        try {
+                            StringValues.Prefix prefix = StringValues.prefix((StringReference) ref, MAX_STRING_CHARS);
+                            strings.put(id, prefix);
+                            if (!prefix.isComplete()) references.put(id, ref);
+                        } catch (Exception e) {
+                            // Collected before it could be read
+                        }
+                    }
+                } else {
+                    references.put(id, ref);
+                }
+                return id;
+        }
+    }
+
+    private void putDecoded(ObjectNode node, String name, long bits, Map<Long, ObjectReference> handles) {
+        switch (kind) {
+            case 'Z': node.put(name, bits != 0); break;
+            case 'C': node.put(name, String.valueOf((char) bits)); break;
+            case 'J': node.put(name, bits); break;
+            case 'F': node.put(name, Float.intBitsToFloat((int) bits)); break;
+            case 'D': node.put(name, Double.longBitsToDouble(bits)); break;
+            case 'L':
+                StringValues.Prefix prefix = strings.get(bits);
+                if (bits == 0) {
+                    node.putNull(name);
+                } else if (prefix != null && prefix.isComplete()) {
+                    node.put(name, prefix.text);
+                } else if (prefix != null) {
+                    ObjectNode string = node.putObject(name);
+                    string.put("value", prefix.text);
+                    string.put("length", prefix.length);
+                    string.put("truncated", true);
+                    string.put("handle", bits);
+                    ObjectReference object = references.get(bits);
+                    if (object != null && handles != null) handles.put(bits, object);
+                } else {
+                    ObjectNode ref = node.putObject(name);
+                    ref.put("handle", bits);
+                    ObjectReference object = references.get(bits);
+                    if (object != null && handles != null) handles.put(bits, object);
+                }
+                break;
+            default: node.put(name, (int) bits);
+        }
+    }
+
+    /**
+     * Summary (writes and reads, top writer locations and threads) and entries from sequence number
+     * {@code since}, or the latest {@code limit} entries when {@code since} is negative. Objects that
+     * appear as values are added to {@code handles} so they can be expanded.
+     */
+    public synchronized ObjectNode toJson(long since, int limit, Map<Long, ObjectReference> handles) {
+        ObjectNode result = mapper.createObjectNode();
+        result.put("field", field.declaringType().name() + "." + field.name());
+        result.put("type", field.typeName());
+        result.put("recording", recording);
+        result.put("modifications", modifications);
+        result.put("accesses", accesses);
+        long retained = Math.min(total, capacity);
+        long first = total - retained;
+        result.put("retained", retained);
+        if (first > 0) result.put("dropped", first);
+
+        ArrayNode writers = result.putArray("byLocation");
+        List<Integer> byLocation = new ArrayList<>();
+        for (int i = 0; i < locationTable.size(); i++) byLocation.add(i);
+        Collections.sort(byLocation, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(locationCounts.get(b)[0], locationCounts.get(a)[0]);
+            }
+        });
+        for (int i = 0; i < byLocation.size() && i < 10; i++) {
+            writers.addObject()
+                    .put("location", ExceptionTelemetry.format(locationTable.get(byLocation.get(i))))
+                    .put("count", locationCounts.get(byLocation.get(i))[0]);
+        }
+        List<Map.Entry<Long, long[]>> byThread = new ArrayList<>(threadCounts.entrySet());
+        Collections.sort(byThread, new Comparator<Map.Entry<Long, long[]>>() {
+            @Override
+            public int compare(Map.Entry<Long, long[]> a, Map.Entry<Long, long[]> b) {
+                return Long.compare(b.getValue()[0], a.getValue()[0]);
+            }
+        });
+        ArrayNode threadList = result.putArray("byThread");
+        for (int i = 0; i < byThread.size() && i < 10; i++) {
+            threadList.addObject()
+                    .put("thread", threadName(byThread.get(i).getKey()))
+                    .put("count", byThread.get(i).getValue()[0]);
+        }
+
+        long from = since < 0 ? Math.max(first, total - limit) : Math.max(first, since);
+        long to = Math.min(total, from + limit);
+        ArrayNode entries = result.putArray("entries");
+        for (long seq = from; seq < to; seq++) {
+            int slot = (int) (seq % capacity);
+            ObjectNode entry = entries.addObject();
+            entry.put("seq", seq);
+            entry.put("timeEpochMs", times[slot]);
+            entry.put("thread", threadName(threads[slot]));
+            entry.put("location", ExceptionTelemetry.format(locationTable.get(locations[slot])));
+            if (objects[slot] == 0) {
+                entry.put("object", "static");
+            } else {
+                entry.put("object", objects[slot]);
+            }
+            if ((flags[slot] & ACCESS) != 0) {
+                entry.put("access", true);
+                continue;
+            }
+            if ((flags[slot] & OLD_KNOWN) != 0) putDecoded(entry, "old", oldValues[slot], handles);
+            putDecoded(entry, "new", newValues[slot], handles);
+        }
+        result.put("nextSeq", to);
+        return result;
+    }
+
+    private String threadName(long threadId) {
+        ThreadReference thread = threadRefs.get(threadId);
+        try {
+            if (thread != null) return JdiStateMapper.threadName(thread);
+        } catch (Exception e) {
+            // Thread is gone
+        }
+        return "#" + threadId;
+    }
+}
@@ -0,0 +1,195 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Hit limits of one logical breakpoint (all locations of a line or method), attached to its requests as a
+ * JDI request property. Once {@code maxHitsPerSecond} or {@code maxHits} is exceeded the breakpoint trips:
+ * its requests are disabled, or downgraded to counting hits without suspending.
+ * <p>
+ * Skipped hits never reach the debugger: sampling and counting use JDWP count filters, so the agent
+ * skips hits on its own and each event stands for {@link #STRIDE} hits. Sampling draws geometric strides
+ * (every hit suspends with probability {@code sampleRate}). Counting adapts the stride so a hot path
+ * produces at most ~100 events per second, which makes its hit count exact up to the last stride.
+ * {@link #admit(int)} runs on the event thread; the counters are read by tools.
+ */
+public class HitLimiter {
+    /** Request property key under which the limiter is stored. */
+    public static final String PROPERTY = "jdbmcp.hitLimiter";
+    /** Request property with the number of hits one event of the request stands for (its count filter). */
+    public static final String STRIDE = "jdbmcp.stride";
+    private static final int MAX_COUNT_STRIDE = 1000000;
+
+    public static final String ACTIVE = "active";
+    public static final String COUNTING = "counting";
+    public static final String DISABLED = "disabled";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final int maxHitsPerSecond;
+    private final long maxHits;
+    private final double sampleRate;
+    private final boolean disableOnLimit;
+
+    private volatile long hits;
+    private volatile long suspensions;
+    private volatile long suppressed;
+    private volatile String state = ACTIVE;
+    private volatile String trippedBy;
+    private long windowStart;
+    private int windowSuspensions;
+    private boolean tripPending;
+    private volatile int countStride = 1;
+    private long lastCountEvent;
+
+    /**
+     * @param maxHitsPerSecond suspensions allowed per second, 0 for no limit
+     * @param maxHits          total suspensions allowed, 0 for no limit
+     * @param sampleRate       probability that a hit suspends (1 for every hit)
+     * @param disableOnLimit   disable the breakpoint when tripped instead of downgrading it to counting
+     */
+    public HitLimiter(int maxHitsPerSecond, long maxHits, double sampleRate, boolean disableOnLimit) {
+        this.maxHitsPerSecond = maxHitsPerSecond;
+        this.maxHits = maxHits;
+        this.sampleRate = sampleRate;
+        this.disableOnLimit = disableOnLimit;
+    }
+
+    /**
+     * The limit settings without counters or state, e.g. 'maxHitsPerSecond=10,sampleRate=0.01,onLimit=count',
+     * as journaled with the breakpoint; read back with {@link #parse(String)}.
+     */
+    public String toSpec() {
+        StringBuilder spec = new StringBuilder();
+        if (maxHitsPerSecond > 0) spec.append("maxHitsPerSecond=").append(maxHitsPerSecond).append(',');
+        if (maxHits > 0) spec.append("maxHits=").append(maxHits).append(',');
+        if (sampleRate < 1) spec.append("sampleRate=").append(sampleRate).append(',');
+        return spec.append("onLimit=").append(disableOnLimit ? "disable" : "count").toString();
+    }
+
+    /** A fresh limiter with the settings of {@link #toSpec()}. */
+    public static HitLimiter parse(String spec) {
+        int maxHitsPerSecond = 0;
+        long maxHits = 0;
+        double sampleRate = 1;
+        boolean disableOnLimit = false;
+        for (String setting : spec.split(",")) {
+            int eq = setting.indexOf('=');
+            String name = eq > 0 ? setting.substring(0, eq) : setting;
+            String value = eq > 0 ? setting.substring(eq + 1) : "";
+            if ("maxHitsPerSecond".equals(name)) {
+                maxHitsPerSecond = Integer.parseInt(value);
+            } else if ("maxHits".equals(name)) {
+                maxHits = Long.parseLong(value);
+            } else if ("sampleRate".equals(name)) {
+                sampleRate = Double.parseDouble(value);
+            } else if ("onLimit".equals(name)) {
+                disableOnLimit = "disable".equals(value);
+            } else {
+                throw new IllegalArgumentException("Unknown hit limit setting '" + setting + "'");
+            }
+        }
+        return new HitLimiter(maxHitsPerSecond, maxHits, sampleRate, disableOnLimit);
+    }
+
+    /**
+     * Accounts for one event standing for {@code stride} hits, all but the last of which the agent
+     * skipped. Returns true when the hit may suspend and be reported, false when it is suppressed.
+     */
+    public synchronized boolean admit(int stride) {
+        hits += stride;
+        if (state != ACTIVE) {
+            suppressed += stride;
+            if (state == COUNTING) adaptCountStride();
+            return false;
+        }
+        suppressed += stride - 1;
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= 1000) {
+            windowStart = now;
+            windowSuspensions = 0;
+        }
+        if (maxHitsPerSecond > 0 && windowSuspensions >= maxHitsPerSecond) {
+            trip("maxHitsPerSecond=" + maxHitsPerSecond);
+            suppressed++;
+            return false;
+        }
+        windowSuspensions++;
+        suspensions++;
+        if (maxHits > 0 && suspensions >= maxHits) {
+            // This hit still suspends; the following ones no longer do
+            trip("maxHits=" + maxHits);
+        }
+        return true;
+    }
+
+    /** Widens the stride while events come faster than every 10 ms and narrows it when they slow down. */
+    private void adaptCountStride() {
+        long now = System.nanoTime();
+        long gap = now - lastCountEvent;
+        lastCountEvent = now;
+        if (gap < 10000000L && countStride < MAX_COUNT_STRIDE) {
+            countStride *= 10;
+        } else if (gap > 1000000000L && countStride > 1) {
+            countStride /= 10;
+        }
+    }
+
+    /**
+     * True when each event should re-arm its request with a fresh {@link #nextStride()}: sampling draws a
+     * new stride per event (a draw of 1 leaves the request without a count filter) and counting adapts it.
+     */
+    public boolean isStrided() {
+        return state == COUNTING || (state == ACTIVE && sampleRate < 1);
+    }
+
+    /** Hits the next request of this breakpoint should skip in the agent before reporting one. */
+    public int nextStride() {
+        if (state == COUNTING) return countStride;
+        if (sampleRate >= 1) return 1;
+        double p = Math.max(sampleRate, 1e-6);
+        double u = 1 - java.util.concurrent.ThreadLocalRandom.current().nextDouble();
+        return (int) Math.min(Integer.MAX_VALUE, 1 + (long) Math.floor(Math.log(u) / Math.log(1 - p)));
+    }
+
+    private void trip(String reason) {
+        state = disableOnLimit ? DISABLED : COUNTING;
+        trippedBy = reason;
+        tripPending = true;
+    }
+
+    /** True once after the limiter tripped, so the caller applies the new state to the requests. */
+    public synchronized boolean takeTrip() {
+        boolean pending = tripPending;
+        tripPending = false;
+        return pending;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getTrippedBy() {
+        return trippedBy;
+    }
+
+    public long getSuppressed() {
+        return suppressed;
+    }
+
+    public ObjectNode toJson() {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("state", state);
+        if (trippedBy != null) node.put("trippedBy", trippedBy);
+        node.put("hits", hits);
+        node.put("suspensions", suspensions);
+        node.put("suppressed", suppressed);
+        if (state == COUNTING && countStride > 1) node.put("countGranularity", countStride);
+        if (maxHitsPerSecond > 0) node.put("maxHitsPerSecond", maxHitsPerSecond);
+        if (maxHits > 0) node.put("maxHits", maxHits);
+        if (sampleRate < 1) node.put("sampleRate", sampleRate);
+        node.put("onLimit", disableOnLimit ? "disable" : "count");
+        return node;
+    }
+}
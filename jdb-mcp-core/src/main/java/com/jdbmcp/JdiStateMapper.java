@@ -16,12 +16,17 @@ public class JdiStateMapper {
 
     public static JsonNode getThreadState(ThreadReference thread, int maxStackDepth, int maxVarDepth) {
         ObjectNode state = mapper.createObjectNode();
-        state.put("threadName", thread.name());
+        state.put("threadName", threadName(thread));
         state.put("status", thread.isSuspended() ? "suspended" : "running");
+        if (VirtualThreads.isVirtual(thread)) {
+            state.put("virtual", true);
+            ThreadReference carrier = VirtualThreads.carrierOf(thread);
+            state.put("carrierThread", carrier != null ? threadName(carrier) : "unmounted");
+        }
 
         if (thread.isSuspended()) {
             try {
-                List<StackFrame> frames = thread.frames();
+                List<StackFrame> frames = Jdwp.frames(thread);
                 if (!frames.isEmpty()) {
                     StackFrame topFrame = frames.get(0);
                     Location loc = topFrame.location();
@@ -51,7 +56,7 @@ public class JdiStateMapper {
                         try {
                             List<LocalVariable> visibleVars = topFrame.visibleVariables();
                             if (visibleVars != null) {
-                                Map<LocalVariable, Value> values = topFrame.getValues(visibleVars);
+                                Map<LocalVariable, Value> values = Jdwp.getValues(topFrame, visibleVars);
                                 for (Map.Entry<LocalVariable, Value> entry : values.entrySet()) {
                                     varsNode.set(entry.getKey().name(), JdiValueConverter.convertValue(entry.getValue(), maxVarDepth));
                                 }
@@ -68,6 +73,12 @@ public class JdiStateMapper {
         return state;
     }
 
+    /**
+     * Above this many threads, VM state only lists suspended threads that were executing (e.g. stopped
+     * at a breakpoint or step) and summarizes the rest as counts per status.
+     */
+    public static final int VM_STATE_THREAD_LIMIT = 50;
+
     public static JsonNode getVmState(VirtualMachine vm) {
         ObjectNode vmState = mapper.createObjectNode();
         if (vm == null) {
@@ -76,13 +87,58 @@ public class JdiStateMapper {
         }
         vmState.put("connected", true);
         
+        List<ThreadReference> threads = Jdwp.allThreads(vm);
+        boolean summarize = threads.size() > VM_STATE_THREAD_LIMIT;
         ArrayNode threadsNode = vmState.putArray("threads");
+        Map<String, Integer> statusCounts = new java.util.TreeMap<>();
         boolean anySuspended = false;
-        for (ThreadReference thread : vm.allThreads()) {
-            threadsNode.add(getThreadState(thread, 1, -1));
-            if (thread.isSuspended()) anySuspended = true;
+        for (ThreadReference thread : threads) {
+            boolean suspended = thread.isSuspended();
+            if (suspended) anySuspended = true;
+            if (!summarize) {
+                threadsNode.add(getThreadState(thread, 1, -1));
+                continue;
+            }
+            try {
+                String status = statusName(thread.status());
+                if (suspended && "running".equals(status) && threadsNode.size() < VM_STATE_THREAD_LIMIT) {
+                    threadsNode.add(getThreadState(thread, 1, -1));
+                } else {
+                    String key = suspended ? "suspended/" + status : status;
+                    Integer count = statusCounts.get(key);
+                    statusCounts.put(key, count == null ? 1 : count + 1);
+                }
+            } catch (ObjectCollectedException e) {
+                // Thread died while listing
+            }
         }
         vmState.put("isSuspended", anySuspended);
+        if (summarize) {
+            vmState.put("threadCount", threads.size());
+            ObjectNode others = vmState.putObject("otherThreads");
+            for (Map.Entry<String, Integer> entry : statusCounts.entrySet()) {
+                others.put(entry.getKey(), entry.getValue());
+            }
+            vmState.put("note", "Idle threads are summarized by status. Use debug_list_threads with filters or groupByStack to inspect them.");
+        }
         return vmState;
     }
+
+    /** Thread name for display and lookup; virtual threads are often unnamed and shown as '#uniqueID'. */
+    public static String threadName(ThreadReference thread) {
+        String name = thread.name();
+        return name == null || name.isEmpty() ? "#" + thread.uniqueID() : name;
+    }
+
+    public static String statusName(int status) {
+        switch (status) {
+            case ThreadReference.THREAD_STATUS_RUNNING: return "running";
+            case ThreadReference.THREAD_STATUS_SLEEPING: return "sleeping";
+            case ThreadReference.THREAD_STATUS_MONITOR: return "monitor";
+            case ThreadReference.THREAD_STATUS_WAIT: return "wait";
+            case ThreadReference.THREAD_STATUS_ZOMBIE: return "zombie";
+            case ThreadReference.THREAD_STATUS_NOT_STARTED: return "not_started";
+            default: return "unknown";
+        }
+    }
 }
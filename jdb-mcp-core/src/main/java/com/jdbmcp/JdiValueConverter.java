@@ -5,20 +5,158 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.sun.jdi.*;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class JdiValueConverter {
     private static final ObjectMapper mapper = new ObjectMapper();
 
+    private static final int MAX_ARRAY_ELEMENTS = 100;
+    /** Default page of a collection view; unlike an array page, linked and hashed ones cost a round-trip per element. */
+    private static final int MAX_COLLECTION_ELEMENTS = 25;
+    /** Default prefix of a string; longer ones are reported with their length and a handle. */
+    private static final int MAX_STRING_LENGTH = 1000;
+
+    /**
+     * Output size budget for a rendering pass. Sizes are estimated from the JSON text of each node.
+     * Once exhausted, pending objects are reported as truncated summaries and no more JDWP calls are made.
+     */
+    public static class Budget {
+        private final long maxBytes;
+        private long usedBytes;
+        private int truncatedNodes;
+        private final Map<Long, ObjectReference> handles = new LinkedHashMap<>();
+        private ObjectSummarizer.Pass summaries;
+        private boolean rawFields;
+        private int pageOffset;
+        private int pageLimit;
+        private int maxStringLength = MAX_STRING_LENGTH;
+
+        public Budget(long maxBytes) {
+            this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        }
+
+        /** Adds a one-line 'summary' to objects rendered from now on; a null pass turns summaries off. */
+        public Budget withSummaries(ObjectSummarizer.Pass summaries) {
+            this.summaries = summaries;
+            return this;
+        }
+
+        /** Longest string shown in full; longer ones are cut to this prefix (0 keeps the default of 1000). */
+        public Budget withMaxStringLength(int maxStringLength) {
+            this.maxStringLength = maxStringLength > 0 ? maxStringLength : MAX_STRING_LENGTH;
+            return this;
+        }
+
+        /** Renders JDK collections field by field instead of as their logical contents. */
+        public Budget withRawFields(boolean rawFields) {
+            this.rawFields = rawFields;
+            return this;
+        }
+
+        /**
+         * Page of elements or entries shown for the top-level arrays and collections; a limit of 0 keeps
+         * the default of 100 array elements or 25 collection elements.
+         */
+        public Budget withPage(int offset, int limit) {
+            this.pageOffset = Math.max(0, offset);
+            this.pageLimit = Math.max(0, limit);
+            return this;
+        }
+
+        public static Budget unlimited() {
+            return new Budget(0);
+        }
+
+        public boolean isExhausted() {
+            return usedBytes >= maxBytes;
+        }
+
+        public long remaining() {
+            return Math.max(0, maxBytes - usedBytes);
+        }
+
+        public void charge(long bytes) {
+            usedBytes += bytes;
+        }
+
+        /** Objects and arrays rendered in this pass, by uniqueID, for later expansion. */
+        public Map<Long, ObjectReference> getHandles() {
+            return handles;
+        }
+
+        public boolean isLimited() {
+            return maxBytes != Long.MAX_VALUE;
+        }
+
+        public ObjectNode toJson() {
+            ObjectNode node = mapper.createObjectNode();
+            node.put("maxBytes", maxBytes);
+            node.put("usedBytes", usedBytes);
+            node.put("truncated", truncatedNodes > 0 || isExhausted());
+            node.put("truncatedNodes", truncatedNodes);
+            return node;
+        }
+    }
+
+    private static class Pending {
+        final ObjectReference ref;
+        final ObjectNode node;
+        final int depth;
+        final int offset;
+        final int limit;
+
+        Pending(ObjectReference ref, ObjectNode node, int depth, Budget budget) {
+            this.ref = ref;
+            this.node = node;
+            this.depth = depth;
+            this.offset = depth == 0 ? budget.pageOffset : 0;
+            this.limit = depth == 0 ? budget.pageLimit : 0;
+        }
+    }
+
     public static ObjectNode convertValue(Value value, int maxDepth) {
-        return convertValueRecursive(value, 0, maxDepth);
+        return convertValue(value, maxDepth, Budget.unlimited());
+    }
+
+    public static ObjectNode convertValue(Value value, int maxDepth, Budget budget) {
+        Deque<Pending> queue = new ArrayDeque<>();
+        ObjectNode result = shallow(value, 0, maxDepth, budget, queue);
+        expand(queue, maxDepth, budget);
+        return result;
     }
 
-    private static ObjectNode convertValueRecursive(Value value, int currentDepth, int maxDepth) {
+    /**
+     * Renders several named values into {@code target} breadth-first, so every value gets at least a
+     * summary before any of them is expanded. Values that do not fit the budget are left out.
+     */
+    public static void convertValues(ObjectNode target, Map<String, ? extends Value> values, int maxDepth, Budget budget) {
+        Deque<Pending> queue = new ArrayDeque<>();
+        for (Map.Entry<String, ? extends Value> entry : values.entrySet()) {
+            if (budget.isExhausted()) {
+                budget.truncatedNodes++;
+                continue;
+            }
+            budget.charge(entry.getKey().length() + 4);
+            target.set(entry.getKey(), shallow(entry.getValue(), 0, maxDepth, budget, queue));
+        }
+        expand(queue, maxDepth, budget);
+    }
+
+    /**
+     * Creates the node for a value without fetching its children. Objects and arrays that are still
+     * within {@code maxDepth} are queued for expansion.
+     */
+    private static ObjectNode shallow(Value value, int currentDepth, int maxDepth, Budget budget, Deque<Pending> queue) {
         ObjectNode result = mapper.createObjectNode();
         if (value == null) {
             result.put("type", "null");
             result.put("value", "null");
+            budget.charge(29);
             return result;
         }
 
@@ -27,44 +165,159 @@ public class JdiValueConverter {
         if (value instanceof PrimitiveValue) {
             result.put("value", value.toString());
         } else if (value instanceof StringReference) {
-            result.put("value", ((StringReference) value).value());
+            // The length first, so a huge string costs no more than its prefix
+            StringReference string = (StringReference) value;
+            long room = budget.remaining();
+            StringValues.Prefix prefix = StringValues.prefix(string, (int) Math.min(room, budget.maxStringLength));
+            result.put("value", prefix.text);
+            if (!prefix.isComplete()) {
+                result.put("length", prefix.length);
+                result.put("truncated", true);
+                result.put("handle", string.uniqueID());
+                budget.handles.put(string.uniqueID(), string);
+                if (prefix.length > room) budget.truncatedNodes++;
+            }
         } else if (value instanceof ArrayReference) {
             ArrayReference array = (ArrayReference) value;
             result.put("length", array.length());
             if (currentDepth < maxDepth) {
-                ArrayNode elements = result.putArray("elements");
-                int limit = Math.min(array.length(), 100); // Limit array elements for performance
-                for (int i = 0; i < limit; i++) {
-                    elements.add(convertValueRecursive(array.getValue(i), currentDepth + 1, maxDepth));
-                }
-                if (array.length() > 100) {
-                    result.put("note", "Truncated to first 100 elements");
-                }
+                queue.add(new Pending(array, result, currentDepth, budget));
             } else {
                 result.put("value", "[Array of length " + array.length() + "]");
             }
         } else if (value instanceof ObjectReference) {
             ObjectReference obj = (ObjectReference) value;
             result.put("id", obj.uniqueID());
+            budget.handles.put(obj.uniqueID(), obj);
+            String summary = budget.summaries != null && !budget.isExhausted() ? budget.summaries.summarize(obj) : null;
             if (currentDepth < maxDepth) {
+                if (summary != null) result.put("summary", summary);
+                queue.add(new Pending(obj, result, currentDepth, budget));
+            } else {
+                result.put("value", summary != null ? summary : "[Object " + obj.referenceType().name() + "]");
+            }
+        } else {
+            result.put("value", value.toString());
+        }
+
+        budget.charge(result.toString().length());
+        return result;
+    }
+
+    private static void expand(Deque<Pending> queue, int maxDepth, Budget budget) {
+        while (!queue.isEmpty()) {
+            Pending pending = queue.poll();
+            ObjectNode result = pending.node;
+            if (budget.isExhausted()) {
+                markTruncated(pending.ref, result, budget);
+                continue;
+            }
+            if (pending.ref instanceof ArrayReference) {
+                ArrayReference array = (ArrayReference) pending.ref;
+                ArrayNode elements = result.putArray("elements");
+                int offset = Math.min(pending.offset, array.length());
+                int limit = Math.min(array.length() - offset, pending.limit > 0 ? pending.limit : MAX_ARRAY_ELEMENTS); // Limit array elements for performance
+                List<Value> values = limit > 0 ? array.getValues(offset, limit) : Collections.<Value>emptyList();
+                int added = 0;
+                for (Value element : values) {
+                    if (budget.isExhausted()) break;
+                    elements.add(shallow(element, pending.depth + 1, maxDepth, budget, queue));
+                    added++;
+                }
+                if (offset > 0) result.put("offset", offset);
+                if (added < limit) {
+                    result.put("note", "Truncated to first " + added + " elements (output budget reached)");
+                    result.put("handle", array.uniqueID());
+                    budget.handles.put(array.uniqueID(), array);
+                    budget.truncatedNodes++;
+                } else if (offset + added < array.length()) {
+                    result.put("note", offset == 0
+                            ? "Truncated to first " + added + " elements"
+                            : "Elements " + offset + " to " + (offset + added - 1) + " of " + array.length());
+                    result.put("handle", array.uniqueID());
+                    budget.handles.put(array.uniqueID(), array);
+                }
+            } else if (!budget.rawFields && CollectionViews.supports(pending.ref.referenceType())
+                    && renderView(pending, maxDepth, budget, queue)) {
+                continue;
+            } else {
+                ObjectReference obj = pending.ref;
                 ObjectNode fields = result.putObject("fields");
                 ReferenceType type = obj.referenceType();
                 try {
-                    Map<Field, Value> fieldValues = obj.getValues(type.allFields());
+                    Map<Field, Value> fieldValues = Jdwp.getValues(obj, type.allFields());
+                    int omitted = 0;
                     for (Map.Entry<Field, Value> entry : fieldValues.entrySet()) {
-                        fields.set(entry.getKey().name(), convertValueRecursive(entry.getValue(), currentDepth + 1, maxDepth));
+                        if (budget.isExhausted()) {
+                            omitted++;
+                            continue;
+                        }
+                        budget.charge(entry.getKey().name().length() + 4);
+                        fields.set(entry.getKey().name(), shallow(entry.getValue(), pending.depth + 1, maxDepth, budget, queue));
+                    }
+                    if (omitted > 0) {
+                        result.put("truncated", true);
+                        result.put("omittedFields", omitted);
+                        budget.truncatedNodes++;
                     }
                 } catch (Exception e) {
                     result.put("error", "Failed to access fields: " + (e.getMessage() != null ? e.getMessage() : e.toString()));
                 }
-            } else {
-                result.put("value", "[Object " + obj.referenceType().name() + "]");
+            }
+        }
+    }
+
+    /**
+     * Renders a JDK collection as its size and a page of elements or key/value entries. Returns false
+     * when its internals could not be read, so it is rendered field by field instead.
+     */
+    private static boolean renderView(Pending pending, int maxDepth, Budget budget, Deque<Pending> queue) {
+        ObjectReference collection = pending.ref;
+        CollectionViews.View view = CollectionViews.read(collection, pending.offset, pending.limit > 0 ? pending.limit : MAX_COLLECTION_ELEMENTS);
+        if (view == null) return false;
+        ObjectNode result = pending.node;
+        result.put("size", view.size);
+        if (view.offset > 0) result.put("offset", view.offset);
+        int added = 0;
+        if (view.map) {
+            ArrayNode entries = result.putArray("entries");
+            for (Value[] entry : view.entries) {
+                if (budget.isExhausted()) break;
+                ObjectNode node = entries.addObject();
+                node.set("key", shallow(entry[0], pending.depth + 1, maxDepth, budget, queue));
+                node.set("value", shallow(entry[1], pending.depth + 1, maxDepth, budget, queue));
+                added++;
             }
         } else {
-            result.put("value", value.toString());
+            ArrayNode elements = result.putArray("elements");
+            for (Value element : view.elements) {
+                if (budget.isExhausted()) break;
+                elements.add(shallow(element, pending.depth + 1, maxDepth, budget, queue));
+                added++;
+            }
         }
+        if (added < view.count()) {
+            result.put("note", "Truncated to " + added + " " + (view.map ? "entries" : "elements") + " (output budget reached)");
+            result.put("handle", collection.uniqueID());
+            budget.handles.put(collection.uniqueID(), collection);
+            budget.truncatedNodes++;
+        } else if (view.offset + added < view.size) {
+            result.put("note", (view.map ? "Entries " : "Elements ") + view.offset + " to " + (view.offset + added - 1)
+                    + " of " + view.size + "; expand the handle with an offset for more");
+            result.put("handle", collection.uniqueID());
+            budget.handles.put(collection.uniqueID(), collection);
+        }
+        return true;
+    }
 
-        return result;
+    private static void markTruncated(ObjectReference ref, ObjectNode node, Budget budget) {
+        node.put("truncated", true);
+        node.put("handle", ref.uniqueID());
+        if (!(ref instanceof ArrayReference)) {
+            node.put("value", "[Object " + ref.referenceType().name() + "]");
+        }
+        budget.handles.put(ref.uniqueID(), ref);
+        budget.truncatedNodes++;
     }
 
     public static Value parseValue(VirtualMachine vm, String value, Type targetType) {
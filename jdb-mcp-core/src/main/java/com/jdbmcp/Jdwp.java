@@ -0,0 +1,64 @@
+package com.jdbmcp;
+
+import com.sun.jdi.Field;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.LocalVariable;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.Value;
+import com.sun.jdi.VirtualMachine;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timed wrappers around the JDI calls that cost a JDWP round-trip on hot paths.
+ * Latencies are recorded under {@link Metrics#JDWP}.
+ */
+public class Jdwp {
+
+    public static List<ThreadReference> allThreads(VirtualMachine vm) {
+        long start = Metrics.start();
+        try {
+            return vm.allThreads();
+        } finally {
+            Metrics.record(Metrics.JDWP, "allThreads", start);
+        }
+    }
+
+    public static List<StackFrame> frames(ThreadReference thread) throws IncompatibleThreadStateException {
+        long start = Metrics.start();
+        try {
+            return thread.frames();
+        } finally {
+            Metrics.record(Metrics.JDWP, "frames", start);
+        }
+    }
+
+    public static StackFrame frame(ThreadReference thread, int index) throws IncompatibleThreadStateException {
+        long start = Metrics.start();
+        try {
+            return thread.frame(index);
+        } finally {
+            Metrics.record(Metrics.JDWP, "frame", start);
+        }
+    }
+
+    public static Map<LocalVariable, Value> getValues(StackFrame frame, List<? extends LocalVariable> variables) {
+        long start = Metrics.start();
+        try {
+            return frame.getValues(variables);
+        } finally {
+            Metrics.record(Metrics.JDWP, "frame.getValues", start);
+        }
+    }
+
+    public static Map<Field, Value> getValues(ObjectReference object, List<? extends Field> fields) {
+        long start = Metrics.start();
+        try {
+            return object.getValues(fields);
+        } finally {
+            Metrics.record(Metrics.JDWP, "object.getValues", start);
+        }
+    }
+}
@@ -32,12 +32,15 @@ public class McpResponseFactory {
     }
 
     public static String createMcpToolResponse(JsonNode idNode, JsonNode result) {
+        long start = Metrics.start();
         ObjectNode responseNode = mapper.createObjectNode();
         ArrayNode content = responseNode.putArray("content");
         ObjectNode textContent = content.addObject();
         textContent.put("type", "text");
         textContent.put("text", result.isTextual() ? result.asText() : result.toString());
-        return createResponse(idNode, responseNode);
+        String response = createResponse(idNode, responseNode);
+        Metrics.record(Metrics.SERIALIZATION, "toolResponse", start);
+        return response;
     }
 
     public static String createMcpErrorResponse(JsonNode idNode, String message) {
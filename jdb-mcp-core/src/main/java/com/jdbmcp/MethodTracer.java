@@ -0,0 +1,279 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.jdi.Method;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.PrimitiveValue;
+import com.sun.jdi.StringReference;
+import com.sun.jdi.Value;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.event.MethodEntryEvent;
+import com.sun.jdi.event.MethodExitEvent;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+import com.sun.jdi.request.MethodEntryRequest;
+import com.sun.jdi.request.MethodExitRequest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Call counts and timings of the methods of classes matching a pattern, from SUSPEND_NONE method entry
+ * and exit requests. Entries and exits are paired on a per-thread stack; exits by exception are paired
+ * too, and exits without a recorded entry (calls in progress when tracing started) are skipped. Times
+ * are taken when the debugger receives the events, so they include JDWP transport jitter and are
+ * meaningful from tens of microseconds up. Every Nth return value of a method is sampled. All updates
+ * run on the event thread; reports are taken under the same lock.
+ */
+public class MethodTracer {
+    /** Request property marking the tracer's entry and exit requests. */
+    public static final String PROPERTY = "jdbmcp.methodTracer";
+    private static final int MAX_METHODS = 5000;
+    private static final int MAX_RETURN_SAMPLES = 5;
+    private static final int MAX_STACK_DEPTH = 1024;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static class MethodStats {
+        final Metrics.Timer timer;
+        long selfNanos;
+        long exits;
+        final Deque<String> returnSamples = new ArrayDeque<>();
+
+        MethodStats(String name) {
+            timer = new Metrics.Timer("method", name);
+        }
+    }
+
+    private static class Frame {
+        final Method method;
+        final long start;
+        long childNanos;
+
+        Frame(Method method, long start) {
+            this.method = method;
+            this.start = start;
+        }
+    }
+
+    private final List<EventRequest> requests = new ArrayList<>();
+    private final Map<Method, MethodStats> stats = new HashMap<>();
+    private final Map<Long, Deque<Frame>> stacks = new HashMap<>();
+    private String patterns;
+    private int sampleEvery;
+    private long events;
+    private long unpaired;
+    private long untracked;
+    private long since = System.currentTimeMillis();
+
+    /**
+     * Starts tracing, replacing an earlier trace of this session.
+     *
+     * @param classPatterns comma-separated class patterns, e.g. 'com.example.service.*'
+     * @param classExcludes comma-separated patterns of classes to leave out
+     * @param sampleEvery   sample every Nth return value of each method, 0 for none
+     */
+    public synchronized ObjectNode start(VirtualMachine vm, String classPatterns, String classExcludes, int sampleEvery) {
+        stop(vm);
+        reset();
+        EventRequestManager erm = vm.eventRequestManager();
+        MethodEntryRequest entry = erm.createMethodEntryRequest();
+        MethodExitRequest exit = erm.createMethodExitRequest();
+        for (String pattern : classPatterns.split(",")) {
+            if (pattern.trim().isEmpty()) continue;
+            entry.addClassFilter(pattern.trim());
+            exit.addClassFilter(pattern.trim());
+        }
+        if (classExcludes != null) {
+            for (String exclude : classExcludes.split(",")) {
+                if (exclude.trim().isEmpty()) continue;
+                entry.addClassExclusionFilter(exclude.trim());
+                exit.addClassExclusionFilter(exclude.trim());
+            }
+        }
+        requests.add(entry);
+        requests.add(exit);
+        for (EventRequest request : requests) {
+            request.putProperty(PROPERTY, this);
+            request.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            request.enable();
+        }
+        this.patterns = classPatterns;
+        this.sampleEvery = vm.canGetMethodReturnValues() ? sampleEvery : 0;
+
+        ObjectNode result = mapper.createObjectNode();
+        result.put("status", "tracing");
+        result.put("classPattern", classPatterns);
+        if (classExcludes != null) result.put("classExclude", classExcludes);
+        result.put("sampleReturnsEvery", this.sampleEvery);
+        if (sampleEvery > 0 && this.sampleEvery == 0) result.put("note", "Target VM cannot report return values");
+        return result;
+    }
+
+    /** Removes the trace requests; collected statistics are kept until reset or the next start. */
+    public synchronized void stop(VirtualMachine vm) {
+        if (vm != null && !requests.isEmpty()) {
+            try {
+                vm.eventRequestManager().deleteEventRequests(requests);
+            } catch (Exception e) {
+                System.err.println("Failed to delete trace requests: " + e.getMessage());
+            }
+        }
+        requests.clear();
+        stacks.clear();
+    }
+
+    /** Drops requests of a VM connection that is gone. */
+    public synchronized void forgetRequests() {
+        requests.clear();
+        stacks.clear();
+    }
+
+    public synchronized boolean isActive() {
+        return !requests.isEmpty();
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+        events = 0;
+        unpaired = 0;
+        untracked = 0;
+        since = System.currentTimeMillis();
+    }
+
+    public synchronized void entered(MethodEntryEvent event) {
+        events++;
+        long threadId = event.thread().uniqueID();
+        Deque<Frame> stack = stacks.get(threadId);
+        if (stack == null) {
+            stack = new ArrayDeque<>();
+            stacks.put(threadId, stack);
+        }
+        if (stack.size() >= MAX_STACK_DEPTH) {
+            // Deep recursion: drop the outermost frame so the stack stays bounded
+            stack.removeLast();
+        }
+        stack.push(new Frame(event.method(), System.nanoTime()));
+    }
+
+    public synchronized void exited(MethodExitEvent event) {
+        long now = System.nanoTime();
+        events++;
+        long threadId = event.thread().uniqueID();
+        Deque<Frame> stack = stacks.get(threadId);
+        Method method = event.method();
+        // Frames above the exiting method lost their exit events (e.g. a trace started mid-call)
+        Frame frame = null;
+        if (stack != null) {
+            for (Frame candidate : stack) {
+                if (candidate.method.equals(method)) {
+                    frame = candidate;
+                    break;
+                }
+            }
+        }
+        if (frame == null) {
+            unpaired++;
+            return;
+        }
+        while (stack.peek() != frame) {
+            stack.pop();
+        }
+        stack.pop();
+        long duration = now - frame.start;
+        if (stack.isEmpty()) {
+            stacks.remove(threadId);
+        } else {
+            stack.peek().childNanos += duration;
+        }
+
+        MethodStats methodStats = stats.get(method);
+        if (methodStats == null) {
+            if (stats.size() >= MAX_METHODS) {
+                untracked++;
+                return;
+            }
+            methodStats = new MethodStats(method.declaringType().name() + "." + method.name());
+            stats.put(method, methodStats);
+        }
+        methodStats.timer.record(duration);
+        methodStats.selfNanos += Math.max(0, duration - frame.childNanos);
+        methodStats.exits++;
+        if (sampleEvery > 0 && methodStats.exits % sampleEvery == 1 % sampleEvery && !"void".equals(method.returnTypeName())) {
+            if (methodStats.returnSamples.size() >= MAX_RETURN_SAMPLES) methodStats.returnSamples.removeFirst();
+            methodStats.returnSamples.addLast(render(event));
+        }
+    }
+
+    private static String render(MethodExitEvent event) {
+        try {
+            Value value = event.returnValue();
+            if (value == null) return "null";
+            if (value instanceof PrimitiveValue) return value.toString();
+            if (value instanceof StringReference) {
+                String text = ((StringReference) value).value();
+                return "\"" + (text.length() > 100 ? text.substring(0, 100) + "..." : text) + "\"";
+            }
+            ObjectReference object = (ObjectReference) value;
+            return object.referenceType().name() + " #" + object.uniqueID();
+        } catch (Exception e) {
+            return "<unavailable>";
+        }
+    }
+
+    /**
+     * Methods ranked by {@code sortBy}: 'total' (inclusive time, default), 'self' (time outside traced
+     * callees), 'calls' or 'max'.
+     */
+    public synchronized ObjectNode report(int limit, final String sortBy) {
+        List<MethodStats> ranked = new ArrayList<>(stats.values());
+        Collections.sort(ranked, new Comparator<MethodStats>() {
+            @Override
+            public int compare(MethodStats a, MethodStats b) {
+                return Long.compare(key(b), key(a));
+            }
+
+            private long key(MethodStats s) {
+                if ("self".equals(sortBy)) return s.selfNanos;
+                if ("calls".equals(sortBy)) return s.timer.count.get();
+                if ("max".equals(sortBy)) return s.timer.maxNanos.get();
+                return s.timer.totalNanos.get();
+            }
+        });
+        ObjectNode result = mapper.createObjectNode();
+        result.put("tracing", !requests.isEmpty());
+        if (patterns != null) result.put("classPattern", patterns);
+        result.put("sinceMs", System.currentTimeMillis() - since);
+        result.put("events", events);
+        result.put("methods", stats.size());
+        if (unpaired > 0) result.put("unpairedExits", unpaired);
+        if (untracked > 0) result.put("callsOfUntrackedMethods", untracked);
+        ArrayNode table = result.putArray("hotMethods");
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            MethodStats s = ranked.get(i);
+            long calls = s.timer.count.get();
+            ObjectNode row = table.addObject();
+            row.put("method", s.timer.name);
+            row.put("calls", calls);
+            row.put("totalMs", s.timer.totalNanos.get() / 1e6);
+            row.put("selfMs", s.selfNanos / 1e6);
+            row.put("meanUs", calls == 0 ? 0 : s.timer.totalNanos.get() / 1e3 / calls);
+            row.put("p50Us", s.timer.percentileNanos(0.5) / 1e3);
+            row.put("p99Us", s.timer.percentileNanos(0.99) / 1e3);
+            row.put("maxUs", s.timer.maxNanos.get() / 1e3);
+            if (!s.returnSamples.isEmpty()) {
+                ArrayNode samples = row.putArray("returnSamples");
+                for (String sample : s.returnSamples) samples.add(sample);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,181 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide latency metrics for MCP methods, tools, JDWP round-trips and event handling.
+ * Recording is lock-free; each timer keeps a log-linear histogram with ~12% bucket precision.
+ * Atomic counters are used instead of LongAdder so this class stays usable on Java 7.
+ */
+public class Metrics {
+    public static final String MCP_METHOD = "mcp_method";
+    public static final String TOOL = "tool";
+    public static final String JDWP = "jdwp";
+    public static final String EVENT_LOOP = "event_loop";
+    public static final String SERIALIZATION = "serialization";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public static void record(String kind, String name, long startNanos) {
+        timer(kind, name).record(System.nanoTime() - startNanos);
+    }
+
+    public static Timer timer(String kind, String name) {
+        String key = kind + ":" + name;
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            Timer created = new Timer(kind, name);
+            timer = timers.putIfAbsent(key, created);
+            if (timer == null) timer = created;
+        }
+        return timer;
+    }
+
+    public static void reset() {
+        timers.clear();
+    }
+
+    public static ObjectNode snapshot() {
+        ObjectNode result = mapper.createObjectNode();
+        for (Timer timer : sortedTimers()) {
+            ObjectNode kindNode = result.has(timer.kind) ? (ObjectNode) result.get(timer.kind) : result.putObject(timer.kind);
+            ObjectNode node = kindNode.putObject(timer.name);
+            long count = timer.count.get();
+            node.put("count", count);
+            node.put("totalMs", timer.totalNanos.get() / 1e6);
+            node.put("meanMs", count == 0 ? 0 : timer.totalNanos.get() / 1e6 / count);
+            node.put("maxMs", timer.maxNanos.get() / 1e6);
+            for (double q : QUANTILES) {
+                node.put("p" + formatQuantile(q), timer.percentileNanos(q) / 1e6);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Renders all timers in the Prometheus text exposition format (version 0.0.4) as summaries.
+     */
+    public static String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP jdbmcp_latency_seconds Latency of MCP methods, tool calls, JDWP round-trips and event handling.\n");
+        sb.append("# TYPE jdbmcp_latency_seconds summary\n");
+        for (Timer timer : sortedTimers()) {
+            String labels = "kind=\"" + timer.kind + "\",name=\"" + escape(timer.name) + "\"";
+            for (double q : QUANTILES) {
+                sb.append("jdbmcp_latency_seconds{").append(labels).append(",quantile=\"").append(q).append("\"} ")
+                  .append(seconds(timer.percentileNanos(q))).append('\n');
+            }
+            sb.append("jdbmcp_latency_seconds_sum{").append(labels).append("} ").append(seconds(timer.totalNanos.get())).append('\n');
+            sb.append("jdbmcp_latency_seconds_count{").append(labels).append("} ").append(timer.count.get()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static List<Timer> sortedTimers() {
+        List<String> keys = new ArrayList<>(timers.keySet());
+        Collections.sort(keys);
+        List<Timer> sorted = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Timer timer = timers.get(key);
+            if (timer != null) sorted.add(timer);
+        }
+        return sorted;
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static String formatQuantile(double q) {
+        String s = String.valueOf(q * 100);
+        return s.endsWith(".0") ? s.substring(0, s.length() - 2) : s.replace('.', '_');
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Latency recorder with a log-linear histogram over microseconds: values below 16us get exact
+     * buckets, larger values get 8 sub-buckets per power of two.
+     */
+    public static class Timer {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int LINEAR_LIMIT = 16;
+        private static final int BUCKETS = LINEAR_LIMIT + (63 - 4) * (1 << SUB_BUCKET_BITS);
+
+        final String kind;
+        final String name;
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        Timer(String kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+            buckets.incrementAndGet(bucketIndex(nanos / 1000));
+        }
+
+        long percentileNanos(double quantile) {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBoundMicros(i) * 1000, maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+
+        static int bucketIndex(long micros) {
+            if (micros < LINEAR_LIMIT) return (int) micros;
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1));
+            return Math.min(LINEAR_LIMIT + (exponent - 4) * (1 << SUB_BUCKET_BITS) + sub, BUCKETS - 1);
+        }
+
+        static long bucketUpperBoundMicros(int index) {
+            if (index < LINEAR_LIMIT) return index + 1;
+            int offset = index - LINEAR_LIMIT;
+            int exponent = offset / (1 << SUB_BUCKET_BITS) + 4;
+            int sub = offset % (1 << SUB_BUCKET_BITS);
+            long base = 1L << exponent;
+            return base + (sub + 1) * (base >>> SUB_BUCKET_BITS);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.jdi.ClassType;
+import com.sun.jdi.InvocationException;
+import com.sun.jdi.Method;
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.PrimitiveValue;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StringReference;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.Value;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One-line summaries of objects from their own toString() or a registered formatter method, for values
+ * whose raw fields say little (BigDecimal, LocalDateTime, UUID, ...). Off until enabled. Calls run with
+ * invokeMethod and INVOKE_SINGLE_THREADED on the thread being inspected, so no other thread moves, and
+ * each rendering pass has a time budget. A call that does not return in time (e.g. it blocks on a lock
+ * or hits a breakpoint) is abandoned and its class is not summarized again; until it returns its thread
+ * is reported busy in {@link VmState} and not invoked on again. Classes that only inherit
+ * Object.toString() are never invoked. Results are cached per object until target code may have run
+ * ({@link VmState#epoch()}).
+ */
+public class ObjectSummarizer {
+    private static final int MAX_CACHE = 10000;
+    private static final String TO_STRING_SIGNATURE = "()Ljava/lang/String;";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static class Cached {
+        final long epoch;
+        final String text;
+
+        Cached(long epoch, String text) {
+            this.epoch = epoch;
+            this.text = text;
+        }
+    }
+
+    /** One call; registered with the session state when its pass gives up on it before it returns. */
+    private class Call {
+        final ThreadReference thread;
+        final String method;
+        private boolean returned;
+        private boolean abandoned;
+
+        Call(ThreadReference thread, String method) {
+            this.thread = thread;
+            this.method = method;
+        }
+
+        synchronized void returned() {
+            returned = true;
+            if (abandoned) vmState.invocationReturned(thread);
+        }
+
+        synchronized void abandon() {
+            if (returned) return;
+            abandoned = true;
+            vmState.invocationAbandoned(thread, method);
+        }
+    }
+
+    private final VmState vmState;
+    private final ExecutorService invoker = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "jdbmcp-summary");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final Map<String, String> formatters = new LinkedHashMap<>();
+    private final Map<ReferenceType, Method> methods = new HashMap<>();
+    private final Set<String> abandoned = new HashSet<>();
+    private final Map<Long, Cached> cache = new HashMap<>();
+    private volatile boolean enabled;
+    private long budgetMs = 200;
+    private int maxLength = 200;
+    private long invocations;
+    private long cacheHits;
+    private long exceptions;
+    private long timeouts;
+
+    public ObjectSummarizer(VmState vmState) {
+        this.vmState = vmState;
+    }
+
+    /**
+     * Changes the settings; null leaves a setting as it is.
+     *
+     * @param formatterSpecs comma-separated 'className=method' pairs naming a no-argument method used
+     *                       instead of toString() for that class and its subclasses; an empty string
+     *                       removes all formatters
+     */
+    public synchronized void configure(Boolean enable, String formatterSpecs, Long budgetMs, Integer maxLength) throws Exception {
+        if (formatterSpecs != null) {
+            Map<String, String> parsed = new LinkedHashMap<>();
+            for (String spec : formatterSpecs.split(",")) {
+                if (spec.trim().isEmpty()) continue;
+                int eq = spec.indexOf('=');
+                if (eq <= 0 || eq == spec.length() - 1) throw new Exception("Invalid formatter '" + spec.trim() + "', expected className=method");
+                parsed.put(spec.substring(0, eq).trim(), spec.substring(eq + 1).trim());
+            }
+            formatters.clear();
+            formatters.putAll(parsed);
+            methods.clear();
+            cache.clear();
+        }
+        if (budgetMs != null) this.budgetMs = Math.max(1, budgetMs);
+        if (maxLength != null) {
+            this.maxLength = Math.max(10, maxLength);
+            cache.clear();
+        }
+        if (enable != null) enabled = enable;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Drops everything tied to a VM connection that is gone; settings are kept. */
+    public synchronized void clearCache() {
+        methods.clear();
+        abandoned.clear();
+        cache.clear();
+    }
+
+    /**
+     * Starts a rendering pass that invokes on {@code thread}, which must be suspended at an event.
+     * Returns null while summaries are off or the thread still runs an abandoned call.
+     */
+    public Pass pass(ThreadReference thread, long epoch) {
+        if (!enabled || thread == null || vmState.invocation(thread) != null) return null;
+        return new Pass(thread, epoch);
+    }
+
+    /** Summaries for one rendering pass, on one thread and within one time budget. */
+    public class Pass {
+        private final ThreadReference thread;
+        private final long epoch;
+        private final long deadline;
+        private boolean stopped;
+
+        Pass(ThreadReference thread, long epoch) {
+            this.thread = thread;
+            this.epoch = epoch;
+            synchronized (ObjectSummarizer.this) {
+                this.deadline = System.currentTimeMillis() + budgetMs;
+            }
+        }
+
+        /** The summary of an object, or null when it has none, or the pass can no longer invoke. */
+        public String summarize(ObjectReference object) {
+            synchronized (ObjectSummarizer.this) {
+                Cached cached = cache.get(object.uniqueID());
+                if (cached != null && cached.epoch == epoch) {
+                    cacheHits++;
+                    return cached.text;
+                }
+            }
+            if (stopped) return null;
+            final Method method;
+            final ReferenceType type;
+            try {
+                type = object.referenceType();
+                method = method(type);
+            } catch (ObjectCollectedException e) {
+                return null;
+            }
+            if (method == null) return null;
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                stopped = true;
+                return null;
+            }
+            final ObjectReference target = object;
+            final Call pending = new Call(thread, type.name() + "." + method.name() + "()");
+            Future<Value> call = invoker.submit(new Callable<Value>() {
+                @Override
+                public Value call() throws Exception {
+                    try {
+                        return target.invokeMethod(thread, method, Collections.<Value>emptyList(), ObjectReference.INVOKE_SINGLE_THREADED);
+                    } finally {
+                        pending.returned();
+                    }
+                }
+            });
+            String text;
+            try {
+                text = text(call.get(remaining, TimeUnit.MILLISECONDS), maxLength() + 1);
+            } catch (TimeoutException e) {
+                // The thread is still running the call; it cannot invoke again before that returns
+                stopped = true;
+                synchronized (ObjectSummarizer.this) {
+                    timeouts++;
+                    abandoned.add(type.name());
+                    methods.put(type, null);
+                }
+                pending.abandon();
+                return null;
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof InvocationException)) {
+                    // Typically IncompatibleThreadStateException: the thread is not suspended at an event
+                    stopped = true;
+                    return null;
+                }
+                synchronized (ObjectSummarizer.this) {
+                    exceptions++;
+                }
+                text = "<" + method.name() + "() threw " + ((InvocationException) e.getCause()).exception().referenceType().name() + ">";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+                return null;
+            } catch (ObjectCollectedException e) {
+                return null;
+            }
+            if (text.length() > maxLength()) text = text.substring(0, maxLength()) + "...";
+            synchronized (ObjectSummarizer.this) {
+                invocations++;
+                if (cache.size() >= MAX_CACHE) cache.clear();
+                cache.put(object.uniqueID(), new Cached(epoch, text));
+            }
+            return text;
+        }
+    }
+
+    private synchronized int maxLength() {
+        return maxLength;
+    }
+
+    /** The formatter or own toString() of a class, or null when it has neither. */
+    private synchronized Method method(ReferenceType type) {
+        if (methods.containsKey(type)) return methods.get(type);
+        Method method = null;
+        if (type instanceof ClassType && !abandoned.contains(type.name())) {
+            for (ClassType c = (ClassType) type; c != null && method == null; c = c.superclass()) {
+                String name = formatters.get(c.name());
+                if (name == null) continue;
+                for (Method candidate : c.methodsByName(name)) {
+                    if (!candidate.isStatic() && candidate.argumentTypeNames().isEmpty()) {
+                        method = candidate;
+                        break;
+                    }
+                }
+            }
+            if (method == null) {
+                Method toString = ((ClassType) type).concreteMethodByName("toString", TO_STRING_SIGNATURE);
+                if (toString != null && !"java.lang.Object".equals(toString.declaringType().name())) method = toString;
+            }
+        }
+        methods.put(type, method);
+        return method;
+    }
+
+    /** Only the first {@code maxChars} of a returned string are transferred. */
+    private static String text(Value value, int maxChars) {
+        if (value == null) return "null";
+        if (value instanceof StringReference) return StringValues.prefix((StringReference) value, maxChars).text;
+        if (value instanceof PrimitiveValue) return value.toString();
+        return "[Object " + value.type().name() + "]";
+    }
+
+    public synchronized ObjectNode toJson() {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("enabled", enabled);
+        ObjectNode formatterNode = node.putObject("formatters");
+        for (Map.Entry<String, String> entry : formatters.entrySet()) {
+            formatterNode.put(entry.getKey(), entry.getValue());
+        }
+        node.put("budgetMs", budgetMs);
+        node.put("maxLength", maxLength);
+        node.put("invocations", invocations);
+        node.put("cacheHits", cacheHits);
+        node.put("exceptions", exceptions);
+        node.put("timeouts", timeouts);
+        if (!abandoned.isEmpty()) {
+            ArrayNode classes = node.putArray("abandonedClasses");
+            for (String name : new java.util.TreeSet<>(abandoned)) classes.add(name);
+        }
+        ArrayNode running = vmState.invocationsJson();
+        if (running != null) node.set("runningInvocations", running);
+        return node;
+    }
+}
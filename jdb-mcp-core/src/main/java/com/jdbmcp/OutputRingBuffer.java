@@ -0,0 +1,73 @@
+package com.jdbmcp;
+
+/**
+ * Fixed-size byte ring buffer addressed by absolute offsets (total bytes written so far).
+ * Holds the most recent {@code capacity} bytes of a stream; older bytes are overwritten and
+ * reported as dropped to readers that ask for them.
+ */
+public class OutputRingBuffer {
+    private final byte[] buffer;
+    private long end;
+
+    public static class Chunk {
+        /** Absolute offset of the first returned byte. */
+        public final long offset;
+        public final byte[] data;
+        /** Bytes between the requested offset and {@link #offset} that were already overwritten. */
+        public final long dropped;
+        /** Bytes still available after this chunk. */
+        public final long remaining;
+
+        Chunk(long offset, byte[] data, long dropped, long remaining) {
+            this.offset = offset;
+            this.data = data;
+            this.dropped = dropped;
+            this.remaining = remaining;
+        }
+
+        public long nextOffset() {
+            return offset + data.length;
+        }
+    }
+
+    public OutputRingBuffer(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    public synchronized void write(byte[] data, int off, int len) {
+        int capacity = buffer.length;
+        long total = len;
+        if (len > capacity) {
+            off += len - capacity;
+            len = capacity;
+        }
+        int pos = (int) ((end + total - len) % capacity);
+        int first = Math.min(len, capacity - pos);
+        System.arraycopy(data, off, buffer, pos, first);
+        System.arraycopy(data, off + first, buffer, 0, len - first);
+        end += total;
+    }
+
+    /** Offset of the oldest byte still buffered. */
+    public synchronized long start() {
+        return Math.max(0, end - buffer.length);
+    }
+
+    /** Offset of the next byte to be written. */
+    public synchronized long end() {
+        return end;
+    }
+
+    /** Reads up to {@code maxBytes} starting at {@code from}, clamped to what is still buffered. */
+    public synchronized Chunk read(long from, int maxBytes) {
+        long start = Math.max(0, end - buffer.length);
+        long begin = Math.min(Math.max(from, start), end);
+        int len = (int) Math.min(end - begin, Math.max(0, maxBytes));
+        byte[] out = new byte[len];
+        int pos = (int) (begin % buffer.length);
+        int first = Math.min(len, buffer.length - pos);
+        System.arraycopy(buffer, pos, out, 0, first);
+        System.arraycopy(buffer, 0, out, first, len - first);
+        return new Chunk(begin, out, Math.max(0, begin - from), end - begin - len);
+    }
+}
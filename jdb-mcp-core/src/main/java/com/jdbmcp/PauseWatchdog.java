@@ -0,0 +1,162 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pause accounting and budget for one session. The event loop reports when an event leaves the target
+ * suspended and every resume path reports when it runs again, so the watchdog knows how long the target
+ * has been stopped. A pause longer than the budget fires the callback once (on the watchdog thread),
+ * which snapshots the stopped threads and resumes the VM. Total, longest and auto-resumed pauses are
+ * kept for the session.
+ */
+public class PauseWatchdog {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    /** Snapshots of auto-resumed pauses kept, oldest dropped first. */
+    private static final int MAX_SNAPSHOTS = 5;
+
+    private final Consumer<String> onBudgetExceeded;
+    private ScheduledExecutorService timer;
+    private ScheduledFuture<?> pending;
+    private long budgetMs;
+    private long pauseStart = -1;
+    private String pauseReason;
+    private long epoch;
+    private long pauses;
+    private long autoResumes;
+    private long totalPausedNanos;
+    private long longestPauseNanos;
+    private final Deque<ObjectNode> snapshots = new ArrayDeque<>();
+
+    /** @param onBudgetExceeded called with the pause reason when a pause outlives the budget */
+    public PauseWatchdog(Consumer<String> onBudgetExceeded) {
+        this.onBudgetExceeded = onBudgetExceeded;
+    }
+
+    /** Sets the maximum pause in milliseconds, 0 to turn the watchdog off. Applies to a pause in progress. */
+    public synchronized void setBudget(long budgetMs) {
+        this.budgetMs = Math.max(0, budgetMs);
+        schedule();
+    }
+
+    public synchronized long getBudget() {
+        return budgetMs;
+    }
+
+    /** The target stopped at an event; a pause already in progress keeps its start time. */
+    public synchronized void paused(String reason) {
+        if (pauseStart >= 0) return;
+        pauseStart = System.nanoTime();
+        pauseReason = reason;
+        pauses++;
+        schedule();
+    }
+
+    /** The target runs again (resume, step, auto-resume or disconnect). */
+    public synchronized void resumed() {
+        if (pauseStart < 0) return;
+        long paused = System.nanoTime() - pauseStart;
+        totalPausedNanos += paused;
+        longestPauseNanos = Math.max(longestPauseNanos, paused);
+        pauseStart = -1;
+        pauseReason = null;
+        epoch++;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    private void schedule() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        if (budgetMs <= 0 || pauseStart < 0) return;
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "jdb-mcp-pause-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        final long scheduledEpoch = epoch;
+        long remainingMs = budgetMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pauseStart);
+        pending = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                expire(scheduledEpoch);
+            }
+        }, Math.max(0, remainingMs), TimeUnit.MILLISECONDS);
+    }
+
+    private void expire(long scheduledEpoch) {
+        String reason;
+        synchronized (this) {
+            // A resume between scheduling and firing ended this pause
+            if (scheduledEpoch != epoch || pauseStart < 0) return;
+            reason = pauseReason;
+            autoResumes++;
+        }
+        try {
+            onBudgetExceeded.accept(reason);
+        } catch (Exception e) {
+            System.err.println("Pause watchdog failed to resume the VM: " + e.getMessage());
+        }
+    }
+
+    /** Keeps the thread state captured before an auto-resume. */
+    public synchronized void addSnapshot(ObjectNode snapshot) {
+        if (snapshots.size() >= MAX_SNAPSHOTS) snapshots.removeFirst();
+        snapshots.addLast(snapshot);
+    }
+
+    /** Milliseconds the current pause has lasted, or -1 when the target runs. */
+    public synchronized long currentPauseMs() {
+        return pauseStart < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pauseStart);
+    }
+
+    public synchronized ObjectNode toJson(boolean includeSnapshots) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("maxPauseMs", budgetMs);
+        node.put("paused", pauseStart >= 0);
+        long current = pauseStart < 0 ? 0 : System.nanoTime() - pauseStart;
+        if (pauseStart >= 0) {
+            node.put("currentPauseMs", TimeUnit.NANOSECONDS.toMillis(current));
+            node.put("pausedAt", pauseReason);
+        }
+        node.put("pauses", pauses);
+        node.put("totalPausedMs", TimeUnit.NANOSECONDS.toMillis(totalPausedNanos + current));
+        node.put("longestPauseMs", TimeUnit.NANOSECONDS.toMillis(Math.max(longestPauseNanos, current)));
+        node.put("autoResumes", autoResumes);
+        if (includeSnapshots) {
+            ArrayNode array = node.putArray("snapshots");
+            for (ObjectNode snapshot : snapshots) {
+                array.add(snapshot);
+            }
+        } else {
+            node.put("snapshots", snapshots.size());
+        }
+        return node;
+    }
+
+    public synchronized void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+        pending = null;
+    }
+}
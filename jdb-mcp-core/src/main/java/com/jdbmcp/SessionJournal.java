@@ -0,0 +1,167 @@
+package com.jdbmcp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only on-disk journal of event request mutations for one target (host:port or main class), so
+ * breakpoints, watchpoints and method entry/exit requests survive a detach or a target restart.
+ * Each mutation is one line, '+' or '-' followed by the entry; loading folds the lines into the live
+ * set and rewrites the file when it has grown well beyond it. Breakpoints carry their hit limits, so a
+ * breakpoint limited to protect a production target is not restored as an unlimited one.
+ */
+public class SessionJournal {
+    public static final String LINE = "line";
+    public static final String METHOD = "method";
+    public static final String ACCESS = "access";
+    public static final String MODIFICATION = "modification";
+    public static final String ENTRY = "entry";
+    public static final String EXIT = "exit";
+
+    /**
+     * One journaled request: kind, class name, member (line number, method or field name, or '*') and
+     * for breakpoints the {@link HitLimiter#toSpec() hit limits}, or null without limits.
+     */
+    public static class Entry {
+        public final String kind;
+        public final String className;
+        public final String member;
+        public final String limits;
+
+        public Entry(String kind, String className, String member) {
+            this(kind, className, member, null);
+        }
+
+        public Entry(String kind, String className, String member, String limits) {
+            this.kind = kind;
+            this.className = className;
+            this.member = member == null || member.isEmpty() ? "*" : member;
+            this.limits = limits;
+        }
+
+        static Entry parse(String text) {
+            String[] parts = text.split(" ");
+            if (parts.length == 3) return new Entry(parts[0], parts[1], parts[2]);
+            return parts.length == 4 ? new Entry(parts[0], parts[1], parts[2], parts[3]) : null;
+        }
+
+        /** Same request, whatever its limits. */
+        boolean isSameRequest(Entry other) {
+            return kind.equals(other.kind) && className.equals(other.className) && member.equals(other.member);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) return false;
+            Entry other = (Entry) o;
+            return isSameRequest(other) && (limits == null ? other.limits == null : limits.equals(other.limits));
+        }
+
+        @Override
+        public int hashCode() {
+            return ((kind.hashCode() * 31 + className.hashCode()) * 31 + member.hashCode()) * 31
+                    + (limits == null ? 0 : limits.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + className + " " + member + (limits != null ? " " + limits : "");
+        }
+    }
+
+    private final File file;
+    private final Set<Entry> entries = new LinkedHashSet<>();
+
+    private SessionJournal(File file) {
+        this.file = file;
+    }
+
+    /** A journal that is only kept in memory, e.g. to reinstall requests after a reconnect with journaling off. */
+    public static SessionJournal inMemory() {
+        return new SessionJournal(null);
+    }
+
+    /**
+     * Opens the journal of a target in {@code directory}, creating it on the first mutation.
+     * With {@code restore} false, previously journaled state is discarded.
+     */
+    public static SessionJournal open(File directory, String targetKey, boolean restore) throws IOException {
+        SessionJournal journal = new SessionJournal(new File(directory, targetKey.replaceAll("[^A-Za-z0-9._-]", "_") + ".journal"));
+        if (!journal.file.exists()) return journal;
+        if (!restore) {
+            Files.delete(journal.file.toPath());
+            return journal;
+        }
+        List<String> lines = Files.readAllLines(journal.file.toPath(), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            Entry entry = line.length() > 1 ? Entry.parse(line.substring(1)) : null;
+            if (entry == null) continue;
+            if (line.charAt(0) == '+') {
+                journal.entries.add(entry);
+            } else {
+                journal.entries.remove(entry);
+            }
+        }
+        if (lines.size() > 2 * journal.entries.size() + 64) {
+            journal.compact();
+        }
+        return journal;
+    }
+
+    /** The journal file, or null for an in-memory journal. */
+    public File getFile() {
+        return file;
+    }
+
+    /** Live entries in the order they were first added. */
+    public synchronized List<Entry> entries() {
+        return new ArrayList<>(entries);
+    }
+
+    /**
+     * Journals an added request; a no-op when it is already live (e.g. while replaying). An entry for the
+     * same request with other limits is removed first.
+     */
+    public synchronized void add(Entry entry) {
+        if (entries.contains(entry)) return;
+        for (Entry live : new ArrayList<>(entries)) {
+            if (live.isSameRequest(entry)) remove(live);
+        }
+        entries.add(entry);
+        append('+', entry);
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry)) append('-', entry);
+    }
+
+    private void append(char op, Entry entry) {
+        if (file == null) return;
+        try {
+            file.getParentFile().mkdirs();
+            try (OutputStream out = new FileOutputStream(file, true)) {
+                out.write((op + entry.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write session journal " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void compact() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (Entry entry : entries) {
+            text.append('+').append(entry).append('\n');
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.write(tmp.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), file.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    }
+}
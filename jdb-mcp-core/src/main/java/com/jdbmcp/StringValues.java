@@ -0,0 +1,163 @@
+package com.jdbmcp;
+
+import com.sun.jdi.ArrayReference;
+import com.sun.jdi.ByteValue;
+import com.sun.jdi.CharValue;
+import com.sun.jdi.Field;
+import com.sun.jdi.IntegerValue;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StringReference;
+import com.sun.jdi.Value;
+import com.sun.jdi.VirtualMachine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Reads target strings through their backing array instead of StringReference.value(), which always
+ * transfers the whole string: the length costs a field read and an array length, and any slice only
+ * its own characters. Handles the JDK 9+ layout (byte[] plus LATIN1/UTF16 coder) and the JDK 8 one
+ * (a char[] of exactly the string). Strings whose internals are laid out differently are read with value().
+ */
+public class StringValues {
+    /** StringUTF16.HI_BYTE_SHIFT per target VM: the shift of the first byte of a UTF16 char. */
+    private static final Map<VirtualMachine, Integer> hiByteShifts = new WeakHashMap<>();
+
+    /** A string's backing array and how to decode it. */
+    private static class Backing {
+        final ArrayReference array;
+        /** 0 for LATIN1 bytes, 1 for UTF16 bytes, -1 for a char[] */
+        final int coder;
+        final int length;
+
+        Backing(ArrayReference array, int coder) {
+            this.array = array;
+            this.coder = coder;
+            this.length = coder == 1 ? array.length() >> 1 : array.length();
+        }
+    }
+
+    /** The length of a string and its first chars. */
+    public static class Prefix {
+        public final int length;
+        public final String text;
+
+        Prefix(int length, String text) {
+            this.length = length;
+            this.text = text;
+        }
+
+        public boolean isComplete() {
+            return text.length() == length;
+        }
+    }
+
+    /** Number of chars of a string without transferring it. */
+    public static int length(StringReference string) {
+        Backing backing = backing(string);
+        return backing != null ? backing.length : string.value().length();
+    }
+
+    /** The length and at most {@code maxChars} leading chars, in three round-trips whatever the length. */
+    public static Prefix prefix(StringReference string, int maxChars) {
+        Backing backing = backing(string);
+        if (backing == null) {
+            String value = string.value();
+            return new Prefix(value.length(), value.length() > maxChars ? value.substring(0, Math.max(0, maxChars)) : value);
+        }
+        return new Prefix(backing.length, read(string, backing, 0, maxChars));
+    }
+
+    /** Up to {@code count} chars from {@code offset}, transferring only those. */
+    public static String substring(StringReference string, int offset, int count) {
+        Backing backing = backing(string);
+        if (backing == null) {
+            String value = string.value();
+            int start = Math.min(Math.max(0, offset), value.length());
+            return value.substring(start, start + Math.max(0, Math.min(count, value.length() - start)));
+        }
+        return read(string, backing, offset, count);
+    }
+
+    /**
+     * Writes the whole string to a local file as UTF-8; returns the number of chars written. The whole
+     * value is needed here, and value() transfers it as one JDWP string, about ten times faster than
+     * reading the array as mirrored values.
+     */
+    public static long dump(StringReference string, File file) throws IOException {
+        String value = string.value();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(value);
+        }
+        return value.length();
+    }
+
+    private static String read(StringReference string, Backing backing, int offset, int count) {
+        int start = Math.min(Math.max(0, offset), backing.length);
+        int chars = Math.max(0, Math.min(count, backing.length - start));
+        if (chars == 0) return "";
+        StringBuilder text = new StringBuilder(chars);
+        if (backing.coder == 1) {
+            int hiShift = hiByteShift(string.virtualMachine());
+            List<Value> bytes = backing.array.getValues(start * 2, chars * 2);
+            for (int i = 0; i < bytes.size(); i += 2) {
+                int first = ((ByteValue) bytes.get(i)).value() & 0xff;
+                int second = ((ByteValue) bytes.get(i + 1)).value() & 0xff;
+                text.append((char) ((first << hiShift) | (second << (8 - hiShift))));
+            }
+        } else {
+            for (Value value : backing.array.getValues(start, chars)) {
+                text.append(backing.coder == 0 ? (char) (((ByteValue) value).value() & 0xff) : ((CharValue) value).value());
+            }
+        }
+        return text.toString();
+    }
+
+    private static Backing backing(StringReference string) {
+        ReferenceType type = string.referenceType();
+        Field value = type.fieldByName("value");
+        if (value == null) return null;
+        // JDK 6 and early 7 strings share their char[] at an offset/count; read those with value()
+        if (type.fieldByName("offset") != null || type.fieldByName("count") != null) return null;
+        Field coder = type.fieldByName("coder");
+        List<Field> fields = new ArrayList<>();
+        fields.add(value);
+        if (coder != null) fields.add(coder);
+        Map<Field, Value> values = Jdwp.getValues(string, fields);
+        if (!(values.get(value) instanceof ArrayReference)) return null;
+        ArrayReference array = (ArrayReference) values.get(value);
+        if (coder == null) {
+            return array.type().name().equals("char[]") ? new Backing(array, -1) : null;
+        }
+        Value coderValue = values.get(coder);
+        if (!(coderValue instanceof ByteValue)) return null;
+        return new Backing(array, ((ByteValue) coderValue).value() == 0 ? 0 : 1);
+    }
+
+    private static int hiByteShift(VirtualMachine vm) {
+        synchronized (hiByteShifts) {
+            Integer shift = hiByteShifts.get(vm);
+            if (shift == null) {
+                // Little-endian platforms, i.e. nearly all of them, use 0
+                shift = 0;
+                for (ReferenceType type : vm.classesByName("java.lang.StringUTF16")) {
+                    Field field = type.fieldByName("HI_BYTE_SHIFT");
+                    if (field != null) {
+                        Value value = type.getValue(field);
+                        if (value instanceof IntegerValue) shift = ((IntegerValue) value).value();
+                    }
+                }
+                hiByteShifts.put(vm, shift);
+            }
+            return shift;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.Method;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.event.BreakpointEvent;
+import com.sun.jdi.request.BreakpointRequest;
+import com.sun.jdi.request.EventRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Thread creation and termination statistics, fed by the {@link ThreadRegistry}'s thread start and death
+ * events and grouped by thread name: by the first matching user pattern, else by the name with digit
+ * runs replaced by '#' (so 'pool-3-thread-17' counts as 'pool-#-thread-#'). Lifetimes are measured
+ * between the two events, for threads started while monitoring. Creating stacks are sampled with a
+ * breakpoint on Thread.start() that suspends only the creating thread; after {@code samplesPerSecond}
+ * samples it is disabled until the next second, so the creators pay for a few round-trips per second at
+ * most. Updates run on the event thread; reports are taken under the same lock.
+ */
+public class ThreadChurnMonitor {
+    /** Request property marking the Thread.start() sampling breakpoint. */
+    public static final String PROPERTY = "jdbmcp.threadChurn";
+    private static final int MAX_GROUPS = 500;
+    private static final int MAX_STACKS_PER_GROUP = 5;
+    private static final int STACK_DEPTH = 12;
+    private static final int RATE_SECONDS = 10;
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static class Group {
+        final Metrics.Timer lifetimes;
+        long started;
+        long ended;
+        long samples;
+        final Map<String, long[]> stacks = new LinkedHashMap<>();
+
+        Group(String name) {
+            lifetimes = new Metrics.Timer("thread", name);
+        }
+    }
+
+    private static class Live {
+        final Group group;
+        final long start;
+
+        Live(Group group, long start) {
+            this.group = group;
+            this.start = start;
+        }
+    }
+
+    private final Map<String, Group> groups = new HashMap<>();
+    private final Map<Long, Live> live = new HashMap<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final List<String> patternNames = new ArrayList<>();
+    private final long[] rateCounts = new long[RATE_SECONDS + 1];
+    private final long[] rateSeconds = new long[RATE_SECONDS + 1];
+    private BreakpointRequest sampler;
+    private int samplesPerSecond;
+    private long windowStart;
+    private int windowSamples;
+    private boolean active;
+    private long started;
+    private long ended;
+    private long since = System.currentTimeMillis();
+
+    /**
+     * Starts monitoring, replacing an earlier run of this session.
+     *
+     * @param groupPatterns    comma-separated name globs ('*' and '?') to group threads by, or null
+     * @param samplesPerSecond creating stacks to sample per second, 0 for none
+     */
+    public synchronized ObjectNode start(VirtualMachine vm, String groupPatterns, int samplesPerSecond) {
+        stop(vm);
+        reset();
+        patterns.clear();
+        patternNames.clear();
+        if (groupPatterns != null) {
+            for (String glob : groupPatterns.split(",")) {
+                if (glob.trim().isEmpty()) continue;
+                patternNames.add(glob.trim());
+                patterns.add(globPattern(glob.trim()));
+            }
+        }
+        this.samplesPerSecond = samplesPerSecond;
+        ObjectNode result = mapper.createObjectNode();
+        if (samplesPerSecond > 0) {
+            Method threadStart = threadStart(vm);
+            if (threadStart != null && threadStart.location() != null) {
+                sampler = vm.eventRequestManager().createBreakpointRequest(threadStart.location());
+                sampler.putProperty(PROPERTY, this);
+                sampler.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+                sampler.enable();
+            } else {
+                result.put("note", "java.lang.Thread.start() has no location; creating stacks are not sampled");
+            }
+        }
+        active = true;
+        result.put("status", "monitoring");
+        if (groupPatterns != null) result.put("groups", groupPatterns);
+        result.put("stackSamplesPerSecond", sampler != null ? samplesPerSecond : 0);
+        return result;
+    }
+
+    /** Regex of a name glob: '*' and '?' are wildcards, everything else is literal ('$', '[', '+', ...). */
+    private static Pattern globPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c != '*' && c != '?') {
+                literal.append(c);
+                continue;
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+            regex.append(c == '*' ? ".*" : ".");
+        }
+        if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+        return Pattern.compile(regex.toString());
+    }
+
+    private static Method threadStart(VirtualMachine vm) {
+        for (ReferenceType type : vm.classesByName("java.lang.Thread")) {
+            for (Method method : type.methodsByName("start", "()V")) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /** Removes the sampling breakpoint and stops counting; statistics are kept until reset or the next start. */
+    public synchronized void stop(VirtualMachine vm) {
+        if (vm != null && sampler != null) {
+            try {
+                vm.eventRequestManager().deleteEventRequest(sampler);
+            } catch (Exception e) {
+                System.err.println("Failed to delete thread start sampler: " + e.getMessage());
+            }
+        }
+        forgetRequests();
+    }
+
+    /** Drops requests of a VM connection that is gone. */
+    public synchronized void forgetRequests() {
+        sampler = null;
+        active = false;
+        live.clear();
+    }
+
+    public synchronized boolean isActive() {
+        return active;
+    }
+
+    public synchronized void reset() {
+        groups.clear();
+        live.clear();
+        Arrays.fill(rateCounts, 0);
+        Arrays.fill(rateSeconds, 0);
+        started = 0;
+        ended = 0;
+        since = System.currentTimeMillis();
+    }
+
+    public synchronized void started(ThreadReference thread, String name) {
+        if (!active) return;
+        long now = System.currentTimeMillis();
+        started++;
+        long second = now / 1000;
+        int slot = (int) (second % rateCounts.length);
+        if (rateSeconds[slot] != second) {
+            rateSeconds[slot] = second;
+            rateCounts[slot] = 0;
+        }
+        rateCounts[slot]++;
+        Group group = group(name);
+        if (group != null) {
+            group.started++;
+            live.put(thread.uniqueID(), new Live(group, System.nanoTime()));
+        }
+        // The sampler is re-armed by the start events it samples, once a new second has begun
+        if (sampler != null && !sampler.isEnabled() && now - windowStart >= 1000) {
+            windowStart = now;
+            windowSamples = 0;
+            sampler.enable();
+        }
+    }
+
+    public synchronized void ended(ThreadReference thread, String name) {
+        if (!active) return;
+        ended++;
+        Live entry = live.remove(thread.uniqueID());
+        Group group = entry != null ? entry.group : name != null ? group(name) : null;
+        if (group == null) return;
+        group.ended++;
+        if (entry != null) group.lifetimes.record(System.nanoTime() - entry.start);
+    }
+
+    /** Records the stack of a thread calling Thread.start(); the event's set is resumed by the caller. */
+    public synchronized void sample(BreakpointEvent event) throws IncompatibleThreadStateException {
+        if (!active || sampler == null) return;
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= 1000) {
+            windowStart = now;
+            windowSamples = 0;
+        }
+        if (++windowSamples >= samplesPerSecond) sampler.disable();
+        ThreadReference creator = event.thread();
+        List<StackFrame> frames = Jdwp.frames(creator);
+        if (frames.isEmpty()) return;
+        ObjectReference target = frames.get(0).thisObject();
+        if (!(target instanceof ThreadReference)) return;
+        Group group = group(JdiStateMapper.threadName((ThreadReference) target));
+        if (group == null) return;
+        group.samples++;
+        StringBuilder stack = new StringBuilder(DIGITS.matcher(JdiStateMapper.threadName(creator)).replaceAll("#"));
+        for (int i = 1; i < frames.size() && i <= STACK_DEPTH; i++) {
+            stack.append('\n').append(ExceptionTelemetry.format(frames.get(i).location()));
+        }
+        String key = stack.toString();
+        long[] count = group.stacks.get(key);
+        if (count == null) {
+            if (group.stacks.size() >= MAX_STACKS_PER_GROUP) return;
+            group.stacks.put(key, count = new long[1]);
+        }
+        count[0]++;
+    }
+
+    private Group group(String name) {
+        String key = null;
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(name).matches()) {
+                key = patternNames.get(i);
+                break;
+            }
+        }
+        if (key == null) key = DIGITS.matcher(name).replaceAll("#");
+        Group group = groups.get(key);
+        if (group == null) {
+            if (groups.size() >= MAX_GROUPS) return null;
+            group = new Group(key);
+            groups.put(key, group);
+        }
+        return group;
+    }
+
+    /** Groups ranked by threads started, with rates, lifetimes and sampled creating stacks. */
+    public synchronized ObjectNode report(int limit) {
+        ObjectNode result = mapper.createObjectNode();
+        double seconds = Math.max(1, System.currentTimeMillis() - since) / 1000.0;
+        result.put("monitoring", active);
+        result.put("sinceMs", System.currentTimeMillis() - since);
+        result.put("started", started);
+        result.put("ended", ended);
+        result.put("startsPerSecond", started / seconds);
+        long current = System.currentTimeMillis() / 1000;
+        long recent = 0;
+        for (int i = 0; i < rateCounts.length; i++) {
+            // The current second is still filling up, so the window is the RATE_SECONDS before it
+            if (rateSeconds[i] < current && rateSeconds[i] >= current - RATE_SECONDS) recent += rateCounts[i];
+        }
+        long window = Math.max(1, Math.min(RATE_SECONDS, current - since / 1000));
+        result.put("recentStartsPerSecond", recent / (double) window);
+
+        List<Map.Entry<String, Group>> ranked = new ArrayList<>(groups.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<String, Group>>() {
+            @Override
+            public int compare(Map.Entry<String, Group> a, Map.Entry<String, Group> b) {
+                return Long.compare(b.getValue().started, a.getValue().started);
+            }
+        });
+        Map<Group, Integer> alive = new HashMap<>();
+        for (Live entry : live.values()) {
+            Integer count = alive.get(entry.group);
+            alive.put(entry.group, count == null ? 1 : count + 1);
+        }
+        ArrayNode table = result.putArray("groups");
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            Group group = ranked.get(i).getValue();
+            Metrics.Timer lifetimes = group.lifetimes;
+            ObjectNode row = table.addObject();
+            row.put("group", ranked.get(i).getKey());
+            row.put("started", group.started);
+            row.put("ended", group.ended);
+            row.put("alive", alive.containsKey(group) ? alive.get(group) : 0);
+            row.put("startsPerSecond", group.started / seconds);
+            long count = lifetimes.count.get();
+            if (count > 0) {
+                row.put("meanLifetimeMs", lifetimes.totalNanos.get() / 1e6 / count);
+                row.put("p50LifetimeMs", lifetimes.percentileNanos(0.5) / 1e6);
+                row.put("p99LifetimeMs", lifetimes.percentileNanos(0.99) / 1e6);
+                row.put("maxLifetimeMs", lifetimes.maxNanos.get() / 1e6);
+            }
+            if (!group.stacks.isEmpty()) {
+                row.put("stackSamples", group.samples);
+                ArrayNode creators = row.putArray("creators");
+                for (Map.Entry<String, long[]> stack : group.stacks.entrySet()) {
+                    String[] lines = stack.getKey().split("\n");
+                    ObjectNode creator = creators.addObject();
+                    creator.put("count", stack.getValue()[0]);
+                    creator.put("thread", lines[0]);
+                    ArrayNode frames = creator.putArray("stack");
+                    for (int j = 1; j < lines.length; j++) frames.add(lines[j]);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+package com.jdbmcp;
+
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+import com.sun.jdi.request.ThreadDeathRequest;
+import com.sun.jdi.request.ThreadStartRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Live platform threads of the target, kept current by SUSPEND_NONE thread start and death requests
+ * created on connect and seeded once from allThreads(). Lookups by name go through a name cache that is
+ * verified against the thread (one JDWP round-trip) and rebuilt by a scan of the known threads when a
+ * thread was renamed, so tools no longer list all threads of the VM to find one. Virtual threads are
+ * left out (platform-threads-only filter on JDI 21+), like allThreads() does.
+ */
+public class ThreadRegistry {
+    /** Request property marking the registry's thread start and death requests. */
+    public static final String PROPERTY = "jdbmcp.threadRegistry";
+
+    private final ConcurrentMap<Long, ThreadReference> threads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ThreadReference> byName = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, String> names = new ConcurrentHashMap<>();
+    private final List<EventRequest> requests = new ArrayList<>();
+    private volatile boolean live;
+
+    /** Creates the thread requests and seeds the registry with the threads running now. */
+    public synchronized void start(VirtualMachine vm) {
+        forgetRequests();
+        EventRequestManager erm = vm.eventRequestManager();
+        ThreadStartRequest start = erm.createThreadStartRequest();
+        ThreadDeathRequest death = erm.createThreadDeathRequest();
+        requests.add(start);
+        requests.add(death);
+        for (EventRequest request : requests) {
+            platformThreadsOnly(request);
+            request.putProperty(PROPERTY, this);
+            request.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            request.enable();
+        }
+        for (ThreadReference thread : Jdwp.allThreads(vm)) {
+            started(thread);
+        }
+        live = true;
+    }
+
+    /** addPlatformThreadsOnlyFilter only exists in JDI 21+; older VMs have no virtual threads to filter. */
+    private static void platformThreadsOnly(EventRequest request) {
+        try {
+            request.getClass().getMethod("addPlatformThreadsOnlyFilter").invoke(request);
+        } catch (Exception e) {
+            // Pre-21 JDI
+        }
+    }
+
+    /** Drops everything tied to a VM connection that is gone. */
+    public synchronized void forgetRequests() {
+        requests.clear();
+        threads.clear();
+        byName.clear();
+        names.clear();
+        live = false;
+    }
+
+    /** True while the registry follows the connected VM. */
+    public boolean isLive() {
+        return live;
+    }
+
+    /** Adds a started thread; returns its name. */
+    public String started(ThreadReference thread) {
+        threads.put(thread.uniqueID(), thread);
+        String name = nameOf(thread);
+        if (name == null) return "#" + thread.uniqueID();
+        byName.put(name, thread);
+        names.put(thread.uniqueID(), name);
+        return name;
+    }
+
+    /** Removes a thread that died; returns its last known name, or null when it was not registered. */
+    public String died(ThreadReference thread) {
+        threads.remove(thread.uniqueID());
+        String name = names.remove(thread.uniqueID());
+        if (name != null) byName.remove(name, thread);
+        return name;
+    }
+
+    /** Live threads in no particular order. */
+    public List<ThreadReference> threads() {
+        return new ArrayList<>(threads.values());
+    }
+
+    public int size() {
+        return threads.size();
+    }
+
+    /** Finds a live thread by name or '#uniqueID'; null when no thread matches. */
+    public ThreadReference find(String name) {
+        if (name.startsWith("#")) {
+            try {
+                ThreadReference thread = threads.get(Long.parseLong(name.substring(1)));
+                if (thread != null) return thread;
+            } catch (NumberFormatException e) {
+                // A thread literally named '#...'
+            }
+        }
+        ThreadReference cached = byName.get(name);
+        if (cached != null && threads.containsKey(cached.uniqueID()) && name.equals(nameOf(cached))) {
+            return cached;
+        }
+        // Renamed since it was cached: refresh the names of all known threads
+        byName.remove(name);
+        ThreadReference found = null;
+        for (ThreadReference thread : threads.values()) {
+            String current = nameOf(thread);
+            if (current == null) continue;
+            byName.put(current, thread);
+            names.put(thread.uniqueID(), current);
+            if (found == null && current.equals(name)) found = thread;
+        }
+        return found;
+    }
+
+    private static String nameOf(ThreadReference thread) {
+        try {
+            return JdiStateMapper.threadName(thread);
+        } catch (ObjectCollectedException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.jdbmcp;
+
+import com.sun.jdi.Field;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.Value;
+
+/**
+ * Virtual thread support for JDK 21+ targets.
+ * {@code ThreadReference.isVirtual()} only exists in JDI 21+, so it is looked up reflectively; on older
+ * JDI the thread's class name is used instead. Both cost at most one JDWP round-trip per thread.
+ */
+public class VirtualThreads {
+    private static final java.lang.reflect.Method IS_VIRTUAL = lookupIsVirtual();
+
+    private static java.lang.reflect.Method lookupIsVirtual() {
+        try {
+            return ThreadReference.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean isVirtual(ThreadReference thread) {
+        try {
+            if (IS_VIRTUAL != null) {
+                return (Boolean) IS_VIRTUAL.invoke(thread);
+            }
+            String type = thread.referenceType().name();
+            return "java.lang.VirtualThread".equals(type) || "java.lang.ThreadBuilders$BoundVirtualThread".equals(type);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the platform thread a virtual thread is mounted on, or null when it is unmounted
+     * (or is not a virtual thread).
+     */
+    public static ThreadReference carrierOf(ThreadReference thread) {
+        try {
+            ReferenceType type = thread.referenceType();
+            Field field = type.fieldByName("carrierThread");
+            if (field == null) return null;
+            Value value = thread.getValue(field);
+            return value instanceof ThreadReference ? (ThreadReference) value : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
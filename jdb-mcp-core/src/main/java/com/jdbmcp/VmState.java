@@ -0,0 +1,186 @@
+package com.jdbmcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.jdi.Location;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.request.EventRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Session-side view of the target, kept current from events instead of JDWP queries: whether the VM is
+ * connected, which threads stopped at an event (where, why and when) and whether the whole VM is
+ * suspended, and which stopped threads still run a method call a summary gave up on (until it returns
+ * the thread cannot be inspected). The event loop reports stops and disconnects; every resume path
+ * reports resumes. Routine
+ * tool calls read liveness and the thread to act on from here, so they cost no JDWP round-trip. Threads
+ * suspended by other means (another debugger) are not seen; tools check the thread itself before giving
+ * up on it.
+ */
+public class VmState {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /** Where and why a thread stopped. */
+    public static class Stop {
+        public final ThreadReference thread;
+        public final Location location;
+        public final String reason;
+        public final long atMillis;
+        final long seq;
+
+        Stop(ThreadReference thread, Location location, String reason, long seq) {
+            this.thread = thread;
+            this.location = location;
+            this.reason = reason;
+            this.atMillis = System.currentTimeMillis();
+            this.seq = seq;
+        }
+    }
+
+    /** A method call still running on a thread after the summary that started it ran out of time. */
+    public static class Invocation {
+        public final ThreadReference thread;
+        public final String method;
+        public final long sinceMillis;
+
+        Invocation(ThreadReference thread, String method) {
+            this.thread = thread;
+            this.method = method;
+            this.sinceMillis = System.currentTimeMillis();
+        }
+    }
+
+    private volatile boolean connected;
+    private volatile boolean allSuspended;
+    private final Map<Long, Stop> stops = new ConcurrentHashMap<>();
+    private final Map<Long, Invocation> invocations = new ConcurrentHashMap<>();
+    private long seq;
+    private volatile long epoch;
+
+    public synchronized void connected() {
+        epoch++;
+        connected = true;
+        allSuspended = false;
+        stops.clear();
+        invocations.clear();
+    }
+
+    public synchronized void disconnected() {
+        epoch++;
+        connected = false;
+        allSuspended = false;
+        stops.clear();
+        invocations.clear();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /** A thread stopped at an event whose set was left suspended. */
+    public synchronized void stopped(ThreadReference thread, Location location, String reason, int suspendPolicy) {
+        if (suspendPolicy == EventRequest.SUSPEND_ALL) allSuspended = true;
+        if (thread != null) stops.put(thread.uniqueID(), new Stop(thread, location, reason, ++seq));
+    }
+
+    /** A stopped thread's frames changed without it running (frames popped); the stop keeps its reason. */
+    public synchronized void relocated(ThreadReference thread, Location location) {
+        epoch++;
+        Stop stop = stops.get(thread.uniqueID());
+        if (stop != null) stops.put(thread.uniqueID(), new Stop(thread, location, stop.reason, stop.seq));
+    }
+
+    /** One thread runs again (resumed alone, or ended). */
+    public synchronized void threadResumed(ThreadReference thread) {
+        epoch++;
+        stops.remove(thread.uniqueID());
+    }
+
+    /** The whole VM runs again. */
+    public synchronized void resumed() {
+        epoch++;
+        allSuspended = false;
+        stops.clear();
+    }
+
+    /** A call abandoned by its summary keeps the thread busy in target code. */
+    public void invocationAbandoned(ThreadReference thread, String method) {
+        invocations.put(thread.uniqueID(), new Invocation(thread, method));
+    }
+
+    /** The abandoned call returned; target code ran, so values read before are stale. */
+    public synchronized void invocationReturned(ThreadReference thread) {
+        epoch++;
+        invocations.remove(thread.uniqueID());
+    }
+
+    /** The abandoned call still running on the thread, or null. */
+    public Invocation invocation(ThreadReference thread) {
+        return invocations.get(thread.uniqueID());
+    }
+
+    /** Abandoned calls still running; null when there are none. */
+    public ArrayNode invocationsJson() {
+        if (invocations.isEmpty()) return null;
+        ArrayNode array = mapper.createArrayNode();
+        for (Invocation invocation : invocations.values()) {
+            array.addObject()
+                    .put("thread", "#" + invocation.thread.uniqueID())
+                    .put("method", invocation.method)
+                    .put("runningMs", System.currentTimeMillis() - invocation.sinceMillis);
+        }
+        return array;
+    }
+
+    /** Suspension epoch: changes whenever target code may have run, so values read before are stale. */
+    public long epoch() {
+        return epoch;
+    }
+
+    /** True when the thread stopped at an event or the whole VM is suspended. */
+    public boolean isSuspended(ThreadReference thread) {
+        return allSuspended || stops.containsKey(thread.uniqueID());
+    }
+
+    /** Threads stopped at an event, most recent first. */
+    public List<Stop> stops() {
+        List<Stop> list = new ArrayList<>(stops.values());
+        Collections.sort(list, new Comparator<Stop>() {
+            @Override
+            public int compare(Stop a, Stop b) {
+                return Long.compare(b.seq, a.seq);
+            }
+        });
+        return list;
+    }
+
+    /** The most recent stop, or null while nothing is stopped. */
+    public Stop lastStop() {
+        List<Stop> list = stops();
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    public ObjectNode toJson() {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("connected", connected);
+        node.put("vmSuspended", allSuspended);
+        ArrayNode array = node.putArray("stoppedThreads");
+        for (Stop stop : stops()) {
+            ObjectNode entry = array.addObject();
+            entry.put("thread", "#" + stop.thread.uniqueID());
+            entry.put("reason", stop.reason);
+            if (stop.location != null) entry.put("location", ExceptionTelemetry.format(stop.location));
+            entry.put("stoppedMs", System.currentTimeMillis() - stop.atMillis);
+        }
+        ArrayNode running = invocationsJson();
+        if (running != null) node.set("runningInvocations", running);
+        return node;
+    }
+}
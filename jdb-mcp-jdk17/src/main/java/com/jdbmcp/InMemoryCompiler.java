@@ -0,0 +1,107 @@
+package com.jdbmcp;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Compiles a single Java source unit in memory with the JDK's system compiler.
+ * Used by hot code replace to produce bytecode for classes already loaded in the target VM.
+ */
+public class InMemoryCompiler {
+
+    public static class Result {
+        public final boolean success;
+        public final Map<String, byte[]> classes;
+        public final List<String> diagnostics;
+
+        Result(boolean success, Map<String, byte[]> classes, List<String> diagnostics) {
+            this.success = success;
+            this.classes = classes;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    /** Newest Java release this server's compiler can emit class files for. */
+    public static int latestRelease() {
+        return SourceVersion.latestSupported().ordinal();
+    }
+
+    /**
+     * Compiles the given source. The returned map contains the top-level class and every
+     * nested, anonymous or local class produced by the compilation unit, keyed by binary name.
+     */
+    public static Result compile(String className, String source, String classPath, String release) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new Exception("No Java compiler available. The MCP server must run on a JDK, not a JRE.");
+        }
+
+        DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(collector, null, null);
+        MemoryFileManager fileManager = new MemoryFileManager(standard);
+
+        List<String> options = new ArrayList<>();
+        options.add("-g");
+        if (classPath != null && !classPath.isEmpty()) {
+            options.add("-classpath");
+            options.add(classPath);
+        }
+        if (release != null && !release.isEmpty()) {
+            options.add("--release");
+            options.add(release);
+        }
+
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        JavaFileObject unit = new SimpleJavaFileObject(URI.create("string:///" + simpleName + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        boolean success;
+        try {
+            success = compiler.getTask(null, fileManager, collector, options, null, Collections.singletonList(unit)).call();
+        } catch (IllegalArgumentException e) {
+            // javac rejects a --release it cannot emit, e.g. 7 on JDK 20 and newer
+            throw new Exception("The server's compiler cannot compile for Java " + release + ": " + e.getMessage());
+        } finally {
+            fileManager.close();
+        }
+
+        List<String> diagnostics = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> d : collector.getDiagnostics()) {
+            diagnostics.add(d.getKind() + " line " + d.getLineNumber() + ": " + d.getMessage(Locale.ROOT));
+        }
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (Map.Entry<String, ByteArrayOutputStream> entry : fileManager.outputs.entrySet()) {
+            classes.put(entry.getKey(), entry.getValue().toByteArray());
+        }
+        return new Result(success, classes, diagnostics);
+    }
+
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        final Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<>();
+
+        MemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    outputs.put(className, out);
+                    return out;
+                }
+            };
+        }
+    }
+}
@@ -13,8 +13,42 @@ public class JdiDebugger extends AbstractJdiDebugger {
     private final Map<Long, java.util.concurrent.CompletableFuture<Event>> pendingStepFutures = new java.util.concurrent.ConcurrentHashMap<>();
     private final java.util.Map<com.sun.jdi.request.MethodEntryRequest, String> methodEntryFilters = new java.util.concurrent.ConcurrentHashMap<>();
     private final java.util.Map<com.sun.jdi.request.MethodExitRequest, String> methodExitFilters = new java.util.concurrent.ConcurrentHashMap<>();
+    private volatile boolean suspendOnStart;
+
+    private static final long RECONNECT_INITIAL_DELAY_MS = 500;
+    private static final long RECONNECT_MAX_DELAY_MS = 30000;
+    private String attachHost;
+    private int attachPort;
+    private volatile long reconnectTimeoutMs;
+    private volatile int reconnectAttempt;
+
+    /**
+     * Opt-in for attach sessions: when the VM goes away (e.g. a rolling restart), reconnect to the same
+     * host:port with exponential backoff until {@code timeoutSeconds} have passed, then reinstall all
+     * breakpoints, watchpoints and method filters from the session journal. Must be called before attaching.
+     */
+    public void setAutoReconnect(int timeoutSeconds) {
+        reconnectTimeoutMs = timeoutSeconds * 1000L;
+        if (timeoutSeconds > 0 && journal == null) {
+            journal = SessionJournal.inMemory();
+        }
+    }
+
+    /** The current reconnect attempt while the VM is gone, 0 otherwise. */
+    public int getReconnectAttempt() {
+        return reconnectAttempt;
+    }
 
     public void attach(String host, int port) throws Exception {
+        attachHost = host;
+        attachPort = port;
+        vm = connect(host, port);
+        System.err.println("Attached to VM at " + host + ":" + port);
+        installDeferredBreakpoints();
+        startEventLoop();
+    }
+
+    private static VirtualMachine connect(String host, int port) throws Exception {
         VirtualMachineManager vmm = Bootstrap.virtualMachineManager();
         AttachingConnector connector = vmm.attachingConnectors().stream()
                 .filter(c -> c.name().equals("com.sun.jdi.SocketAttach"))
@@ -24,9 +58,83 @@ public class JdiDebugger extends AbstractJdiDebugger {
         Map<String, Connector.Argument> arguments = connector.defaultArguments();
         arguments.get("hostname").setValue(host);
         arguments.get("port").setValue(String.valueOf(port));
+        return connector.attach(arguments);
+    }
 
-        vm = connector.attach(arguments);
-        System.err.println("Attached to VM at " + host + ":" + port);
+    /**
+     * Runs on the event thread after a disconnect. Retries with exponential backoff (0.5s doubling up to
+     * 30s) and, once attached again, replays the journal into the new VM. Returns false when the session
+     * was terminated or the timeout passed.
+     */
+    private boolean reconnect() {
+        long deadline = System.currentTimeMillis() + reconnectTimeoutMs;
+        long delay = RECONNECT_INITIAL_DELAY_MS;
+        String target = attachHost + ":" + attachPort;
+        logEvent("VM Disconnected; reconnecting to " + target);
+        for (int attempt = 1; running && System.currentTimeMillis() < deadline; attempt++) {
+            reconnectAttempt = attempt;
+            try {
+                Thread.sleep(Math.min(delay, Math.max(0, deadline - System.currentTimeMillis())));
+                VirtualMachine connected = connect(attachHost, attachPort);
+                if (!running) {
+                    connected.dispose();
+                    break;
+                }
+                pendingStepFutures.clear();
+                methodEntryFilters.clear();
+                methodExitFilters.clear();
+                resetConnectionState();
+                vm = connected;
+                installDeferredBreakpoints();
+                reconnectAttempt = 0;
+                System.err.println("Reconnected to VM at " + target + " after " + attempt + " attempt(s)");
+                logEvent("VM Reconnected to " + target + " after " + attempt + " attempt(s); reinstalled "
+                        + getRestoreSummary().path("restored").asInt() + " request(s)");
+                return true;
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                System.err.println("Reconnect attempt " + attempt + " to " + target + " failed: " + e.getMessage());
+                delay = Math.min(delay * 2, RECONNECT_MAX_DELAY_MS);
+            }
+        }
+        reconnectAttempt = 0;
+        return false;
+    }
+
+    /**
+     * Takes over a VM that connected to a {@link VmListener}. A VM started with suspend=y waits at
+     * VMStart until the deferred breakpoints are installed.
+     */
+    public void attach(VirtualMachine connected) {
+        vm = connected;
+        System.err.println("Accepted VM: " + vm.name() + " " + vm.version());
+        installDeferredBreakpoints();
+        startEventLoop();
+    }
+
+    /**
+     * Starts a new VM through the command-line launching connector and attaches to it. Its stdout and
+     * stderr are captured into ring buffers. The VM is held at VMStart until deferred breakpoints are
+     * installed, and stays suspended there when {@code suspend} is set.
+     *
+     * @param main    main class (or '-jar app.jar') followed by program arguments
+     * @param options JVM options, e.g. '-cp app.jar -Xmx512m'
+     */
+    public void launch(String main, String options, boolean suspend) throws Exception {
+        LaunchingConnector connector = Bootstrap.virtualMachineManager().defaultConnector();
+        Map<String, Connector.Argument> arguments = connector.defaultArguments();
+        arguments.get("main").setValue(main);
+        if (options != null && !options.isEmpty()) {
+            arguments.get("options").setValue(options);
+        }
+
+        vm = connector.launch(arguments);
+        process = vm.process();
+        startOutputPumps(process);
+        System.err.println("Launched VM: " + main);
+        suspendOnStart = suspend;
+        installDeferredBreakpoints();
         startEventLoop();
     }
 
@@ -36,21 +144,62 @@ public class JdiDebugger extends AbstractJdiDebugger {
             while (running) {
                 try {
                     EventSet eventSet = queue.remove();
+                    if (reconnectTimeoutMs > 0 && eventSet.iterator().next() instanceof VMDisconnectEvent) {
+                        throw new VMDisconnectedException();
+                    }
+                    long start = Metrics.start();
+                    exceptionTelemetry.beginEventSet();
                     boolean shouldResume = true;
+                    Event pausing = null;
                     for (Event event : eventSet) {
+                        if (trackThreadEvent(event)) {
+                            continue; // Thread registry / churn sample; resumed with the set, not reported
+                        }
+                        if (event instanceof BreakpointEvent && !admitBreakpointHit((BreakpointEvent) event)) {
+                            continue; // Suppressed by its hit limit: counted, resumed with the set, not reported
+                        }
+                        if (event instanceof WatchpointEvent && recordWatchpointEvent((WatchpointEvent) event)) {
+                            continue; // Recorded into the field timeline; SUSPEND_NONE, not reported
+                        }
+                        if ((event instanceof MethodEntryEvent || event instanceof MethodExitEvent) && traceMethodEvent(event)) {
+                            continue; // Counted by the method tracer; SUSPEND_NONE, not reported
+                        }
+                        if (recordMonitorEvent(event)) {
+                            continue; // Counted by the contention profiler; SUSPEND_NONE, not reported
+                        }
+                        if (recordClassEvent(event)) {
+                            continue; // Recorded into the class loading timeline; SUSPEND_NONE, not reported
+                        }
                         if (event instanceof BreakpointEvent || event instanceof StepEvent || event instanceof WatchpointEvent
-                                || event instanceof MethodEntryEvent || event instanceof MethodExitEvent) {
+                                || event instanceof MethodEntryEvent || event instanceof MethodExitEvent
+                                || (event instanceof VMStartEvent && suspendOnStart)
+                                || (event instanceof ExceptionEvent && exceptionTelemetry.isSuspendEvent((ExceptionEvent) event))) {
                             shouldResume = false;
+                            if (pausing == null) pausing = event;
+                            eventStopped(event);
                         }
                         handleEvent(event);
                     }
                     if (shouldResume) {
                         eventSet.resume();
+                    } else {
+                        eventPaused(pausing);
                     }
+                    Metrics.record(Metrics.EVENT_LOOP, "eventSet", start);
                 } catch (InterruptedException e) {
                     break;
                 } catch (VMDisconnectedException e) {
                     System.err.println("VM Disconnected");
+                    pauseWatchdog.resumed();
+                    vmState.disconnected();
+                    if (running && reconnectTimeoutMs > 0 && attachHost != null && reconnect()) {
+                        queue = vm.eventQueue();
+                        continue;
+                    }
+                    if (running && reconnectTimeoutMs > 0) {
+                        running = false;
+                        logEvent("VM Disconnected");
+                    }
                     break;
                 }
             }
@@ -63,29 +212,16 @@ public class JdiDebugger extends AbstractJdiDebugger {
         String msg = "";
         if (event instanceof ClassPrepareEvent) {
             ClassPrepareEvent cpe = (ClassPrepareEvent) event;
-            ReferenceType type = cpe.referenceType();
-            String className = type.name();
-            Set<Integer> lines = deferredBreakpoints.remove(className);
-            if (lines != null) {
-                for (int line : lines) {
-                    try {
-                        List<Location> locations = type.locationsOfLine(line);
-                        if (!locations.isEmpty()) {
-                            Location loc = locations.get(0);
-                            if (!isBreakpointAlreadySet(loc)) {
-                                BreakpointRequest bpReq = vm.eventRequestManager().createBreakpointRequest(loc);
-                                bpReq.enable();
-                                System.err.println("Set deferred breakpoint in " + className + " at line " + line);
-                            }
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Failed to set deferred breakpoint in " + className + " at line " + line + ": " + (e.getMessage() != null ? e.getMessage() : e.toString()));
-                    }
-                }
+            bindDeferredBreakpoints(cpe.referenceType());
+        } else if (event instanceof ExceptionEvent) {
+            msg = handleExceptionEvent((ExceptionEvent) event);
+            if (msg != null) {
+                System.err.println(msg);
+                logEvent(msg);
             }
         } else if (event instanceof BreakpointEvent) {
             BreakpointEvent be = (BreakpointEvent) event;
-            msg = "Breakpoint hit at: " + be.location();
+            msg = "Breakpoint hit at: " + be.location() + virtualThreadSuffix(be.thread());
             System.err.println(msg);
             
             lastSuspendedThread = be.thread();
@@ -100,7 +236,7 @@ public class JdiDebugger extends AbstractJdiDebugger {
             if (eventListener != null) eventListener.accept(msg);
         } else if (event instanceof StepEvent) {
             StepEvent se = (StepEvent) event;
-            msg = "Step completed at: " + se.location();
+            msg = "Step completed at: " + se.location() + virtualThreadSuffix(se.thread());
             System.err.println(msg);
 
             lastSuspendedThread = se.thread();
@@ -134,6 +270,7 @@ public class JdiDebugger extends AbstractJdiDebugger {
                 eventQueue.offer(msg);
                 if (eventListener != null) eventListener.accept(msg);
             } else {
+                vmState.threadResumed(me.thread());
                 try { me.thread().resume(); } catch (Exception ignored) {}
             }
         } else if (event instanceof MethodExitEvent) {
@@ -147,16 +284,51 @@ public class JdiDebugger extends AbstractJdiDebugger {
                 eventQueue.offer(msg);
                 if (eventListener != null) eventListener.accept(msg);
             } else {
+                vmState.threadResumed(mx.thread());
                 try { mx.thread().resume(); } catch (Exception ignored) {}
             }
+        } else if (event instanceof VMStartEvent && suspendOnStart) {
+            msg = "VM started and suspended before main; set breakpoints, then debug_resume";
+            lastSuspendedThread = ((VMStartEvent) event).thread();
+            eventQueue.offer(msg);
+            if (eventListener != null) eventListener.accept(msg);
         } else if (event instanceof VMDisconnectEvent) {
             running = false;
+            vmState.disconnected();
             msg = "VM Disconnected";
             eventQueue.offer(msg);
             if (eventListener != null) eventListener.accept(msg);
         }
     }
 
+    /** Method entry/exit requests use class filters, so they are recreated right away instead of on class-prepare. */
+    @Override
+    protected boolean restore(SessionJournal.Entry entry) {
+        if (SessionJournal.ENTRY.equals(entry.kind) || SessionJournal.EXIT.equals(entry.kind)) {
+            String methodName = "*".equals(entry.member) ? null : entry.member;
+            try {
+                if (SessionJournal.ENTRY.equals(entry.kind)) {
+                    setMethodEntryRequest(entry.className, methodName);
+                } else {
+                    setMethodExitRequest(entry.className, methodName);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            return true;
+        }
+        return super.restore(entry);
+    }
+
+    /**
+     * Registers a virtual event thread (JDK 21+ targets) so tools can reach it by '#uniqueID' even though
+     * allThreads() does not return it, and names it in the event message.
+     */
+    private String virtualThreadSuffix(ThreadReference thread) {
+        trackEventThread(thread);
+        return eventThreads.containsKey(thread.uniqueID()) ? " in virtual thread " + JdiStateMapper.threadName(thread) : "";
+    }
+
     @Override
     public com.sun.jdi.event.Event stepOverAndWait(ThreadReference thread) throws Exception {
         return stepAndWait(thread, com.sun.jdi.request.StepRequest.STEP_LINE, com.sun.jdi.request.StepRequest.STEP_OVER);
@@ -173,6 +345,7 @@ public class JdiDebugger extends AbstractJdiDebugger {
     }
 
     private com.sun.jdi.event.Event stepAndWait(ThreadReference thread, int size, int depth) throws Exception {
+        checkNotInvoking(thread);
         java.util.concurrent.CompletableFuture<com.sun.jdi.event.Event> future = new java.util.concurrent.CompletableFuture<>();
         pendingStepFutures.put(thread.uniqueID(), future);
 
@@ -189,6 +362,10 @@ public class JdiDebugger extends AbstractJdiDebugger {
         request.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
         request.enable();
 
+        // Other virtual threads stop being inspectable once resumed; the stepping one re-registers on its event
+        eventThreads.clear();
+        pauseWatchdog.resumed();
+        vmState.resumed();
         vm.resume();
 
         try {
@@ -204,6 +381,9 @@ public class JdiDebugger extends AbstractJdiDebugger {
     @Override
     public void terminate() {
         running = false;
+        pauseWatchdog.resumed();
+        pauseWatchdog.shutdown();
+        vmState.disconnected();
         if (vm != null) {
             try {
                 vm.dispose();
@@ -263,10 +443,19 @@ public class JdiDebugger extends AbstractJdiDebugger {
     }
 
     public com.fasterxml.jackson.databind.node.ObjectNode setMethodBreakpoint(String className, String methodName) throws Exception {
+        return setMethodBreakpoint(className, methodName, null);
+    }
+
+    public com.fasterxml.jackson.databind.node.ObjectNode setMethodBreakpoint(String className, String methodName, HitLimiter limiter) throws Exception {
         if (vm == null) throw new Exception("Not attached");
         com.fasterxml.jackson.databind.node.ObjectNode result = mapper.createObjectNode();
         result.put("className", className);
         result.put("methodName", methodName);
+        String limitKey = className + "#" + methodName;
+        if (limiter != null) {
+            hitLimiters.put(limitKey, limiter);
+            result.set("limit", limiter.toJson());
+        }
         java.util.List<ReferenceType> classes = vm.classesByName(className);
         if (classes.isEmpty()) {
             result.put("status", "error");
@@ -287,9 +476,7 @@ public class JdiDebugger extends AbstractJdiDebugger {
             try {
                 Location loc = m.location();
                 if (loc != null) {
-                    if (!isBreakpointAlreadySet(loc)) {
-                        BreakpointRequest bp = vm.eventRequestManager().createBreakpointRequest(loc);
-                        bp.enable();
+                    if (installBreakpoint(loc, limitKey)) {
                         set = true;
                         locations.add(loc.toString());
                     } else {
@@ -305,6 +492,9 @@ public class JdiDebugger extends AbstractJdiDebugger {
             result.put("status", "success");
             com.fasterxml.jackson.databind.node.ArrayNode locArray = result.putArray("locations");
             for (String loc : locations) locArray.add(loc);
+            journal(SessionJournal.METHOD, className, methodName, limitKey);
+            // Kept like a line breakpoint, so a hot swap or a reloaded class gets it again
+            addDeferredRequest(new SessionJournal.Entry(SessionJournal.METHOD, className, methodName));
         } else {
             result.put("status", "error");
             String reason = "Failed to set breakpoint at method '" + methodName + "' in class '" + className + "'.";
@@ -328,7 +518,8 @@ public class JdiDebugger extends AbstractJdiDebugger {
         mer.addClassFilter(className);
         mer.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
         mer.enable();
-        methodEntryFilters.put(mer, methodName);
+        if (methodName != null) methodEntryFilters.put(mer, methodName);
+        journal(SessionJournal.ENTRY, className, methodName);
         result.put("status", "enabled");
         return result;
     }
@@ -343,8 +534,137 @@ public class JdiDebugger extends AbstractJdiDebugger {
         mxr.addClassFilter(className);
         mxr.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
         mxr.enable();
-        methodExitFilters.put(mxr, methodName);
+        if (methodName != null) methodExitFilters.put(mxr, methodName);
+        journal(SessionJournal.EXIT, className, methodName);
         result.put("status", "enabled");
         return result;
     }
+
+    /**
+     * Hot code replace: compiles the edited source of a loaded class and redefines it in the target VM.
+     * Frames executing obsolete versions of redefined methods are popped so they re-enter the new code.
+     */
+    public com.fasterxml.jackson.databind.node.ObjectNode redefineClass(String className, String source, String classPath, boolean popFrames) throws Exception {
+        if (vm == null) throw new Exception("Not attached");
+        com.fasterxml.jackson.databind.node.ObjectNode result = mapper.createObjectNode();
+        result.put("className", className);
+        if (!vm.canRedefineClasses()) {
+            result.put("status", "error");
+            result.put("reason", "Target VM does not support class redefinition.");
+            return result;
+        }
+        if (vm.classesByName(className).isEmpty()) throw new Exception("Class not found: " + className);
+
+        if (classPath == null && vm instanceof PathSearchingVirtualMachine) {
+            classPath = String.join(java.io.File.pathSeparator, ((PathSearchingVirtualMachine) vm).classPath());
+        }
+        InMemoryCompiler.Result compiled = InMemoryCompiler.compile(className, source, classPath, targetRelease());
+        com.fasterxml.jackson.databind.node.ArrayNode diagnostics = result.putArray("diagnostics");
+        for (String d : compiled.diagnostics) diagnostics.add(d);
+        if (!compiled.success) {
+            result.put("status", "compile_error");
+            return result;
+        }
+
+        Map<ReferenceType, byte[]> definitions = new java.util.HashMap<>();
+        com.fasterxml.jackson.databind.node.ArrayNode redefined = result.putArray("redefined");
+        com.fasterxml.jackson.databind.node.ArrayNode skipped = result.putArray("notLoaded");
+        for (Map.Entry<String, byte[]> entry : compiled.classes.entrySet()) {
+            List<ReferenceType> types = vm.classesByName(entry.getKey());
+            if (types.isEmpty()) {
+                // New nested classes cannot be redefined; they are picked up only if loaded later by the app
+                skipped.add(entry.getKey());
+                continue;
+            }
+            for (ReferenceType type : types) {
+                definitions.put(type, entry.getValue());
+            }
+            redefined.add(entry.getKey());
+        }
+
+        // Redefinition deletes the breakpoint requests in the redefined classes; they are bound again below
+        Set<String> before = breakpointLocations(definitions.keySet());
+        try {
+            vm.redefineClasses(definitions);
+        } catch (UnsupportedOperationException e) {
+            result.put("status", "error");
+            result.put("reason", "Unsupported change (schema change such as added/removed fields or methods, changed signatures or hierarchy): " + e.getMessage());
+            return result;
+        } catch (ClassFormatError | VerifyError | NoClassDefFoundError e) {
+            result.put("status", "error");
+            result.put("reason", e.getClass().getSimpleName() + ": " + e.getMessage());
+            return result;
+        }
+        result.put("status", "success");
+        for (ReferenceType type : definitions.keySet()) {
+            bindDeferredBreakpoints(type);
+        }
+        Set<String> after = breakpointLocations(definitions.keySet());
+        com.fasterxml.jackson.databind.node.ArrayNode rebound = result.putArray("breakpoints");
+        for (String location : after) rebound.add(location);
+        before.removeAll(after);
+        if (!before.isEmpty()) {
+            com.fasterxml.jackson.databind.node.ArrayNode lost = result.putArray("lostBreakpoints");
+            for (String location : before) lost.add(location);
+        }
+
+        com.fasterxml.jackson.databind.node.ArrayNode obsoleteFrames = result.putArray("obsoleteFrames");
+        for (ThreadReference thread : Jdwp.allThreads(vm)) {
+            if (!thread.isSuspended()) continue;
+            try {
+                List<StackFrame> frames = Jdwp.frames(thread);
+                // Pop the outermost obsolete frame so every obsolete method above it is re-entered too
+                StackFrame outermost = null;
+                for (StackFrame frame : frames) {
+                    if (frame.location().method().isObsolete()) outermost = frame;
+                }
+                if (outermost == null) continue;
+                com.fasterxml.jackson.databind.node.ObjectNode frameNode = obsoleteFrames.addObject();
+                frameNode.put("thread", JdiStateMapper.threadName(thread));
+                frameNode.put("method", outermost.location().method().name());
+                if (popFrames && vm.canPopFrames() && frames.indexOf(outermost) < frames.size() - 1) {
+                    thread.popFrames(outermost);
+                    vmState.relocated(thread, thread.frame(0).location());
+                    frameNode.put("action", "popped");
+                    frameNode.set("state", JdiStateMapper.getThreadState(thread, 5, -1));
+                } else {
+                    frameNode.put("action", "kept (running obsolete code until the method returns)");
+                }
+            } catch (Exception e) {
+                obsoleteFrames.addObject().put("thread", JdiStateMapper.threadName(thread)).put("error", e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /** 'Class:line' of the breakpoint requests in the given classes, e.g. to compare around a redefinition. */
+    private Set<String> breakpointLocations(java.util.Collection<ReferenceType> types) {
+        Set<String> locations = new java.util.TreeSet<>();
+        for (BreakpointRequest request : vm.eventRequestManager().breakpointRequests()) {
+            Location loc = request.location();
+            if (types.contains(loc.declaringType())) locations.add(loc.declaringType().name() + ":" + loc.lineNumber());
+        }
+        return locations;
+    }
+
+    /**
+     * The --release matching the target's class-file version, or null when its version cannot be parsed.
+     * Fails when the target is newer than this server's compiler can emit, or older than Java 7.
+     */
+    private String targetRelease() throws Exception {
+        int major;
+        try {
+            String[] parts = vm.version().split("[._-]");
+            major = "1".equals(parts[0]) ? Integer.parseInt(parts[1]) : Integer.parseInt(parts[0]);
+        } catch (Exception e) {
+            return null;
+        }
+        int latest = InMemoryCompiler.latestRelease();
+        if (major > latest) {
+            throw new Exception("Target VM runs Java " + major + " but this server's compiler emits at most Java " + latest
+                    + " class files. Run the MCP server on JDK " + major + " or newer to hot swap this target.");
+        }
+        if (major < 7) throw new Exception("Hot swap needs a target VM on Java 7 or newer; it runs Java " + major + ".");
+        return String.valueOf(major);
+    }
 }
@@ -19,24 +19,42 @@ public class McpServer {
     private static final boolean DEBUG = "True".equalsIgnoreCase(System.getenv("JDB_MCP_DEBUG"));
     
     private static class DebugSession {
+        final String id;
         final JdiDebugger debugger;
         final String info;
 
-        DebugSession(JdiDebugger debugger, String info) {
+        DebugSession(String id, JdiDebugger debugger, String info) {
+            this.id = id;
             this.debugger = debugger;
             this.info = info;
         }
     }
 
-    private DebugSession currentSession = null;
+    /** All sessions by id; tools act on the current one unless a 'sessionId' argument is given. */
+    private final java.util.Map<String, DebugSession> sessions = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.concurrent.atomic.AtomicInteger sessionIds = new java.util.concurrent.atomic.AtomicInteger();
+    private volatile DebugSession currentSession = null;
+    private VmListener listener;
+    private volatile java.util.List<String> listenBreakpoints = java.util.Collections.emptyList();
     private String transport = "stdio";
+    /** Port the HTTP transport listens on. */
+    private int port = 8080;
     private boolean enableNotifications = true;
+    private boolean cdsTraining = false;
+    /** Where per-target session journals are kept; null disables journaling. */
+    private java.io.File journalDir = new java.io.File(System.getProperty("user.home"), ".jdb-mcp" + java.io.File.separator + "journal");
+    /** Default pause budget of new sessions in milliseconds; 0 leaves the watchdog off. */
+    private long maxPauseMs = 0;
 
     public McpServer() {
     }
 
     public void start(String[] args) throws Exception {
         parseArgs(args);
+        if (cdsTraining) {
+            runCdsTraining();
+            return;
+        }
         
         if (enableNotifications) {
             System.err.println("Real-time AI notifications enabled.");
@@ -53,18 +71,49 @@ public class McpServer {
         for (int i = 0; i < args.length; i++) {
             if ("--transport".equals(args[i]) && i + 1 < args.length) {
                 transport = args[++i];
+            } else if ("--port".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
             } else if ("--notifications".equals(args[i]) && i + 1 < args.length) {
                 enableNotifications = Boolean.parseBoolean(args[++i]);
+            } else if ("--journal".equals(args[i]) && i + 1 < args.length) {
+                String dir = args[++i];
+                journalDir = "off".equalsIgnoreCase(dir) ? null : new java.io.File(dir);
+            } else if ("--max-pause".equals(args[i]) && i + 1 < args.length) {
+                maxPauseMs = Math.round(Double.parseDouble(args[++i]) * 1000);
+            } else if ("--cds-training".equals(args[i])) {
+                cdsTraining = true;
             }
         }
     }
 
+    /**
+     * Training run for the AppCDS archive (-XX:ArchiveClassesAtExit): walks the startup requests and the
+     * JDI bootstrap used by the first attach so their classes are archived, then exits.
+     */
+    private void runCdsTraining() throws Exception {
+        String[] requests = {
+            "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{\"protocolVersion\":\"2024-11-05\"}}",
+            "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}",
+            "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/list\"}",
+            "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"tools/call\",\"params\":{\"name\":\"debug_server_metrics\",\"arguments\":{}}}",
+            "{\"jsonrpc\":\"2.0\",\"id\":4,\"method\":\"tools/call\",\"params\":{\"name\":\"debug_list_threads\",\"arguments\":{}}}"
+        };
+        for (String request : requests) {
+            processJsonRpc(mapper.readTree(request));
+        }
+        com.sun.jdi.Bootstrap.virtualMachineManager().attachingConnectors();
+        new JdiDebugger().isAlive();
+        Metrics.reset();
+        System.err.println("CDS training run completed.");
+    }
+
     private void startHttpServer() throws Exception {
-        HttpServer server = HttpServer.create(new InetSocketAddress(8080), 0);
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         server.createContext("/", new McpHttpHandler());
+        server.createContext("/metrics", new MetricsHttpHandler());
         server.setExecutor(null);
         server.start();
-        System.err.println("MCP Server started on http://localhost:8080 (HTTP)");
+        System.err.println("MCP Server started on http://localhost:" + port + " (HTTP)");
     }
 
     private void startStdioServer() {
@@ -73,7 +122,9 @@ public class McpServer {
             String line;
             while ((line = reader.readLine()) != null) {
                 try {
+                    long parseStart = Metrics.start();
                     JsonNode request = mapper.readTree(line);
+                    Metrics.record(Metrics.SERIALIZATION, "parseRequest", parseStart);
                     String response = processJsonRpc(request);
                     if (response != null) {
                         System.out.println(response);
@@ -117,6 +168,7 @@ public class McpServer {
             return null;
         }
 
+        long start = Metrics.start();
         String responseJson;
         if (method.equals("initialize")) {
             ObjectNode capabilities = mapper.createObjectNode();
@@ -131,11 +183,12 @@ public class McpServer {
                     .put("version", "1.1.1"));
             
             result.put("instructions", 
-                "This is a Java Debugger MCP Server. It supports a single active debug session.\n" +
+                "This is a Java Debugger MCP Server. Tools act on the current debug session.\n" +
                 "Key workflows:\n" +
-                "1. Use 'debug_attach' to connect to a running Java process with JDWP enabled.\n" +
+                "1. Use 'debug_attach' to connect to a running Java process with JDWP enabled, or 'debug_launch' to start one.\n" +
                 "2. Breakpoints can be set before or after attaching.\n" +
                 "3. Use 'debug_detach' to terminate the current session. A new session can then be started.\n" +
+                "   With 'debug_listen', every JVM that connects becomes its own session; see 'debug_list_sessions' and 'debug_select_session'.\n" +
                 "4. If an error occurs, the server will attempt to remain stable. You may need to re-attach.");
             
             responseJson = McpResponseFactory.createResponse(idNode, result);
@@ -145,7 +198,9 @@ public class McpServer {
             responseJson = handleToolCall(idNode, request.get("params"));
         } else {
             responseJson = McpResponseFactory.createError(idNode, -32601, "Method not found: " + method);
+            method = "unknown";
         }
+        Metrics.record(Metrics.MCP_METHOD, method, start);
 
         if (DEBUG) {
             System.err.println("[DEBUG] Outgoing Response: " + responseJson);
@@ -167,7 +222,9 @@ public class McpServer {
         public void handle(HttpExchange exchange) throws IOException {
             if ("POST".equals(exchange.getRequestMethod())) {
                 try {
+                    long parseStart = Metrics.start();
                     JsonNode request = mapper.readTree(exchange.getRequestBody());
+                    Metrics.record(Metrics.SERIALIZATION, "parseRequest", parseStart);
                     String response = processJsonRpc(request);
                     if (response == null) {
                         exchange.sendResponseHeaders(204, -1);
@@ -190,60 +247,229 @@ public class McpServer {
         }
     }
 
+    class MetricsHttpHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                byte[] bytes = Metrics.toPrometheus().getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream os = exchange.getResponseBody();
+                try {
+                    os.write(bytes);
+                } finally {
+                    os.close();
+                }
+            } else {
+                exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
     private void resetSession(String info) {
         if (currentSession != null) {
+            sessions.remove(currentSession.id);
             try {
                 currentSession.debugger.terminate();
             } catch (Exception e) {
                 System.err.println("Error terminating previous session: " + e.getMessage());
             }
         }
+        currentSession = newSession(info, false);
+    }
+
+    /** Creates and registers a session. Events of listened sessions are prefixed with the session id. */
+    private DebugSession newSession(String info, boolean listened) {
+        String id = "vm-" + sessionIds.incrementAndGet();
         JdiDebugger debugger = new JdiDebugger();
-        if (enableNotifications) {
-            debugger.setEventListener(msg -> {
-                try {
-                    String notification = McpResponseFactory.createNotification("notifications/message", mapper.createObjectNode()
-                            .put("level", "info")
-                            .put("description", "Debugger Event")
-                            .put("data", msg));
-                    System.out.println(notification);
-                } catch (Exception e) {
-                }
-            });
+        debugger.setMaxPause(maxPauseMs);
+        DebugSession session = new DebugSession(id, debugger, info);
+        debugger.setEventListener(msg -> {
+            if (listened && "VM Disconnected".equals(msg)) {
+                // Short-lived targets come and go; drop their sessions once they are gone
+                sessions.remove(id);
+                if (currentSession == session) currentSession = null;
+            }
+            notifyClient(listened ? "[" + id + "] " + msg : msg);
+        });
+        sessions.put(id, session);
+        return session;
+    }
+
+    /** Applies the server-wide pause budget, or the session's own 'maxPauseSeconds'. */
+    private void applyPauseBudget(JdiDebugger debugger, JsonNode arguments) {
+        long budgetMs = maxPauseMs;
+        if (arguments != null && arguments.has("maxPauseSeconds")) {
+            budgetMs = Math.round(arguments.get("maxPauseSeconds").asDouble() * 1000);
+        }
+        debugger.setMaxPause(budgetMs);
+    }
+
+    /**
+     * Opens the journal of the target so its breakpoints and other requests are replayed on connect;
+     * with restore=false the previous state of the target is discarded.
+     */
+    private void openJournal(String targetKey, JsonNode arguments) {
+        if (journalDir == null) return;
+        boolean restore = arguments == null || !arguments.has("restore") || arguments.get("restore").asBoolean();
+        try {
+            currentSession.debugger.setJournal(SessionJournal.open(journalDir, targetKey, restore));
+        } catch (IOException e) {
+            System.err.println("Session journal disabled for " + targetKey + ": " + e.getMessage());
+        }
+    }
+
+    private void notifyClient(String data) {
+        if (!enableNotifications) return;
+        try {
+            String notification = McpResponseFactory.createNotification("notifications/message", mapper.createObjectNode()
+                    .put("level", "info")
+                    .put("description", "Debugger Event")
+                    .put("data", data));
+            System.out.println(notification);
+        } catch (Exception e) {
+        }
+    }
+
+    /** Called on the listener thread for every VM that connects in listen mode. */
+    private void onVmConnected(com.sun.jdi.VirtualMachine vm) {
+        DebugSession session = newSession("Connected: " + vm.name() + " " + vm.version(), true);
+        for (String breakpoint : listenBreakpoints) {
+            int colon = breakpoint.lastIndexOf(':');
+            try {
+                session.debugger.setBreakpoint(breakpoint.substring(0, colon), Integer.parseInt(breakpoint.substring(colon + 1).trim()));
+            } catch (Exception e) {
+                System.err.println("Invalid listen breakpoint '" + breakpoint + "': " + e.getMessage());
+            }
+        }
+        session.debugger.attach(vm);
+        DebugSession current = currentSession;
+        if (current == null || !current.debugger.isAlive()) {
+            currentSession = session;
         }
-        currentSession = new DebugSession(debugger, info);
+        notifyClient("[" + session.id + "] " + session.info + (currentSession == session ? " (current session)" : ""));
     }
 
-    private JdiDebugger getDebugger() throws Exception {
-        if (currentSession == null || currentSession.debugger == null) {
-            throw new Exception("No active debug session. Please call debug_attach first.");
+    private JdiDebugger getDebugger(JsonNode arguments) throws Exception {
+        DebugSession session = currentSession;
+        if (arguments != null && arguments.has("sessionId")) {
+            session = sessions.get(arguments.get("sessionId").asText());
+            if (session == null) throw new Exception("Unknown session: " + arguments.get("sessionId").asText());
+        }
+        if (session == null || session.debugger == null) {
+            throw new Exception("No active debug session. Please call debug_attach, debug_launch or debug_listen first.");
         }
-        if (!currentSession.debugger.isAlive()) {
+        if (!session.debugger.isAlive()) {
+            if (session.debugger.getReconnectAttempt() > 0) {
+                throw new Exception("VM disconnected; reconnecting (attempt " + session.debugger.getReconnectAttempt() + "). Retry shortly.");
+            }
             throw new Exception("Debug session is no longer active (VM disconnected). Please re-attach.");
         }
-        return currentSession.debugger;
+        return session.debugger;
+    }
+
+    private JsonNode listSessions() {
+        ObjectNode result = mapper.createObjectNode();
+        DebugSession current = currentSession;
+        result.put("current", current != null ? current.id : null);
+        result.put("listening", listener != null ? listener.getAddress() : null);
+        ArrayNode list = result.putArray("sessions");
+        for (DebugSession session : new java.util.TreeMap<>(sessions).values()) {
+            ObjectNode entry = list.addObject()
+                    .put("id", session.id)
+                    .put("info", session.info)
+                    .put("alive", session.debugger.isAlive())
+                    .put("current", session == current);
+            entry.set("state", session.debugger.getSessionState());
+        }
+        return result;
     }
 
     private String handleToolCall(JsonNode idNode, JsonNode params) {
         String name = params.get("name").asText();
         JsonNode arguments = params.get("arguments");
         
+        long start = Metrics.start();
         try {
             JsonNode result;
-            if ("debug_attach".equals(name)) {
+            if ("debug_server_metrics".equals(name)) {
+                result = Metrics.snapshot();
+                if (arguments != null && arguments.has("reset") && arguments.get("reset").asBoolean()) {
+                    Metrics.reset();
+                }
+            } else if ("debug_attach".equals(name)) {
                 String host = (arguments != null && arguments.has("host")) ? arguments.get("host").asText() : "localhost";
                 int port = (arguments != null && arguments.has("port")) ? arguments.get("port").asInt() : -1;
                 if (port == -1) throw new Exception("Missing required argument: port");
                 
                 resetSession("Attached: " + host + ":" + port);
+                openJournal(host + ":" + port, arguments);
+                applyPauseBudget(currentSession.debugger, arguments);
+                if (arguments.has("reconnect") && arguments.get("reconnect").asBoolean()) {
+                    currentSession.debugger.setAutoReconnect(arguments.has("reconnectTimeout") ? arguments.get("reconnectTimeout").asInt() : 600);
+                }
                 currentSession.debugger.attach(host, port);
                 
                 ObjectNode attachResult = mapper.createObjectNode();
                 attachResult.put("message", "Attached to " + host + ":" + port);
                 attachResult.set("vmState", JdiStateMapper.getVmState(currentSession.debugger.getVm()));
+                attachResult.set("restored", currentSession.debugger.getRestoreSummary());
                 result = attachResult;
+            } else if ("debug_launch".equals(name)) {
+                if (arguments == null || (!arguments.has("mainClass") && !arguments.has("jar"))) {
+                    throw new Exception("Missing required argument: mainClass or jar");
+                }
+                String main = arguments.has("jar") ? "-jar \"" + arguments.get("jar").asText() + "\"" : arguments.get("mainClass").asText();
+                if (arguments.has("args")) main += " " + arguments.get("args").asText();
+                String options = arguments.has("classPath") ? "-cp \"" + arguments.get("classPath").asText() + "\"" : "";
+                if (arguments.has("jvmOptions")) options += " " + arguments.get("jvmOptions").asText();
+                boolean suspend = arguments.has("suspend") && arguments.get("suspend").asBoolean();
+
+                resetSession("Launched: " + main);
+                openJournal(arguments.has("jar") ? arguments.get("jar").asText() : arguments.get("mainClass").asText(), arguments);
+                applyPauseBudget(currentSession.debugger, arguments);
+                currentSession.debugger.launch(main, options.trim(), suspend);
+
+                ObjectNode launchResult = mapper.createObjectNode();
+                launchResult.put("message", "Launched " + main + (suspend ? " (suspended at VM start)" : ""));
+                launchResult.set("vmState", JdiStateMapper.getVmState(currentSession.debugger.getVm()));
+                launchResult.set("restored", currentSession.debugger.getRestoreSummary());
+                result = launchResult;
+            } else if ("debug_listen".equals(name)) {
+                if (arguments != null && arguments.has("stop") && arguments.get("stop").asBoolean()) {
+                    if (listener != null) listener.stop();
+                    listener = null;
+                    result = mapper.valueToTree("Stopped listening. Connected sessions stay open.");
+                } else {
+                    if (listener != null) throw new Exception("Already listening at " + listener.getAddress() + ". Use stop=true first.");
+                    java.util.List<String> breakpoints = new java.util.ArrayList<>();
+                    if (arguments != null && arguments.has("breakpoints")) {
+                        for (String bp : arguments.get("breakpoints").asText().split(",")) {
+                            if (!bp.trim().isEmpty()) breakpoints.add(bp.trim());
+                        }
+                    }
+                    listenBreakpoints = breakpoints;
+                    listener = new VmListener(
+                            arguments != null && arguments.has("host") ? arguments.get("host").asText() : null,
+                            arguments != null && arguments.has("port") ? arguments.get("port").asInt() : 0,
+                            this::onVmConnected);
+                    ObjectNode listenResult = mapper.createObjectNode();
+                    listenResult.put("message", "Listening for VMs at " + listener.getAddress());
+                    listenResult.put("address", listener.getAddress());
+                    listenResult.put("agentOption", "-agentlib:jdwp=transport=dt_socket,server=n,suspend=y,address=" + listener.getAddress());
+                    result = listenResult;
+                }
+            } else if ("debug_list_sessions".equals(name)) {
+                result = listSessions();
+            } else if ("debug_select_session".equals(name)) {
+                String sessionId = arguments != null && arguments.has("sessionId") ? arguments.get("sessionId").asText() : null;
+                DebugSession session = sessionId != null ? sessions.get(sessionId) : null;
+                if (session == null) throw new Exception("Unknown session: " + sessionId);
+                currentSession = session;
+                result = listSessions();
             } else if ("debug_detach".equals(name)) {
                 if (currentSession != null) {
+                    sessions.remove(currentSession.id);
                     currentSession.debugger.terminate();
                     currentSession = null;
                     result = mapper.valueToTree("Session terminated and detached.");
@@ -251,7 +477,7 @@ public class McpServer {
                     result = mapper.valueToTree("No active session to detach.");
                 }
             } else {
-                JdiDebugger dbg = getDebugger();
+                JdiDebugger dbg = getDebugger(arguments);
                 result = McpToolExecutor.execute(name, arguments, dbg);
             }
             
@@ -259,6 +485,9 @@ public class McpServer {
         } catch (Exception e) {
             String errorMsg = e.getMessage() != null ? e.getMessage() : e.toString();
             return McpResponseFactory.createMcpErrorResponse(idNode, "Error: " + errorMsg);
+        } finally {
+            // Client-supplied names would add a timer and a /metrics series each
+            Metrics.record(Metrics.TOOL, McpTools.isTool(mapper, name) ? name : "unknown", start);
         }
     }
 
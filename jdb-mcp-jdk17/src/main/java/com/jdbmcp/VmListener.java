@@ -0,0 +1,62 @@
+package com.jdbmcp;
+
+import com.sun.jdi.Bootstrap;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.connect.Connector;
+import com.sun.jdi.connect.ListeningConnector;
+
+import java.util.Map;
+
+/**
+ * Listens for target VMs started with {@code -agentlib:jdwp=transport=dt_socket,server=n,address=host:port}
+ * (reverse attach). Every VM that connects is handed to the callback on the acceptor thread, so short-lived
+ * or autoscaled processes register themselves without the debugger knowing their ports.
+ */
+public class VmListener {
+    private final ListeningConnector connector;
+    private final Map<String, Connector.Argument> arguments;
+    private final String address;
+    private volatile boolean running = true;
+
+    public VmListener(String host, int port, Consumer<VirtualMachine> onConnect) throws Exception {
+        connector = Bootstrap.virtualMachineManager().listeningConnectors().stream()
+                .filter(c -> c.name().equals("com.sun.jdi.SocketListen"))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("SocketListen connector not found"));
+        arguments = connector.defaultArguments();
+        arguments.get("port").setValue(String.valueOf(port));
+        if (host != null && arguments.containsKey("localAddress")) {
+            arguments.get("localAddress").setValue(host);
+        }
+        address = connector.startListening(arguments);
+
+        Thread acceptor = new Thread(() -> {
+            while (running) {
+                try {
+                    VirtualMachine vm = connector.accept(arguments);
+                    onConnect.accept(vm);
+                } catch (Exception e) {
+                    if (running) {
+                        System.err.println("Error accepting VM connection: " + e.getMessage());
+                    }
+                }
+            }
+        }, "jdb-mcp-listener");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.err.println("Listening for VMs at " + address);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            connector.stopListening(arguments);
+        } catch (Exception e) {
+            System.err.println("Error stopping listener: " + e.getMessage());
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class JdiDebugger extends AbstractJdiDebugger {
         volatile Event event;
     }
     private final Map<ThreadReference, SyncStep> pendingStepFutures = new java.util.concurrent.ConcurrentHashMap<ThreadReference, SyncStep>();
+    private volatile boolean suspendOnStart;
 
     /**
      * Attach to a running VM via socket.
@@ -42,6 +43,28 @@ public class JdiDebugger extends AbstractJdiDebugger {
 
         vm = connector.attach(arguments);
         System.err.println("Attached to VM at " + host + ":" + port);
+        installDeferredBreakpoints();
+        startEventLoop();
+    }
+
+    /**
+     * Start a new VM through the command-line launching connector and attach to it.
+     * Output is captured into ring buffers; the VM stays suspended at VMStart if requested.
+     */
+    public void launch(String main, String options, boolean suspend) throws Exception {
+        LaunchingConnector connector = Bootstrap.virtualMachineManager().defaultConnector();
+        Map<String, Connector.Argument> arguments = connector.defaultArguments();
+        arguments.get("main").setValue(main);
+        if (options != null && !options.isEmpty()) {
+            arguments.get("options").setValue(options);
+        }
+
+        vm = connector.launch(arguments);
+        process = vm.process();
+        startOutputPumps(process);
+        System.err.println("Launched VM: " + main);
+        suspendOnStart = suspend;
+        installDeferredBreakpoints();
         startEventLoop();
     }
 
@@ -53,20 +76,50 @@ public class JdiDebugger extends AbstractJdiDebugger {
                 while (running) {
                 try {
                     EventSet eventSet = queue.remove();
+                    long start = Metrics.start();
+                    exceptionTelemetry.beginEventSet();
                     boolean shouldResume = true;
+                    Event pausing = null;
                     for (Event event : eventSet) {
-                        if (event instanceof BreakpointEvent || event instanceof StepEvent || event instanceof WatchpointEvent) {
+                        if (trackThreadEvent(event)) {
+                            continue; // Thread registry / churn sample; resumed with the set, not reported
+                        }
+                        if (event instanceof BreakpointEvent && !admitBreakpointHit((BreakpointEvent) event)) {
+                            continue; // Suppressed by its hit limit: counted, resumed with the set, not reported
+                        }
+                        if (event instanceof WatchpointEvent && recordWatchpointEvent((WatchpointEvent) event)) {
+                            continue; // Recorded into the field timeline; SUSPEND_NONE, not reported
+                        }
+                        if ((event instanceof MethodEntryEvent || event instanceof MethodExitEvent) && traceMethodEvent(event)) {
+                            continue; // Counted by the method tracer; SUSPEND_NONE, not reported
+                        }
+                        if (recordMonitorEvent(event)) {
+                            continue; // Counted by the contention profiler; SUSPEND_NONE, not reported
+                        }
+                        if (recordClassEvent(event)) {
+                            continue; // Recorded into the class loading timeline; SUSPEND_NONE, not reported
+                        }
+                        if (event instanceof BreakpointEvent || event instanceof StepEvent || event instanceof WatchpointEvent
+                                || (event instanceof VMStartEvent && suspendOnStart)
+                                || (event instanceof ExceptionEvent && exceptionTelemetry.isSuspendEvent((ExceptionEvent) event))) {
                             shouldResume = false;
+                            if (pausing == null) pausing = event;
+                            eventStopped(event);
                         }
                         handleEvent(event);
                     }
                     if (shouldResume) {
                         eventSet.resume();
+                    } else {
+                        eventPaused(pausing);
                     }
+                    Metrics.record(Metrics.EVENT_LOOP, "eventSet", start);
                 } catch (InterruptedException e) {
                     break;
                 } catch (VMDisconnectedException e) {
                     System.err.println("VM Disconnected");
+                    pauseWatchdog.resumed();
+                    vmState.disconnected();
                     break;
                 }
             }
@@ -79,25 +132,12 @@ public class JdiDebugger extends AbstractJdiDebugger {
         String msg = "";
         if (event instanceof ClassPrepareEvent) {
             ClassPrepareEvent cpe = (ClassPrepareEvent) event;
-            ReferenceType type = cpe.referenceType();
-            String className = type.name();
-            Set<Integer> lines = deferredBreakpoints.remove(className);
-            if (lines != null) {
-                for (int line : lines) {
-                    try {
-                        List<Location> locations = type.locationsOfLine(line);
-                        if (!locations.isEmpty()) {
-                            Location loc = locations.get(0);
-                            if (!isBreakpointAlreadySet(loc)) {
-                                BreakpointRequest bpReq = vm.eventRequestManager().createBreakpointRequest(loc);
-                                bpReq.enable();
-                                System.err.println("Set deferred breakpoint in " + className + " at line " + line);
-                            }
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Failed to set deferred breakpoint in " + className + " at line " + line + ": " + (e.getMessage() != null ? e.getMessage() : e.toString()));
-                    }
-                }
+            bindDeferredBreakpoints(cpe.referenceType());
+        } else if (event instanceof ExceptionEvent) {
+            msg = handleExceptionEvent((ExceptionEvent) event);
+            if (msg != null) {
+                System.err.println(msg);
+                logEvent(msg);
             }
         } else if (event instanceof BreakpointEvent) {
             BreakpointEvent be = (BreakpointEvent) event;
@@ -135,8 +175,13 @@ public class JdiDebugger extends AbstractJdiDebugger {
                   (we instanceof ModificationWatchpointEvent ? " new value: " + ((ModificationWatchpointEvent) we).valueToBe() : "");
             System.err.println(msg);
             logEvent(msg);
+        } else if (event instanceof VMStartEvent && suspendOnStart) {
+            msg = "VM started and suspended before main; set breakpoints, then debug_resume";
+            lastSuspendedThread = ((VMStartEvent) event).thread();
+            logEvent(msg);
         } else if (event instanceof VMDisconnectEvent) {
             running = false;
+            vmState.disconnected();
             msg = "VM Disconnected";
             logEvent(msg);
         }
@@ -158,10 +203,13 @@ public class JdiDebugger extends AbstractJdiDebugger {
     }
 
     private Event stepAndWait(ThreadReference thread, int depth) throws Exception {
+        checkNotInvoking(thread);
         SyncStep syncStep = new SyncStep();
         pendingStepFutures.put(thread, syncStep);
         
         step(thread, depth);
+        pauseWatchdog.resumed();
+        vmState.resumed();
         vm.resume();
         
         try {
@@ -194,6 +242,9 @@ public class JdiDebugger extends AbstractJdiDebugger {
     @Override
     public void terminate() {
         running = false;
+        pauseWatchdog.resumed();
+        pauseWatchdog.shutdown();
+        vmState.disconnected();
         if (vm != null) {
             try {
                 vm.dispose();
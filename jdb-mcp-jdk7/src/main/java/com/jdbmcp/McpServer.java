@@ -30,7 +30,13 @@ public class McpServer {
 
     private DebugSession currentSession = null;
     private String transport = "stdio";
+    /** Port the HTTP transport listens on. */
+    private int port = 8080;
     private boolean enableNotifications = true;
+    /** Where per-target session journals are kept; null disables journaling. */
+    private java.io.File journalDir = new java.io.File(System.getProperty("user.home"), ".jdb-mcp" + java.io.File.separator + "journal");
+    /** Default pause budget of new sessions in milliseconds; 0 leaves the watchdog off. */
+    private long maxPauseMs = 0;
 
     public McpServer() {
     }
@@ -53,18 +59,26 @@ public class McpServer {
         for (int i = 0; i < args.length; i++) {
             if ("--transport".equals(args[i]) && i + 1 < args.length) {
                 transport = args[++i];
+            } else if ("--port".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
             } else if ("--notifications".equals(args[i]) && i + 1 < args.length) {
                 enableNotifications = Boolean.parseBoolean(args[++i]);
+            } else if ("--journal".equals(args[i]) && i + 1 < args.length) {
+                String dir = args[++i];
+                journalDir = "off".equalsIgnoreCase(dir) ? null : new java.io.File(dir);
+            } else if ("--max-pause".equals(args[i]) && i + 1 < args.length) {
+                maxPauseMs = Math.round(Double.parseDouble(args[++i]) * 1000);
             }
         }
     }
 
     private void startHttpServer() throws Exception {
-        HttpServer server = HttpServer.create(new InetSocketAddress(8080), 0);
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         server.createContext("/", new McpHttpHandler());
+        server.createContext("/metrics", new MetricsHttpHandler());
         server.setExecutor(null);
         server.start();
-        System.err.println("MCP Server started on http://localhost:8080 (HTTP)");
+        System.err.println("MCP Server started on http://localhost:" + port + " (HTTP)");
     }
 
     private void startStdioServer() {
@@ -73,7 +87,9 @@ public class McpServer {
             String line;
             while ((line = reader.readLine()) != null) {
                 try {
+                    long parseStart = Metrics.start();
                     JsonNode request = mapper.readTree(line);
+                    Metrics.record(Metrics.SERIALIZATION, "parseRequest", parseStart);
                     String response = processJsonRpc(request);
                     if (response != null) {
                         System.out.println(response);
@@ -117,6 +133,7 @@ public class McpServer {
             return null;
         }
 
+        long start = Metrics.start();
         String responseJson;
         if (method.equals("initialize")) {
             ObjectNode capabilities = mapper.createObjectNode();
@@ -133,7 +150,7 @@ public class McpServer {
             result.put("instructions", 
                 "This is a Java Debugger MCP Server. It supports a single active debug session.\n" +
                 "Key workflows:\n" +
-                "1. Use 'debug_attach' to connect to a running Java process with JDWP enabled.\n" +
+                "1. Use 'debug_attach' to connect to a running Java process with JDWP enabled, or 'debug_launch' to start one.\n" +
                 "2. Breakpoints can be set before or after attaching.\n" +
                 "3. Use 'debug_detach' to terminate the current session. A new session can then be started.\n" +
                 "4. If an error occurs, the server will attempt to remain stable. You may need to re-attach.");
@@ -145,7 +162,9 @@ public class McpServer {
             responseJson = handleToolCall(idNode, request.get("params"));
         } else {
             responseJson = McpResponseFactory.createError(idNode, -32601, "Method not found: " + method);
+            method = "unknown";
         }
+        Metrics.record(Metrics.MCP_METHOD, method, start);
 
         if (DEBUG) {
             System.err.println("[DEBUG] Outgoing Response: " + responseJson);
@@ -168,7 +187,9 @@ public class McpServer {
         public void handle(HttpExchange exchange) throws IOException {
             if ("POST".equals(exchange.getRequestMethod())) {
                 try {
+                    long parseStart = Metrics.start();
                     JsonNode request = mapper.readTree(exchange.getRequestBody());
+                    Metrics.record(Metrics.SERIALIZATION, "parseRequest", parseStart);
                     String response = processJsonRpc(request);
                     if (response == null) {
                         exchange.sendResponseHeaders(204, -1);
@@ -191,6 +212,25 @@ public class McpServer {
         }
     }
 
+    class MetricsHttpHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                byte[] bytes = Metrics.toPrometheus().getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream os = exchange.getResponseBody();
+                try {
+                    os.write(bytes);
+                } finally {
+                    os.close();
+                }
+            } else {
+                exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
     private void resetSession(String info) {
         if (currentSession != null) {
             try {
@@ -218,9 +258,32 @@ public class McpServer {
         currentSession = new DebugSession(debugger, info);
     }
 
+    /** Applies the server-wide pause budget, or the session's own 'maxPauseSeconds'. */
+    private void applyPauseBudget(JdiDebugger debugger, JsonNode arguments) {
+        long budgetMs = maxPauseMs;
+        if (arguments != null && arguments.has("maxPauseSeconds")) {
+            budgetMs = Math.round(arguments.get("maxPauseSeconds").asDouble() * 1000);
+        }
+        debugger.setMaxPause(budgetMs);
+    }
+
+    /**
+     * Opens the journal of the target so its breakpoints and watchpoints are replayed on connect;
+     * with restore=false the previous state of the target is discarded.
+     */
+    private void openJournal(String targetKey, JsonNode arguments) {
+        if (journalDir == null) return;
+        boolean restore = arguments == null || !arguments.has("restore") || arguments.get("restore").asBoolean();
+        try {
+            currentSession.debugger.setJournal(SessionJournal.open(journalDir, targetKey, restore));
+        } catch (IOException e) {
+            System.err.println("Session journal disabled for " + targetKey + ": " + e.getMessage());
+        }
+    }
+
     private JdiDebugger getDebugger() throws Exception {
         if (currentSession == null || currentSession.debugger == null) {
-            throw new Exception("No active debug session. Please call debug_attach first.");
+            throw new Exception("No active debug session. Please call debug_attach or debug_launch first.");
         }
         if (!currentSession.debugger.isAlive()) {
             throw new Exception("Debug session is no longer active (VM disconnected). Please re-attach.");
@@ -232,20 +295,49 @@ public class McpServer {
         String name = params.get("name").asText();
         JsonNode arguments = params.get("arguments");
         
+        long start = Metrics.start();
         try {
             JsonNode result;
-            if ("debug_attach".equals(name)) {
+            if ("debug_server_metrics".equals(name)) {
+                result = Metrics.snapshot();
+                if (arguments != null && arguments.has("reset") && arguments.get("reset").asBoolean()) {
+                    Metrics.reset();
+                }
+            } else if ("debug_attach".equals(name)) {
                 String host = (arguments != null && arguments.has("host")) ? arguments.get("host").asText() : "localhost";
                 int port = (arguments != null && arguments.has("port")) ? arguments.get("port").asInt() : -1;
                 if (port == -1) throw new Exception("Missing required argument: port");
                 
                 resetSession("Attached: " + host + ":" + port);
+                openJournal(host + ":" + port, arguments);
+                applyPauseBudget(currentSession.debugger, arguments);
                 currentSession.debugger.attach(host, port);
                 
                 ObjectNode attachResult = mapper.createObjectNode();
                 attachResult.put("message", "Attached to " + host + ":" + port);
                 attachResult.set("vmState", JdiStateMapper.getVmState(currentSession.debugger.getVm()));
+                attachResult.set("restored", currentSession.debugger.getRestoreSummary());
                 result = attachResult;
+            } else if ("debug_launch".equals(name)) {
+                if (arguments == null || (!arguments.has("mainClass") && !arguments.has("jar"))) {
+                    throw new Exception("Missing required argument: mainClass or jar");
+                }
+                String main = arguments.has("jar") ? "-jar \"" + arguments.get("jar").asText() + "\"" : arguments.get("mainClass").asText();
+                if (arguments.has("args")) main += " " + arguments.get("args").asText();
+                String options = arguments.has("classPath") ? "-cp \"" + arguments.get("classPath").asText() + "\"" : "";
+                if (arguments.has("jvmOptions")) options += " " + arguments.get("jvmOptions").asText();
+                boolean suspend = arguments.has("suspend") && arguments.get("suspend").asBoolean();
+
+                resetSession("Launched: " + main);
+                openJournal(arguments.has("jar") ? arguments.get("jar").asText() : arguments.get("mainClass").asText(), arguments);
+                applyPauseBudget(currentSession.debugger, arguments);
+                currentSession.debugger.launch(main, options.trim(), suspend);
+
+                ObjectNode launchResult = mapper.createObjectNode();
+                launchResult.put("message", "Launched " + main + (suspend ? " (suspended at VM start)" : ""));
+                launchResult.set("vmState", JdiStateMapper.getVmState(currentSession.debugger.getVm()));
+                launchResult.set("restored", currentSession.debugger.getRestoreSummary());
+                result = launchResult;
             } else if ("debug_detach".equals(name)) {
                 if (currentSession != null) {
                     currentSession.debugger.terminate();
@@ -263,6 +355,9 @@ public class McpServer {
         } catch (Exception e) {
             String errorMsg = e.getMessage() != null ? e.getMessage() : e.toString();
             return McpResponseFactory.createMcpErrorResponse(idNode, "Error: " + errorMsg);
+        } finally {
+            // Client-supplied names would add a timer and a /metrics series each
+            Metrics.record(Metrics.TOOL, McpTools.isTool(mapper, name) ? name : "unknown", start);
         }
     }
 
@@ -20,7 +20,7 @@ public class McpToolExecutor {
             String className = arguments.get("className").asText();
             int line = arguments.get("line").asInt();
             try {
-                ObjectNode bpResult = debugger.setBreakpoint(className, line);
+                ObjectNode bpResult = debugger.setBreakpoint(className, line, hitLimiter(arguments));
                 bpResult.set("vmState", JdiStateMapper.getVmState(debugger.getVm()));
                 return bpResult;
             } catch (Exception e) {
@@ -44,13 +44,35 @@ public class McpToolExecutor {
         } else if ("debug_step_out".equals(name)) {
             return handleStep(debugger, "out", arguments);
         } else if ("debug_list_threads".equals(name)) {
-            return debugger.listThreads();
+            return debugger.listThreads(
+                arguments != null && arguments.has("state") ? arguments.get("state").asText() : null,
+                arguments != null && arguments.has("namePattern") ? arguments.get("namePattern").asText() : null,
+                arguments != null && arguments.has("group") ? arguments.get("group").asText() : null,
+                arguments != null && arguments.has("virtual") ? arguments.get("virtual").asText() : null,
+                arguments != null && arguments.has("cursor") ? arguments.get("cursor").asLong() : 0,
+                arguments != null && arguments.has("limit") ? arguments.get("limit").asInt() : 100,
+                arguments != null && arguments.has("sample") ? arguments.get("sample").asInt() : 0,
+                arguments != null && arguments.has("groupByStack") && arguments.get("groupByStack").asBoolean(),
+                arguments != null && arguments.has("stackDepth") ? arguments.get("stackDepth").asInt() : 5
+            );
         } else if ("debug_list_vars".equals(name)) {
             return debugger.getVariables(
                 arguments.has("threadName") ? arguments.get("threadName").asText() : null,
                 arguments.has("frameIndex") ? arguments.get("frameIndex").asInt() : 0,
                 arguments.has("scope") ? arguments.get("scope").asText() : "LOCAL",
-                arguments.has("maxDepth") ? arguments.get("maxDepth").asInt() : 1
+                arguments.has("maxDepth") ? arguments.get("maxDepth").asInt() : 1,
+                arguments.has("maxBytes") ? arguments.get("maxBytes").asLong() : 0,
+                arguments.has("raw") && arguments.get("raw").asBoolean()
+            );
+        } else if ("debug_expand".equals(name)) {
+            ensureVm(debugger);
+            return debugger.expandHandle(
+                arguments.get("handle").asLong(),
+                arguments.has("maxDepth") ? arguments.get("maxDepth").asInt() : 1,
+                arguments.has("maxBytes") ? arguments.get("maxBytes").asLong() : 0,
+                arguments.has("offset") ? arguments.get("offset").asInt() : 0,
+                arguments.has("limit") ? arguments.get("limit").asInt() : 0,
+                arguments.has("raw") && arguments.get("raw").asBoolean()
             );
         } else if ("debug_set_var".equals(name)) {
             String varName = arguments.get("varName").asText();
@@ -61,23 +83,13 @@ public class McpToolExecutor {
             ensureVm(debugger);
             ThreadReference targetThread = null;
             if (threadName != null) {
-                for (ThreadReference thread : debugger.getVm().allThreads()) {
-                    if (thread.name().equals(threadName)) {
-                        targetThread = thread;
-                        break;
-                    }
-                }
+                targetThread = debugger.findThread(threadName);
                 if (targetThread == null) throw new Exception("Thread not found: " + threadName);
-                if (!targetThread.isSuspended()) throw new Exception("Thread '" + threadName + "' is not suspended.");
+                if (!debugger.isSuspended(targetThread)) throw new Exception("Thread '" + threadName + "' is not suspended.");
                 debugger.setVariableValue(targetThread, varName, value, frameIndex);
             } else {
-                for (ThreadReference thread : debugger.getVm().allThreads()) {
-                    if (thread.isSuspended()) {
-                        targetThread = thread;
-                        debugger.setVariableValue(thread, varName, value, frameIndex);
-                        break;
-                    }
-                }
+                targetThread = debugger.focusThread();
+                if (targetThread != null) debugger.setVariableValue(targetThread, varName, value, frameIndex);
             }
             
             if (targetThread != null) {
@@ -96,11 +108,8 @@ public class McpToolExecutor {
             return mapper.valueToTree(debugger.getSource(arguments.get("className").asText()));
         } else if ("debug_get_stack_trace".equals(name)) {
             ensureVm(debugger);
-            for (ThreadReference thread : debugger.getVm().allThreads()) {
-                if (thread.isSuspended()) {
-                    return debugger.getStackTrace(thread);
-                }
-            }
+            ThreadReference focus = debugger.focusThread();
+            if (focus != null) return debugger.getStackTrace(focus);
             return mapper.valueToTree("No suspended threads found to get stack trace.");
         } else if ("debug_get_events".equals(name)) {
             ensureVm(debugger);
@@ -117,13 +126,26 @@ public class McpToolExecutor {
                 return mapper.valueToTree(sb.toString());
             }
         } else if ("debug_get_output".equals(name)) {
-            String output = debugger.getOutput().toString();
-            return mapper.valueToTree(output.isEmpty() ? "No new output" : output);
+            return debugger.getOutput(
+                arguments != null && arguments.has("stream") ? arguments.get("stream").asText() : null,
+                arguments != null && arguments.has("since") ? arguments.get("since").asLong() : -1,
+                arguments != null && arguments.has("maxBytes") ? arguments.get("maxBytes").asInt() : 65536,
+                arguments != null && arguments.has("grep") ? arguments.get("grep").asText() : null
+            );
         } else if ("debug_get_var".equals(name)) {
             String varName = arguments.get("varName").asText();
             int maxDepth = arguments.has("maxDepth") ? arguments.get("maxDepth").asInt() : 3;
-            JsonNode var = debugger.getVariable(varName, maxDepth);
+            long maxBytes = arguments.has("maxBytes") ? arguments.get("maxBytes").asLong() : 0;
+            JsonNode var = debugger.getVariable(varName, maxDepth, maxBytes, arguments.has("raw") && arguments.get("raw").asBoolean());
             return var == null ? mapper.valueToTree("Variable '" + varName + "' not found or no suspended threads.") : var;
+        } else if ("debug_get_string".equals(name)) {
+            ensureVm(debugger);
+            return debugger.getString(
+                arguments.get("handle").asLong(),
+                arguments.has("offset") ? arguments.get("offset").asInt() : 0,
+                arguments.has("length") ? arguments.get("length").asInt() : 10000,
+                arguments.has("file") ? arguments.get("file").asText() : null
+            );
         } else if ("debug_send_input".equals(name)) {
             debugger.sendInput(arguments.get("input").asText());
             return mapper.valueToTree("Input sent");
@@ -134,8 +156,97 @@ public class McpToolExecutor {
             boolean access = arguments.has("access") && arguments.get("access").asBoolean();
             boolean modification = arguments.has("modification") && arguments.get("modification").asBoolean();
             if (!access && !modification) modification = true;
+            if (arguments.has("record") && arguments.get("record").asBoolean()) {
+                return debugger.recordField(wpClassName, fieldName, access, modification,
+                    arguments.has("capacity") ? arguments.get("capacity").asInt() : FieldTimeline.DEFAULT_CAPACITY);
+            }
             debugger.setWatchpoint(wpClassName, fieldName, access, modification);
             return mapper.valueToTree("Watchpoint set for " + wpClassName + "." + fieldName);
+        } else if ("debug_field_timeline".equals(name)) {
+            String tlClassName = arguments.get("className").asText();
+            String tlFieldName = arguments.get("fieldName").asText();
+            if (arguments.has("stop") && arguments.get("stop").asBoolean()) {
+                return debugger.stopRecordingField(tlClassName, tlFieldName);
+            }
+            return debugger.getFieldTimeline(tlClassName, tlFieldName,
+                arguments.has("since") ? arguments.get("since").asLong() : -1,
+                arguments.has("limit") ? arguments.get("limit").asInt() : 100);
+        } else if ("debug_monitor_exceptions".equals(name)) {
+            return debugger.monitorExceptions(
+                arguments != null && arguments.has("exceptionClass") ? arguments.get("exceptionClass").asText() : null,
+                arguments == null || !arguments.has("caught") || arguments.get("caught").asBoolean(),
+                arguments == null || !arguments.has("uncaught") || arguments.get("uncaught").asBoolean(),
+                arguments != null && arguments.has("classFilter") ? arguments.get("classFilter").asText() : null,
+                arguments != null && arguments.has("classExclude") ? arguments.get("classExclude").asText() : null,
+                arguments != null && arguments.has("suspendOnCount") ? arguments.get("suspendOnCount").asInt() : 0,
+                arguments != null && arguments.has("stop") && arguments.get("stop").asBoolean()
+            );
+        } else if ("debug_exception_stats".equals(name)) {
+            return debugger.getExceptionStats(
+                arguments != null && arguments.has("limit") ? arguments.get("limit").asInt() : 20,
+                arguments != null && arguments.has("reset") && arguments.get("reset").asBoolean()
+            );
+        } else if ("debug_trace_methods".equals(name)) {
+            return debugger.traceMethods(
+                arguments != null && arguments.has("classPattern") ? arguments.get("classPattern").asText() : null,
+                arguments != null && arguments.has("classExclude") ? arguments.get("classExclude").asText() : null,
+                arguments != null && arguments.has("sampleReturns") ? arguments.get("sampleReturns").asInt() : 100,
+                arguments != null && arguments.has("stop") && arguments.get("stop").asBoolean()
+            );
+        } else if ("debug_method_stats".equals(name)) {
+            return debugger.getMethodStats(
+                arguments != null && arguments.has("limit") ? arguments.get("limit").asInt() : 20,
+                arguments != null && arguments.has("sortBy") ? arguments.get("sortBy").asText() : "total",
+                arguments != null && arguments.has("reset") && arguments.get("reset").asBoolean()
+            );
+        } else if ("debug_monitor_contention".equals(name)) {
+            return debugger.profileContention(
+                arguments != null && arguments.has("classFilter") ? arguments.get("classFilter").asText() : null,
+                arguments != null && arguments.has("classExclude") ? arguments.get("classExclude").asText() : null,
+                arguments != null && arguments.has("waits") && arguments.get("waits").asBoolean(),
+                arguments != null && arguments.has("stop") && arguments.get("stop").asBoolean()
+            );
+        } else if ("debug_contention_stats".equals(name)) {
+            return debugger.getContentionStats(
+                arguments != null && arguments.has("limit") ? arguments.get("limit").asInt() : 10,
+                arguments != null && arguments.has("reset") && arguments.get("reset").asBoolean()
+            );
+        } else if ("debug_class_loading".equals(name)) {
+            return debugger.recordClassLoading(
+                arguments != null && arguments.has("classFilter") ? arguments.get("classFilter").asText() : null,
+                arguments != null && arguments.has("classExclude") ? arguments.get("classExclude").asText() : null,
+                arguments != null && arguments.has("bucketMs") ? arguments.get("bucketMs").asLong() : 100,
+                arguments != null && arguments.has("stop") && arguments.get("stop").asBoolean()
+            );
+        } else if ("debug_class_load_stats".equals(name)) {
+            return debugger.getClassLoadStats(
+                arguments != null && arguments.has("limit") ? arguments.get("limit").asInt() : 10,
+                arguments != null && arguments.has("recent") ? arguments.get("recent").asInt() : 20,
+                arguments != null && arguments.has("reset") && arguments.get("reset").asBoolean()
+            );
+        } else if ("debug_thread_churn".equals(name)) {
+            return debugger.monitorThreadChurn(
+                arguments != null && arguments.has("groups") ? arguments.get("groups").asText() : null,
+                arguments != null && arguments.has("stackSamplesPerSecond") ? arguments.get("stackSamplesPerSecond").asInt() : 5,
+                arguments != null && arguments.has("stop") && arguments.get("stop").asBoolean()
+            );
+        } else if ("debug_thread_churn_stats".equals(name)) {
+            return debugger.getThreadChurnStats(
+                arguments != null && arguments.has("limit") ? arguments.get("limit").asInt() : 10,
+                arguments != null && arguments.has("reset") && arguments.get("reset").asBoolean()
+            );
+        } else if ("debug_summaries".equals(name)) {
+            return debugger.configureSummaries(
+                arguments != null && arguments.has("enable") ? arguments.get("enable").asBoolean() : null,
+                arguments != null && arguments.has("formatters") ? arguments.get("formatters").asText() : null,
+                arguments != null && arguments.has("budgetMs") ? arguments.get("budgetMs").asLong() : null,
+                arguments != null && arguments.has("maxLength") ? arguments.get("maxLength").asInt() : null
+            );
+        } else if ("debug_pause_budget".equals(name)) {
+            if (arguments != null && arguments.has("maxPauseSeconds")) {
+                debugger.setMaxPause(Math.round(arguments.get("maxPauseSeconds").asDouble() * 1000));
+            }
+            return debugger.getPauseStats(arguments == null || !arguments.has("snapshots") || arguments.get("snapshots").asBoolean());
         } else {
             throw new Exception("Unknown tool: " + name);
         }
@@ -149,21 +260,16 @@ public class McpToolExecutor {
         // Strategy 0: Explicit thread selection from arguments (Precise Targeting)
         if (arguments != null && arguments.has("threadName")) {
             String threadName = arguments.get("threadName").asText();
-            for (ThreadReference thread : debugger.getVm().allThreads()) {
-                if (thread.name().equals(threadName)) {
-                    targetThread = thread;
-                    break;
-                }
-            }
+            targetThread = debugger.findThread(threadName);
             if (targetThread == null) {
                 throw new Exception("Specified thread not found: " + threadName);
             }
-            if (!targetThread.isSuspended()) {
+            if (!debugger.isSuspended(targetThread)) {
                 throw new Exception("Specified thread '" + threadName + "' is not suspended.");
             }
         }
 
-        // Strategy 1: Prioritize the last suspended thread (e.g. from breakpoint)
+        // Strategy 1: The thread of the latest stop (breakpoint, step, ...), from the session state
         if (targetThread == null) {
             boolean smartStep = false;
             if (arguments != null && arguments.has("smartStep")) {
@@ -174,37 +280,7 @@ public class McpToolExecutor {
                 throw new Exception("Thread not specified. Provide 'threadName' or set 'smartStep' to true for automatic thread selection.");
             }
 
-            ThreadReference lastSuspended = debugger.getLastSuspendedThread();
-            if (lastSuspended != null && lastSuspended.isSuspended()) {
-                targetThread = lastSuspended;
-            }
-        }
-
-        // Strategy 2: If no last suspended thread, look for any suspended NON-SYSTEM thread
-        if (targetThread == null) {
-            for (ThreadReference thread : debugger.getVm().allThreads()) {
-                if (thread.isSuspended()) {
-                    // Simple heuristic: ignore "Reference Handler", "Finalizer", "Signal Dispatcher", "Common-Cleaner"
-                    String name = thread.name();
-                    if (!name.equals("Reference Handler") && 
-                        !name.equals("Finalizer") && 
-                        !name.equals("Signal Dispatcher") && 
-                        !name.equals("Common-Cleaner")) {
-                        targetThread = thread;
-                        break;
-                    }
-                }
-            }
-        }
-
-        // Strategy 3: Fallback to ANY suspended thread if no "interesting" thread found
-        if (targetThread == null) {
-            for (ThreadReference thread : debugger.getVm().allThreads()) {
-                if (thread.isSuspended()) {
-                    targetThread = thread;
-                    break;
-                }
-            }
+            targetThread = debugger.focusThread();
         }
 
         if (targetThread != null) {
@@ -235,6 +311,17 @@ public class McpToolExecutor {
         throw new Exception("No suspended threads found to step.");
     }
 
+    /** Hit limits from the breakpoint tool arguments, or null when none are given. */
+    private static HitLimiter hitLimiter(JsonNode arguments) {
+        if (!arguments.has("maxHitsPerSecond") && !arguments.has("maxHits") && !arguments.has("sampleRate")) return null;
+        return new HitLimiter(
+            arguments.has("maxHitsPerSecond") ? arguments.get("maxHitsPerSecond").asInt() : 0,
+            arguments.has("maxHits") ? arguments.get("maxHits").asLong() : 0,
+            arguments.has("sampleRate") ? arguments.get("sampleRate").asDouble() : 1,
+            arguments.has("onLimit") && "disable".equalsIgnoreCase(arguments.get("onLimit").asText())
+        );
+    }
+
     private static void ensureVm(JdiDebugger debugger) throws Exception {
         if (debugger.getVm() == null) {
             throw new Exception("Debugger not attached. Call debug_attach first.");
@@ -1,8 +1,11 @@
 package com.jdbmcp;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Utility class for defining and listing MCP tools.
@@ -11,7 +14,34 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 
 public class McpTools {
 
+    private static volatile ObjectNode tools;
+    private static volatile Set<String> names;
+
+    /**
+     * Tool schemas are built on the first tools/list rather than at startup, then reused.
+     * The returned node must not be modified.
+     */
     public static ObjectNode listTools(ObjectMapper mapper) {
+        ObjectNode result = tools;
+        if (result == null) {
+            result = buildTools(mapper);
+            tools = result;
+        }
+        return result;
+    }
+
+    /** True for a tool listed by tools/list; other names are recorded in metrics as "unknown". */
+    public static boolean isTool(ObjectMapper mapper, String name) {
+        Set<String> result = names;
+        if (result == null) {
+            result = new HashSet<String>();
+            for (JsonNode tool : listTools(mapper).get("tools")) result.add(tool.get("name").asText());
+            names = result;
+        }
+        return result.contains(name);
+    }
+
+    private static ObjectNode buildTools(ObjectMapper mapper) {
         ObjectNode result = mapper.createObjectNode();
         ArrayNode toolsArray = result.putArray("tools");
 
@@ -21,15 +51,35 @@ public class McpTools {
                 public void accept(ToolBuilder t) {
                     t.property("host", "string", "The hostname of the remote VM (default: localhost)")
                      .property("port", "integer", "The JDWP port of the remote VM")
+                     .property("restore", "boolean", "Optional: Restore breakpoints and watchpoints journaled for this host:port (default true); false starts over")
+                     .property("maxPauseSeconds", "number", "Optional: Pause budget; a target left suspended longer is snapshotted and resumed (default: server --max-pause, 0 = off)")
                      .required("port");
                 }
             })
 
+            .add("debug_launch", "Start a Java program locally under the debugger. Its stdout/stderr are captured for debug_get_output.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("mainClass", "string", "Main class to run (or use 'jar')")
+                     .property("jar", "string", "Executable jar to run with -jar")
+                     .property("classPath", "string", "Optional: Class path of the program")
+                     .property("args", "string", "Optional: Program arguments")
+                     .property("jvmOptions", "string", "Optional: Extra JVM options, e.g. '-Xmx512m -Dfoo=bar'")
+                     .property("suspend", "boolean", "Optional: Stay suspended at VM start so breakpoints can be set before main runs (default false)")
+                     .property("restore", "boolean", "Optional: Restore requests journaled for this main class or jar (default true); false starts over")
+                     .property("maxPauseSeconds", "number", "Optional: Pause budget; a target left suspended longer is snapshotted and resumed (default: server --max-pause, 0 = off)");
+                }
+            })
+
             .add("debug_set_breakpoint", "Set a breakpoint at a specific line in a class. Returns success status and current thread/stack/class context.", new Consumer<ToolBuilder>() {
                 @Override
                 public void accept(ToolBuilder t) {
                     t.property("className", "string", "The fully qualified name of the class")
                      .property("line", "integer", "The line number to set the breakpoint at")
+                     .property("maxHitsPerSecond", "integer", "Optional: Suspensions allowed per second; exceeding it trips the limit")
+                     .property("maxHits", "integer", "Optional: Total suspensions allowed; the limit trips after the last one")
+                     .property("sampleRate", "number", "Optional: Probability (0-1) that a hit suspends; other hits are resumed and counted")
+                     .property("onLimit", "string", "Optional: 'count' (default) keeps counting hits without suspending, 'disable' disables the breakpoint")
                      .required("className", "line");
                 }
             })
@@ -68,9 +118,30 @@ public class McpTools {
 
             .add("debug_get_events", "Get the latest debugger events (breakpoints, etc.)")
 
-            .add("debug_get_output", "Get the latest standard output/error from the debugged process")
+            .add("debug_get_output", "Get captured stdout/stderr of a program started with debug_launch. Without 'since', returns output new since the previous call. Each stream keeps its last 1 MiB.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("stream", "string", "Optional: stdout or stderr (default both)")
+                     .property("since", "integer", "Optional: Absolute byte offset to read from, e.g. an earlier 'nextOffset'")
+                     .property("maxBytes", "integer", "Optional: Maximum bytes returned per stream (default 65536)")
+                     .property("grep", "string", "Optional: Regular expression; only matching lines are returned, with their offsets");
+                }
+            })
 
-            .add("debug_list_threads", "List all threads and their current status.")
+            .add("debug_list_threads", "List threads and their current status, with state/name/group filters and cursor paging. Use groupByStack to collapse pools of identical idle threads.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("state", "string", "Optional: Only threads in this state: running, sleeping, monitor, wait, zombie, not_started or suspended.")
+                     .property("namePattern", "string", "Optional: Thread name filter ('http-nio-*', '*-worker' or substring).")
+                     .property("group", "string", "Optional: Only threads of this thread group (e.g. 'main', 'system').")
+                     .property("virtual", "string", "Optional: include (default), exclude or only virtual threads. Virtual threads are listed when the JDWP agent reports them or after they stopped at a breakpoint or step.")
+                     .property("limit", "integer", "Optional: Page size (default 100).")
+                     .property("cursor", "integer", "Optional: 'nextCursor' from the previous page.")
+                     .property("sample", "integer", "Optional: Return up to this many randomly chosen matching threads instead of a page; only as many threads are inspected as needed.")
+                     .property("groupByStack", "boolean", "Optional: Return one entry per identical top-of-stack signature with thread counts instead of individual threads.")
+                     .property("stackDepth", "integer", "Optional: Number of top frames forming the stack signature (default 5).");
+                }
+            })
 
             .add("debug_list_classes", "List loaded classes in the target VM. Use filter to narrow down results (supports prefix 'com.*', suffix '*.String', or substring).", new Consumer<ToolBuilder>() {
                 @Override
@@ -102,6 +173,8 @@ public class McpTools {
                      .property("frameIndex", "integer", "The stack frame index (default 0).")
                      .property("scope", "string", "The scope of variables to list: 'LOCAL' (default), 'THIS' (fields of 'this'), 'ALL' (both).")
                      .property("maxDepth", "integer", "Maximum recursion depth for complex objects (default 0, max 10).")
+                     .property("maxBytes", "integer", "Optional: Output budget in bytes. Values are rendered breadth-first; nodes that do not fit are returned as summaries with a 'handle' for debug_expand.")
+                     .property("raw", "boolean", "Optional: Render JDK collections (ArrayList, HashMap, ...) field by field instead of as size plus elements/entries (default false).")
                      .required("threadName");
                 }
             })
@@ -111,10 +184,36 @@ public class McpTools {
                 public void accept(ToolBuilder t) {
                     t.property("varName", "string", "The name of the variable to inspect")
                      .property("maxDepth", "integer", "Maximum recursion depth for complex objects (default 3, max 10).")
+                     .property("maxBytes", "integer", "Optional: Output budget in bytes (see debug_list_vars).")
+                     .property("raw", "boolean", "Optional: Render JDK collections (ArrayList, HashMap, ...) field by field instead of as size plus elements/entries (default false).")
                      .required("varName");
                 }
             })
 
+            .add("debug_expand", "Expand an object or array by the 'handle' (or 'id') returned in an earlier variable listing, e.g. a node truncated by maxBytes, or page through a large array or collection with offset/limit.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("handle", "integer", "The handle or id of the object")
+                     .property("maxDepth", "integer", "Maximum recursion depth (default 1).")
+                     .property("maxBytes", "integer", "Optional: Output budget in bytes.")
+                     .property("offset", "integer", "Optional: First element or entry to show of an array or JDK collection (default 0)")
+                     .property("limit", "integer", "Optional: Number of elements or entries to show (default 100 for arrays, 25 for collections)")
+                     .property("raw", "boolean", "Optional: Render JDK collections (ArrayList, HashMap, ...) field by field instead of as size plus elements/entries (default false).")
+                     .required("handle");
+                }
+            })
+
+            .add("debug_get_string", "Read a long string returned with a 'handle' (strings longer than maxStringLength are shown as a prefix plus their length). Reads one page of chars from the string's backing array, so only that page is transferred, or writes the whole string to a local file.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("handle", "integer", "The handle of the string")
+                     .property("offset", "integer", "Optional: First char to read (default 0)")
+                     .property("length", "integer", "Optional: Number of chars to read (default 10000)")
+                     .property("file", "string", "Optional: Write the whole string to this local file (UTF-8) instead of returning it")
+                     .required("handle");
+                }
+            })
+
             .add("debug_send_input", "Send input string to the debugged process's stdin", new Consumer<ToolBuilder>() {
                 @Override
                 public void accept(ToolBuilder t) {
@@ -141,10 +240,143 @@ public class McpTools {
                      .property("fieldName", "string", "The name of the field")
                      .property("access", "boolean", "Trigger on field access")
                      .property("modification", "boolean", "Trigger on field modification")
+                     .property("record", "boolean", "Optional: Record instead of stopping: every event is appended to the field's time series (SUSPEND_NONE); read it with debug_field_timeline")
+                     .property("capacity", "integer", "Optional: Entries kept per recorded field, oldest dropped first (default 100000)")
+                     .required("className", "fieldName");
+                }
+            })
+
+            .add("debug_field_timeline", "Time series of a field recorded with debug_set_watchpoint record=true: who changed it (thread, location), when, and old/new values, plus writes per location and thread.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("className", "string", "The fully qualified name of the class")
+                     .property("fieldName", "string", "The name of the field")
+                     .property("since", "integer", "Optional: First sequence number to return, e.g. an earlier 'nextSeq' (default: the latest entries)")
+                     .property("limit", "integer", "Optional: Maximum entries to return (default 100)")
+                     .property("stop", "boolean", "Optional: Stop recording; the series is kept")
                      .required("className", "fieldName");
                 }
             })
 
+            .add("debug_monitor_exceptions", "Count thrown exceptions per throw/catch site without stopping the VM (SUSPEND_NONE). Read the ranked table with debug_exception_stats.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("exceptionClass", "string", "Optional: Loaded exception class to monitor, subclasses included (default: all Throwables)")
+                     .property("caught", "boolean", "Optional: Include caught exceptions (default true)")
+                     .property("uncaught", "boolean", "Optional: Include uncaught exceptions (default true)")
+                     .property("classFilter", "string", "Optional: Comma-separated patterns of classes the exception is thrown in, e.g. 'com.example.*'")
+                     .property("classExclude", "string", "Optional: Comma-separated patterns of throwing classes to ignore, e.g. 'java.*,sun.*,jdk.*'")
+                     .property("suspendOnCount", "integer", "Optional: Also suspend the throwing thread on the Nth matching exception")
+                     .property("stop", "boolean", "Optional: Remove all exception monitors; statistics are kept");
+                }
+            })
+
+            .add("debug_exception_stats", "Ranked table of exception sites (type, thrown at, caught at or uncaught, count, first message) collected by debug_monitor_exceptions.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("limit", "integer", "Optional: Number of sites to return (default 20)")
+                     .property("reset", "boolean", "Optional: Reset the statistics after reading them");
+                }
+            })
+
+            .add("debug_trace_methods", "Trace calls of methods in classes matching a pattern without stopping the VM (SUSPEND_NONE method entry/exit): call counts, inclusive/self time histograms and sampled return values. Read the hot-method report with debug_method_stats. Each traced call costs a JDWP round-trip, so keep the pattern narrow.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("classPattern", "string", "Comma-separated class patterns to trace, e.g. 'com.example.service.*' (required unless stop)")
+                     .property("classExclude", "string", "Optional: Comma-separated patterns of classes to leave out")
+                     .property("sampleReturns", "integer", "Optional: Sample every Nth return value per method (default 100, 0 = off)")
+                     .property("stop", "boolean", "Optional: Stop tracing; statistics are kept");
+                }
+            })
+
+            .add("debug_method_stats", "Hot-method report of debug_trace_methods: calls, total/self ms, mean/p50/p99/max us and sampled return values per method.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("limit", "integer", "Optional: Number of methods to return (default 20)")
+                     .property("sortBy", "string", "Optional: 'total' (default), 'self', 'calls' or 'max'")
+                     .property("reset", "boolean", "Optional: Reset the statistics after reading them");
+                }
+            })
+
+            .add("debug_monitor_contention", "Profile monitor contention without stopping the VM (SUSPEND_NONE contended-enter/entered, optionally wait/waited events): blocked time per monitor class, monitor, acquire location and owning thread. Read the ranked report with debug_contention_stats. The owner is the thread that last acquired the monitor under contention (JDWP cannot read owners of a running VM).", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("classFilter", "string", "Optional: Comma-separated class patterns the monitor events are restricted to")
+                     .property("classExclude", "string", "Optional: Comma-separated class patterns to leave out, e.g. 'java.*,jdk.*'")
+                     .property("waits", "boolean", "Optional: Also measure Object.wait() calls (default false)")
+                     .property("stop", "boolean", "Optional: Stop profiling; statistics are kept");
+                }
+            })
+
+            .add("debug_contention_stats", "Ranked contention report of debug_monitor_contention: count, total/p99/max blocked ms by monitor class, monitor instance, acquire location and owner, threads blocked right now, and Object.wait() times when enabled.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("limit", "integer", "Optional: Rows per table (default 10)")
+                     .property("reset", "boolean", "Optional: Reset the statistics after reading them");
+                }
+            })
+
+            .add("debug_class_loading", "Record class loading without stopping the VM (SUSPEND_NONE class prepare/unload events): a loading-rate timeline and totals per package, class loader and loading thread. Read it with debug_class_load_stats. For startup analysis, launch with suspend=true, start recording, then resume.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("classFilter", "string", "Optional: Comma-separated class patterns to record (default all classes)")
+                     .property("classExclude", "string", "Optional: Comma-separated class patterns to leave out")
+                     .property("bucketMs", "integer", "Optional: Width of a timeline bucket in ms (default 100); doubles when the timeline fills up")
+                     .property("stop", "boolean", "Optional: Stop recording; the timeline is kept");
+                }
+            })
+
+            .add("debug_class_load_stats", "Class loading report of debug_class_loading: prepared/unloaded totals, the rate timeline (per bucket), top packages, loaders and threads, and the latest events.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("limit", "integer", "Optional: Rows per table (default 10)")
+                     .property("recent", "integer", "Optional: Latest class events to include (default 20)")
+                     .property("reset", "boolean", "Optional: Reset the timeline after reading it");
+                }
+            })
+
+            .add("debug_thread_churn", "Monitor thread creation and termination without stopping the VM (SUSPEND_NONE thread start/death events): starts per second, lifetimes and sampled creating stacks, grouped by thread name. Read it with debug_thread_churn_stats. Finds executors that create a thread per task.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("groups", "string", "Optional: Comma-separated thread name globs to group by, e.g. 'pool-*,http-nio-*' (default: name with digits replaced by '#')")
+                     .property("stackSamplesPerSecond", "integer", "Optional: Creating stacks sampled per second via a breakpoint on Thread.start() (default 5, 0 = off)")
+                     .property("stop", "boolean", "Optional: Stop monitoring; statistics are kept");
+                }
+            })
+
+            .add("debug_thread_churn_stats", "Thread churn report of debug_thread_churn: total and recent starts per second, and per name group the threads started, ended and alive, lifetime percentiles and the sampled creating stacks.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("limit", "integer", "Optional: Number of groups to return (default 10)")
+                     .property("reset", "boolean", "Optional: Reset the statistics after reading them");
+                }
+            })
+
+            .add("debug_summaries", "One-line object summaries from toString() or registered formatter methods, e.g. for BigDecimal, LocalDateTime or UUID, shown as 'summary' (or as the value at the depth limit) by debug_list_vars, debug_get_var and debug_expand. Off by default. Calls run with INVOKE_SINGLE_THREADED on the inspected thread within a time budget and are cached until the next resume. Without parameters, returns the settings and counters.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("enable", "boolean", "Optional: Turn summaries on or off")
+                     .property("formatters", "string", "Optional: Comma-separated 'className=method' pairs of no-argument methods used instead of toString() for a class and its subclasses, e.g. 'java.math.BigDecimal=toPlainString' ('' removes all)")
+                     .property("budgetMs", "integer", "Optional: Time budget for summaries per rendered thread or value (default 200)")
+                     .property("maxLength", "integer", "Optional: Maximum summary length (default 200)");
+                }
+            })
+
+            .add("debug_pause_budget", "Pause watchdog of the session: how long the target has been suspended in total and now, auto-resumes, and the thread state captured before each auto-resume.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("maxPauseSeconds", "number", "Optional: Set the pause budget (0 turns the watchdog off)")
+                     .property("snapshots", "boolean", "Optional: Include the thread snapshots of auto-resumed pauses (default true)");
+                }
+            })
+
+            .add("debug_server_metrics", "Get latency metrics (count, mean, max, p50/p90/p99/p99.9) per MCP method, tool, JDWP call and event-loop EventSet handling. Also served in Prometheus text format at /metrics on the HTTP transport.", new Consumer<ToolBuilder>() {
+                @Override
+                public void accept(ToolBuilder t) {
+                    t.property("reset", "boolean", "Optional: Reset all metrics after reading them.");
+                }
+            })
+
             .add("debug_detach", "Terminate the current debug session and detach");
 
         return result;